@@ -0,0 +1,221 @@
+package gg.paceman.aatracker.dev;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.AATracker;
+import gg.paceman.aatracker.AdvancementRegistry;
+import gg.paceman.aatracker.PayloadBuilder;
+import gg.paceman.aatracker.PayloadSerializer;
+import gg.paceman.aatracker.RecordData;
+import gg.paceman.aatracker.TrackerMetrics;
+import gg.paceman.aatracker.util.PostUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Load tests the send path by playing synthetic runs in parallel against a {@link PaceManStubServer}. Every run builds
+ * its payloads with a {@link PayloadBuilder} as it completes advancements one by one, sends each through
+ * {@link PostUtil} and kills the run at the end, then starts over with a new world.
+ * <p>
+ * Usage: LoadGenerator [parallel runs] [seconds] [ms between sends] [stub failure rate] [gzip]
+ * <p>
+ * Also run with --loadtest by {@code AATrackerJarLaunch} when the dev source set is on the classpath, which it isn't in
+ * the jars. Requests only ever go to the local stub, never to the configured base URL.
+ */
+public final class LoadGenerator {
+    private static final String ACCESS_KEY = "loadtest";
+    private static final byte[] KILL_BODY = ("{\"accessKey\":\"" + ACCESS_KEY + "\"}").getBytes(StandardCharsets.UTF_8);
+    private static final String[] TIMELINES = {"enter_nether", "enter_bastion", "enter_fortress", "nether_travel", "enter_stronghold", "enter_end", "kill_ender_dragon", "got_trident"};
+    private static final int STEPS_PER_TIMELINE = 10;
+    private static final long STEP_RTA_MS = 40_000;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long intervalMs = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        double failureRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        boolean gzip = args.length > 4 && Boolean.parseBoolean(args[4]);
+        LoadGenerator.run(runs, seconds, intervalMs, failureRate, gzip);
+    }
+
+    /**
+     * @param intervalMs  time each run waits between sends, 0 to send again as soon as the last one was answered
+     * @param failureRate fraction of requests the stub answers with an error
+     */
+    public static void run(int runs, int seconds, long intervalMs, double failureRate, boolean gzip) throws IOException, InterruptedException {
+        try (PaceManStubServer stub = PaceManStubServer.start(0)) {
+            stub.setFailureRate(failureRate);
+            System.out.printf("Load test: %d parallel runs for %d s against %s, %d ms between sends, %.1f%% stub failures, gzip %s%n",
+                    runs, seconds, stub.getBaseUrl(), intervalMs, failureRate * 100, gzip ? "on" : "off");
+
+            long start = System.nanoTime();
+            long deadline = start + seconds * 1_000_000_000L;
+            List<Worker> workers = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                Worker worker = new Worker(stub.getBaseUrl(), deadline, intervalMs, gzip);
+                Thread thread = new Thread(worker, "paceman-aa-loadtest-" + i);
+                workers.add(worker);
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            long payloads = 0, kills = 0, runsPlayed = 0, httpErrors = 0, ioErrors = 0;
+            long[] latencies = new long[0];
+            for (Worker worker : workers) {
+                payloads += worker.payloads;
+                kills += worker.kills;
+                runsPlayed += worker.runsPlayed;
+                httpErrors += worker.httpErrors;
+                ioErrors += worker.ioErrors;
+                int offset = latencies.length;
+                latencies = Arrays.copyOf(latencies, offset + worker.latencyCount);
+                System.arraycopy(worker.latencies, 0, latencies, offset, worker.latencyCount);
+            }
+            Arrays.sort(latencies);
+            long requests = payloads + kills;
+
+            System.out.printf("%nRequests: %d (%d payloads, %d kills) over %.1f s, %d runs played%n", requests, payloads, kills, elapsed, runsPlayed);
+            System.out.printf("Throughput: %.1f requests/s, %.2f MB/s on the wire, %d connections%n",
+                    requests / elapsed, stub.getBodyBytes() / elapsed / 1e6, stub.getConnections());
+            System.out.printf("Latency: mean %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    Arrays.stream(latencies).average().orElse(0) / 1e6,
+                    LoadGenerator.percentile(latencies, 50) / 1e6,
+                    LoadGenerator.percentile(latencies, 90) / 1e6,
+                    LoadGenerator.percentile(latencies, 99) / 1e6,
+                    latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6
+            );
+            System.out.printf("Errors: %d HTTP (%.2f%%), %d IO (%.2f%%)%n",
+                    httpErrors, requests == 0 ? 0 : httpErrors * 100.0 / requests,
+                    ioErrors, requests == 0 ? 0 : ioErrors * 100.0 / requests);
+        }
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * @return a record of a run that has completed the first step advancements, with its criteria, items and
+     * timelines filled in at the same pace
+     */
+    private static RecordData recordAt(int step, JsonArray timelines) {
+        RecordData record = new RecordData();
+        record.category = "ALL_ADVANCEMENTS";
+        record.hasAdvancements = true;
+        record.timelines = timelines;
+        int advancements = AdvancementRegistry.ADVANCEMENTS.size();
+        for (int id = 0; id < Math.min(step, advancements); id++) {
+            record.completedAdvancements.add(id, id * STEP_RTA_MS, id * STEP_RTA_MS - id * 500L);
+        }
+        for (AdvancementRegistry.CriteriaAdvancement advancement : AdvancementRegistry.CriteriaAdvancement.values()) {
+            record.criteria[advancement.ordinal()].set(0, Math.min(advancement.criteria.size(), advancement.criteria.size() * step / advancements));
+        }
+        record.skullsPickedUp = Math.min(3, step / 20);
+        record.hasEnchantedGoldenApple = step > advancements * 3 / 4;
+        return record;
+    }
+
+    private static class Worker implements Runnable {
+        private final String sendUrl;
+        private final String killUrl;
+        private final long deadline;
+        private final long intervalMs;
+        private final boolean gzip;
+        private final PayloadSerializer serializer = new PayloadSerializer();
+        private final TrackerMetrics metrics = new TrackerMetrics();
+        private final JsonObject latestWorld = new JsonObject();
+
+        private long payloads = 0;
+        private long kills = 0;
+        private long runsPlayed = 0;
+        private long httpErrors = 0;
+        private long ioErrors = 0;
+        private long[] latencies = new long[1024];
+        private int latencyCount = 0;
+
+        private Worker(String baseUrl, long deadline, long intervalMs, boolean gzip) {
+            this.sendUrl = baseUrl + AATracker.AA_SEND_PATH;
+            this.killUrl = baseUrl + AATracker.AA_KILL_PATH;
+            this.deadline = deadline;
+            this.intervalMs = intervalMs;
+            this.gzip = gzip;
+            JsonArray mods = new JsonArray();
+            for (String mod : new String[]{"antigone", "atum", "fabricloader", "lithium", "minecraft", "sodium", "speedrunigt", "starlight", "state-output"}) {
+                mods.add(mod);
+            }
+            this.latestWorld.addProperty("version", "1.16.1");
+            this.latestWorld.addProperty("mod_version", "14.2+1.16.1");
+            this.latestWorld.add("mods", mods);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (System.nanoTime() < this.deadline) {
+                    this.playRun();
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        private void playRun() throws InterruptedException {
+            PayloadBuilder builder = new PayloadBuilder(this.metrics);
+            String worldId = UUID.randomUUID().toString();
+            List<String> events = new ArrayList<>();
+            JsonArray timelines = new JsonArray();
+            int steps = AdvancementRegistry.ADVANCEMENTS.size();
+
+            for (int step = 1; step <= steps && System.nanoTime() < this.deadline; step++) {
+                long rta = step * STEP_RTA_MS;
+                if (step % STEPS_PER_TIMELINE == 1 && step / STEPS_PER_TIMELINE < TIMELINES.length) {
+                    // Timelines are replaced rather than added to, as the record is read again by the tracker
+                    timelines = timelines.deepCopy();
+                    JsonObject timeline = new JsonObject();
+                    timeline.addProperty("name", TIMELINES[step / STEPS_PER_TIMELINE]);
+                    timeline.addProperty("igt", rta - 500);
+                    timeline.addProperty("rta", rta);
+                    timelines.add(timeline);
+                    events.add("rsg." + TIMELINES[step / STEPS_PER_TIMELINE] + " " + rta + " " + (rta - 500));
+                }
+                JsonObject payload = builder.build(LoadGenerator.recordAt(step, timelines), this.latestWorld, events, worldId, rta);
+                PayloadSerializer.Buffer body = this.serializer.write(payload, ACCESS_KEY);
+                this.payloads++;
+                this.send(this.sendUrl, body.getBytes(), body.size(), this.gzip);
+                if (this.intervalMs > 0) Thread.sleep(this.intervalMs);
+            }
+            this.kills++;
+            this.send(this.killUrl, KILL_BODY, KILL_BODY.length, false);
+            this.runsPlayed++;
+        }
+
+        private void send(String url, byte[] body, int length, boolean gzip) {
+            long start = System.nanoTime();
+            try {
+                PostUtil.PostResponse response = PostUtil.sendData(url, body, length, gzip);
+                if (response.code >= 400) this.httpErrors++;
+            } catch (IOException e) {
+                this.ioErrors++;
+                return;
+            }
+            if (this.latencyCount == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.latencyCount * 2);
+            }
+            this.latencies[this.latencyCount++] = System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package gg.paceman.aatracker.dev;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import gg.paceman.aatracker.DeltaReceiver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A local stand-in for the PaceMan.gg endpoints used by the tracker, for benchmarks and tests without the real server.
+ * Counts requests, connections and bytes received, and can be told to respond slowly or with errors.
+ */
+public class PaceManStubServer implements AutoCloseable {
+    private static final Gson GSON = new Gson();
+    private static final byte[] OK_BODY = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final DeltaReceiver deltaReceiver = new DeltaReceiver();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bodyBytes = new AtomicLong();
+    private final AtomicLong headerBytes = new AtomicLong();
+    private final AtomicLong decodedBodyBytes = new AtomicLong();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicLong> requestsPerPath = new ConcurrentHashMap<>();
+
+    private volatile int responseCode = 200;
+    private volatile long responseDelayMs = 0;
+    private volatile double failureRate = 0;
+    private volatile BiConsumer<String, String> listener = (path, body) -> {
+    };
+
+    private PaceManStubServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public static PaceManStubServer start(int port) throws IOException {
+        // Without this the JDK server lets Nagle's algorithm hold back response bodies on kept-alive connections
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        PaceManStubServer stub = new PaceManStubServer(httpServer);
+        for (String path : new String[]{"/api/aa/sendevent", "/api/aa/senddelta", "/api/aa/kill", "/api/test"}) {
+            httpServer.createContext(path, stub::handle);
+        }
+        httpServer.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "paceman-stub-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+        return stub;
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    public void setResponseCode(int responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    public void setResponseDelayMs(long responseDelayMs) {
+        this.responseDelayMs = responseDelayMs;
+    }
+
+    /**
+     * @param failureRate the fraction of requests, from 0 to 1, that get a 503 response regardless of the response code
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Sets a listener called with the path and decoded body of every request, on the server's threads.
+     */
+    public void setListener(BiConsumer<String, String> listener) {
+        this.listener = listener;
+    }
+
+    public DeltaReceiver getDeltaReceiver() {
+        return this.deltaReceiver;
+    }
+
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    public long getRequests(String path) {
+        AtomicLong count = this.requestsPerPath.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return request body bytes as received, compressed if the client used gzip
+     */
+    public long getBodyBytes() {
+        return this.bodyBytes.get();
+    }
+
+    /**
+     * @return an estimate of request line and header bytes received
+     */
+    public long getHeaderBytes() {
+        return this.headerBytes.get();
+    }
+
+    public long getDecodedBodyBytes() {
+        return this.decodedBodyBytes.get();
+    }
+
+    /**
+     * @return the number of distinct client connections seen
+     */
+    public int getConnections() {
+        return this.connections.size();
+    }
+
+    public void resetCounters() {
+        this.requests.set(0);
+        this.bodyBytes.set(0);
+        this.headerBytes.set(0);
+        this.decodedBodyBytes.set(0);
+        this.connections.clear();
+        this.requestsPerPath.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            byte[] raw = PaceManStubServer.readAll(exchange.getRequestBody());
+            boolean gzip = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            byte[] decoded = gzip ? PaceManStubServer.readAll(new GZIPInputStream(new ByteArrayInputStream(raw))) : raw;
+
+            this.requests.incrementAndGet();
+            this.requestsPerPath.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+            this.bodyBytes.addAndGet(raw.length);
+            this.decodedBodyBytes.addAndGet(decoded.length);
+            this.connections.add(exchange.getRemoteAddress());
+            long headers = exchange.getRequestMethod().length() + exchange.getRequestURI().toString().length() + 11;
+            for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+                for (String value : header.getValue()) {
+                    headers += header.getKey().length() + value.length() + 4;
+                }
+            }
+            this.headerBytes.addAndGet(headers + 2);
+
+            String body = new String(decoded, StandardCharsets.UTF_8);
+            this.listener.accept(path, body);
+
+            long delay = this.responseDelayMs;
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            int code = this.responseCode;
+            if (code < 400 && ThreadLocalRandom.current().nextDouble() < this.failureRate) {
+                code = 503;
+            }
+            // Full snapshots of the delta protocol go to sendevent with a sequence number
+            boolean deltaProtocol = path.equals("/api/aa/senddelta") || (path.equals("/api/aa/sendevent") && body.contains("\"seq\""));
+            if (code < 400 && deltaProtocol) {
+                synchronized (this.deltaReceiver) {
+                    if (!this.deltaReceiver.receive(GSON.fromJson(body, JsonObject.class))) {
+                        code = 409;
+                    }
+                }
+            }
+            exchange.sendResponseHeaders(code, OK_BODY.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(OK_BODY);
+            }
+        } catch (InterruptedException e) {
+            exchange.sendResponseHeaders(503, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+}
@@ -0,0 +1,441 @@
+package gg.paceman.aatracker.dev;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.AATracker;
+import gg.paceman.aatracker.AATrackerOptions;
+import gg.paceman.aatracker.DeltaReceiver;
+import gg.paceman.aatracker.TrackerSession;
+import gg.paceman.aatracker.util.PostUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays a recorded run against a {@link TrackerSession} pointed at a {@link PaceManStubServer}, and reports the
+ * requests it made, how long each change took to be sent, and how the sent payloads compare to a golden transcript.
+ * <p>
+ * Usage: ReplayHarness [recording json, or "example"] [speed] [golden transcript]
+ * <p>
+ * A recording is a JSON object with a "steps" array. Each step has "at", the milliseconds since the start of the
+ * recording, and whichever of "latest_world", "record" (the file contents as JSON objects) and "events" (the whole
+ * events.log contents as a string) changed at that point. Without a recording, one is made from the files in
+ * "Example Data" by completing the example record's timelines, advancements and criteria in order.
+ * <p>
+ * Snapshots are written into a temporary directory laid out like a home folder and an instance. A speed of 1 replays
+ * in real time and higher speeds replay faster. A speed of 0 (the default) writes each step once the previous one was
+ * sent or nothing was sent for a while, which is the only speed that gives the same transcript on every run.
+ * <p>
+ * The transcript is the last payload received for each step, without the access key and the values that depend on the
+ * temporary directory or file times. If the golden transcript doesn't exist yet, it is written instead of compared.
+ */
+public final class ReplayHarness {
+    private static final Gson GSON = new Gson();
+    private static final String[] UNSTABLE_KEYS = {"accessKey", "seq", "worldId", "lastRecordModified"};
+    private static final String DEFAULT_WORLD_NAME = "Random Speedrun #1";
+    private static final long EXAMPLE_STEP_MS = 1000;
+    private static final long SETTLE_MS = 1500;
+    private static final long QUIET_MS = 300;
+
+    private final Path homePath;
+    private final Path savesPath;
+    private final DeltaReceiver deltaReceiver = new DeltaReceiver();
+    private final List<StepResult> results = new ArrayList<>();
+    private int currentStep = -1;
+    private long lastRequestNanos = 0;
+    private long rejectedDeltas = 0;
+    private long kills = 0;
+
+    private String worldName = DEFAULT_WORLD_NAME;
+    private String lastEvents = "";
+
+    private ReplayHarness(Path root) {
+        this.homePath = root.resolve("home");
+        this.savesPath = root.resolve("instance").resolve(".minecraft").resolve("saves");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String source = args.length > 0 ? args[0] : "example";
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        @Nullable Path goldenPath = args.length > 2 ? Paths.get(args[2]) : null;
+        List<Step> steps = source.equals("example") ? ReplayHarness.exampleSteps(Paths.get("Example Data")) : ReplayHarness.readRecording(Paths.get(source));
+
+        AATrackerOptions options = AATrackerOptions.load();
+        // Never the real key, requests only go to the stub but end up in the transcript
+        options.accessKey = "replay";
+        AATracker.logConsumer = s -> {
+        };
+        AATracker.debugConsumer = s -> {
+        };
+        // Reads of half written files are expected at higher speeds, so errors are only counted
+        List<String> errors = new ArrayList<>();
+        AATracker.errorConsumer = s -> {
+            synchronized (errors) {
+                errors.add(s.split("\n", 2)[0]);
+            }
+        };
+        AATracker.warningConsumer = AATracker.errorConsumer;
+
+        Path root = Files.createTempDirectory("aatracker-replay");
+        ReplayHarness harness = new ReplayHarness(root);
+        harness.writeInstanceConfig(root.resolve("instance").resolve(".minecraft"));
+
+        long startNanos;
+        TrackerSession tracker;
+        try (PaceManStubServer stub = PaceManStubServer.start(0)) {
+            stub.setListener(harness::onRequest);
+            options.apiBaseUrl = stub.getBaseUrl();
+            tracker = new TrackerSession(false, harness.homePath, root.resolve("data"), options, Clock.systemUTC(), PostUtil::sendData);
+            tracker.start();
+
+            System.out.printf("Replaying %d steps from %s at %s (delta: %s, gzip: %s)%n", steps.size(), source, speed > 0 ? speed + "x" : "lockstep", options.useDeltaPayloads, options.gzipPayloads);
+            startNanos = System.nanoTime();
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                if (speed > 0) {
+                    long sleepNanos = startNanos + (long) (step.at * 1_000_000 / speed) - System.nanoTime();
+                    if (sleepNanos > 0) Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                }
+                harness.write(step);
+                if (speed <= 0) harness.awaitSettled(i);
+            }
+            harness.awaitSettled(steps.size() - 1);
+
+            // The run ends when the world is left, which should kill it on PaceMan.gg
+            Files.delete(harness.homePath.resolve("speedrunigt").resolve("latest_world.json"));
+            harness.awaitKill();
+            tracker.stop();
+
+            System.out.printf("Finished in %.1f s%n%n", (System.nanoTime() - startNanos) / 1e9);
+            System.out.printf("Sends: %d sendevent, %d senddelta, %d kill (%d deltas needed a resync)%n",
+                    stub.getRequests("/api/aa/sendevent"), stub.getRequests("/api/aa/senddelta"), stub.getRequests("/api/aa/kill"), harness.rejectedDeltas);
+            System.out.printf("Bytes: %d on the wire, %d decoded, %d of headers%n", stub.getBodyBytes(), stub.getDecodedBodyBytes(), stub.getHeaderBytes());
+        } finally {
+            ReplayHarness.deleteRecursively(root);
+        }
+        harness.printLatencies();
+        synchronized (errors) {
+            System.out.printf("Tracker errors and warnings: %d%s%n", errors.size(), errors.isEmpty() ? "" : ", first: " + errors.get(0));
+        }
+
+        List<String> transcript = harness.getTranscript();
+        if (goldenPath != null && Files.exists(goldenPath)) {
+            harness.compare(Files.readAllLines(goldenPath, StandardCharsets.UTF_8));
+        } else if (goldenPath != null) {
+            Files.write(goldenPath, transcript, StandardCharsets.UTF_8);
+            System.out.printf("%nWrote golden transcript of %d payloads to %s%n", transcript.size(), goldenPath);
+        }
+        System.out.println();
+        System.out.println(tracker.getMetrics().toSummary());
+    }
+
+    /**
+     * Reads a recording made of timestamped snapshots, see the class description for the format.
+     */
+    private static List<Step> readRecording(Path path) throws IOException {
+        JsonObject recording = GSON.fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), JsonObject.class);
+        List<Step> steps = new ArrayList<>();
+        for (JsonElement element : recording.getAsJsonArray("steps")) {
+            JsonObject step = element.getAsJsonObject();
+            steps.add(new Step(
+                    step.get("at").getAsLong(),
+                    step.has("latest_world") ? step.getAsJsonObject("latest_world") : null,
+                    step.has("record") ? step.getAsJsonObject("record") : null,
+                    step.has("events") ? step.get("events").getAsString() : null
+            ));
+        }
+        steps.sort((a, b) -> Long.compare(a.at, b.at));
+        return steps;
+    }
+
+    /**
+     * Makes a recording of the example run, with a step for every second of RTA in which a timeline, advancement or
+     * criterion was completed. Each step has the record and events.log as they would be at the end of that second.
+     */
+    private static List<Step> exampleSteps(Path exampleData) throws IOException {
+        JsonObject record = GSON.fromJson(new String(Files.readAllBytes(exampleData.resolve("record_example.json")), StandardCharsets.UTF_8), JsonObject.class);
+        JsonObject latestWorld = GSON.fromJson(new String(Files.readAllBytes(exampleData.resolve("latest_world_example.json")), StandardCharsets.UTF_8), JsonObject.class);
+        latestWorld.addProperty("world_path", DEFAULT_WORLD_NAME);
+        latestWorld.addProperty("category", "ALL_ADVANCEMENTS");
+
+        TreeSet<Long> times = new TreeSet<>();
+        for (JsonElement timeline : record.getAsJsonArray("timelines")) {
+            times.add(ReplayHarness.stepTime(timeline.getAsJsonObject().get("rta").getAsLong()));
+        }
+        for (Map.Entry<String, JsonElement> entry : record.getAsJsonObject("advancements").entrySet()) {
+            JsonObject advancement = entry.getValue().getAsJsonObject();
+            if (advancement.get("complete").getAsBoolean()) {
+                times.add(ReplayHarness.stepTime(advancement.get("rta").getAsLong()));
+            }
+            if (!advancement.has("criteria")) continue;
+            for (Map.Entry<String, JsonElement> criterion : advancement.getAsJsonObject("criteria").entrySet()) {
+                times.add(ReplayHarness.stepTime(criterion.getValue().getAsJsonObject().get("rta").getAsLong()));
+            }
+        }
+
+        List<Step> steps = new ArrayList<>();
+        steps.add(new Step(0, latestWorld, ReplayHarness.recordAt(record, 0), ""));
+        for (long at : times) {
+            StringBuilder events = new StringBuilder();
+            for (JsonElement element : record.getAsJsonArray("timelines")) {
+                JsonObject timeline = element.getAsJsonObject();
+                if (timeline.get("rta").getAsLong() > at) continue;
+                events.append("rsg.").append(timeline.get("name").getAsString()).append(' ').append(timeline.get("rta").getAsLong()).append(' ').append(timeline.get("igt").getAsLong()).append('\n');
+            }
+            steps.add(new Step(at, null, ReplayHarness.recordAt(record, at), events.toString()));
+        }
+        return steps;
+    }
+
+    private static long stepTime(long rta) {
+        return (rta / EXAMPLE_STEP_MS + 1) * EXAMPLE_STEP_MS;
+    }
+
+    /**
+     * @return a copy of a record with only what was done by the given RTA
+     */
+    private static JsonObject recordAt(JsonObject record, long rta) {
+        JsonObject copy = record.deepCopy();
+        copy.addProperty("is_completed", false);
+
+        JsonArray timelines = new JsonArray();
+        for (JsonElement timeline : record.getAsJsonArray("timelines")) {
+            if (timeline.getAsJsonObject().get("rta").getAsLong() <= rta) timelines.add(timeline.deepCopy());
+        }
+        copy.add("timelines", timelines);
+
+        JsonObject advancements = copy.getAsJsonObject("advancements");
+        for (String name : new ArrayList<>(advancements.keySet())) {
+            JsonObject advancement = advancements.getAsJsonObject(name);
+            if (advancement.has("criteria")) {
+                JsonObject criteria = advancement.getAsJsonObject("criteria");
+                for (String criterion : new ArrayList<>(criteria.keySet())) {
+                    if (criteria.getAsJsonObject(criterion).get("rta").getAsLong() > rta) criteria.remove(criterion);
+                }
+            }
+            if (advancement.get("complete").getAsBoolean() && advancement.get("rta").getAsLong() > rta) {
+                advancement.addProperty("complete", false);
+                advancement.addProperty("igt", 0);
+                advancement.addProperty("rta", 0);
+            }
+            if (!advancement.get("complete").getAsBoolean() && (!advancement.has("criteria") || advancement.getAsJsonObject("criteria").size() == 0)) {
+                advancements.remove(name);
+            }
+        }
+        return copy;
+    }
+
+    private void writeInstanceConfig(Path minecraftPath) throws IOException {
+        Path atumPath = minecraftPath.resolve("config").resolve("mcsr").resolve("atum.json");
+        Files.createDirectories(atumPath.getParent());
+        Files.write(atumPath, "{\"hasLegalSettings\":true,\"seed\":\"\",\"difficulty\":\"EASY\"}".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(this.savesPath);
+        Files.createDirectories(this.homePath.resolve("speedrunigt"));
+        Files.createDirectories(this.homePath.resolveSibling("data"));
+    }
+
+    /**
+     * Writes a step's snapshots the way SpeedRunIGT would: events.log is appended to, and latest_world.json is written
+     * last so the world's files already exist when the tracker reads it.
+     */
+    private void write(Step step) throws IOException {
+        synchronized (this) {
+            this.results.add(new StepResult());
+            this.currentStep = this.results.size() - 1;
+        }
+        @Nullable JsonObject latestWorld = null;
+        if (step.latestWorld != null) {
+            latestWorld = step.latestWorld.deepCopy();
+            String recordedPath = latestWorld.get("world_path").getAsString();
+            // Recorded paths may be from another OS, only the world name is kept
+            this.worldName = recordedPath.substring(Math.max(recordedPath.lastIndexOf('/'), recordedPath.lastIndexOf('\\')) + 1);
+            latestWorld.addProperty("world_path", this.savesPath.resolve(this.worldName).toAbsolutePath().toString());
+        }
+        Path speedrunigtPath = this.savesPath.resolve(this.worldName).resolve("speedrunigt");
+        Files.createDirectories(speedrunigtPath);
+        Path eventsPath = speedrunigtPath.resolve("events.log");
+
+        if (step.events != null) {
+            if (Files.exists(eventsPath) && step.events.startsWith(this.lastEvents)) {
+                Files.write(eventsPath, step.events.substring(this.lastEvents.length()).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            } else {
+                Files.write(eventsPath, step.events.getBytes(StandardCharsets.UTF_8));
+            }
+            this.lastEvents = step.events;
+        }
+        if (step.record != null) {
+            Files.write(speedrunigtPath.resolve("record.json"), GSON.toJson(step.record).getBytes(StandardCharsets.UTF_8));
+        }
+        if (latestWorld != null) {
+            if (!Files.exists(eventsPath)) {
+                Files.write(eventsPath, new byte[0]);
+                this.lastEvents = "";
+            }
+            Files.write(this.homePath.resolve("speedrunigt").resolve("latest_world.json"), GSON.toJson(latestWorld).getBytes(StandardCharsets.UTF_8));
+        }
+        synchronized (this) {
+            this.results.get(this.currentStep).writtenNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Waits until a step's payload was received and no more requests came for a moment, or until nothing was sent for
+     * long enough that nothing will be.
+     */
+    private synchronized void awaitSettled(int step) throws InterruptedException {
+        if (step < 0) return;
+        StepResult result = this.results.get(step);
+        long deadline = result.writtenNanos + SETTLE_MS * 1_000_000;
+        while (true) {
+            long now = System.nanoTime();
+            long until = result.firstSendNanos >= 0 ? this.lastRequestNanos + QUIET_MS * 1_000_000 : deadline;
+            if (now >= until) return;
+            this.wait(Math.max(1, (until - now) / 1_000_000));
+        }
+    }
+
+    private synchronized void awaitKill() throws InterruptedException {
+        long deadline = System.nanoTime() + SETTLE_MS * 1_000_000;
+        long now;
+        while (this.kills == 0 && (now = System.nanoTime()) < deadline) {
+            this.wait(Math.max(1, (deadline - now) / 1_000_000));
+        }
+    }
+
+    private synchronized void onRequest(String path, String body) {
+        this.lastRequestNanos = System.nanoTime();
+        this.notifyAll();
+        if (path.equals("/api/aa/kill")) this.kills++;
+        if (this.currentStep < 0 || !(path.equals("/api/aa/sendevent") || path.equals("/api/aa/senddelta"))) return;
+
+        JsonObject message = GSON.fromJson(body, JsonObject.class);
+        JsonObject payload = message;
+        if (path.equals("/api/aa/senddelta") || message.has("seq")) {
+            if (!this.deltaReceiver.receive(message)) {
+                this.rejectedDeltas++;
+                return;
+            }
+            payload = this.deltaReceiver.getSnapshot(message.get("worldId").getAsString());
+        }
+        payload = payload.deepCopy();
+        for (String key : UNSTABLE_KEYS) {
+            payload.remove(key);
+        }
+
+        StepResult result = this.results.get(this.currentStep);
+        if (result.firstSendNanos < 0) result.firstSendNanos = this.lastRequestNanos;
+        result.payload = payload;
+    }
+
+    private synchronized void printLatencies() {
+        long[] latencies = this.results.stream().filter(result -> result.firstSendNanos >= 0).mapToLong(result -> result.firstSendNanos - result.writtenNanos).sorted().toArray();
+        System.out.printf("Steps sent: %d of %d%n", latencies.length, this.results.size());
+        System.out.printf("Write to send latency: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                LoadGenerator.percentile(latencies, 50) / 1e6,
+                LoadGenerator.percentile(latencies, 90) / 1e6,
+                LoadGenerator.percentile(latencies, 99) / 1e6,
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6
+        );
+    }
+
+    /**
+     * @return a JSON line for every step a payload was received for
+     */
+    private synchronized List<String> getTranscript() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < this.results.size(); i++) {
+            JsonObject payload = this.results.get(i).payload;
+            if (payload == null) continue;
+            JsonObject line = new JsonObject();
+            line.addProperty("step", i);
+            line.add("payload", payload);
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private void compare(List<String> goldenLines) {
+        Map<Integer, JsonObject> golden = ReplayHarness.parseTranscript(goldenLines);
+        Map<Integer, JsonObject> actual = ReplayHarness.parseTranscript(this.getTranscript());
+        TreeSet<Integer> steps = new TreeSet<>(golden.keySet());
+        steps.addAll(actual.keySet());
+
+        List<String> divergences = new ArrayList<>();
+        for (int step : steps) {
+            JsonObject expected = golden.get(step);
+            JsonObject received = actual.get(step);
+            if (expected == null) {
+                divergences.add("step " + step + ": not in the golden transcript");
+            } else if (received == null) {
+                divergences.add("step " + step + ": nothing received");
+            } else if (!expected.equals(received)) {
+                TreeSet<String> keys = new TreeSet<>(expected.keySet());
+                keys.addAll(received.keySet());
+                divergences.add("step " + step + ": " + keys.stream().filter(key -> !Objects.equals(expected.get(key), received.get(key))).collect(Collectors.joining(", ")) + " differ");
+            }
+        }
+        System.out.println();
+        if (divergences.isEmpty()) {
+            System.out.printf("Matches the golden transcript (%d payloads)%n", golden.size());
+            return;
+        }
+        System.out.printf("%d divergences from the golden transcript:%n", divergences.size());
+        divergences.forEach(divergence -> System.out.println("  " + divergence));
+    }
+
+    private static Map<Integer, JsonObject> parseTranscript(List<String> lines) {
+        Map<Integer, JsonObject> payloads = new TreeMap<>();
+        for (String line : lines) {
+            if (line.trim().isEmpty()) continue;
+            JsonObject json = GSON.fromJson(line, JsonObject.class);
+            payloads.put(json.get("step").getAsInt(), json.getAsJsonObject("payload"));
+        }
+        return payloads;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(path)) {
+            paths = walk.collect(Collectors.toList());
+        }
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Files.delete(paths.get(i));
+        }
+    }
+
+    private static class Step {
+        private final long at;
+        private final @Nullable JsonObject latestWorld;
+        private final @Nullable JsonObject record;
+        private final @Nullable String events;
+
+        private Step(long at, @Nullable JsonObject latestWorld, @Nullable JsonObject record, @Nullable String events) {
+            this.at = at;
+            this.latestWorld = latestWorld;
+            this.record = record;
+            this.events = events;
+        }
+    }
+
+    private static class StepResult {
+        private long writtenNanos = 0;
+        private long firstSendNanos = -1;
+        private @Nullable JsonObject payload = null;
+    }
+}
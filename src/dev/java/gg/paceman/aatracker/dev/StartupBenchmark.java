@@ -0,0 +1,176 @@
+package gg.paceman.aatracker.dev;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import gg.paceman.aatracker.launching.AATrackerJarLaunch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the jar launch takes from starting the process to the tracker's first check of latest_world.json,
+ * and how much memory the process holds at that point, for each way of launching it. Every launch is a new JVM using
+ * this JVM's class path, with its own config and home directory holding a world made from the files in "Example Data".
+ * One more launch of each mode with -verbose:class counts the AWT/Swing and Gson classes loaded.
+ * <p>
+ * Usage: StartupBenchmark [launches per mode] [modes: gui, nogui, daemon]
+ * <p>
+ * The gui mode needs a display, launches that fail are reported as such.
+ */
+public final class StartupBenchmark {
+    private static final String WORLD_NAME = "Random Speedrun #1";
+    private static final long LAUNCH_TIMEOUT_MS = 30_000;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int launches = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<String> modes = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : Arrays.asList("gui", "nogui", "daemon");
+
+        Path root = Files.createTempDirectory("paceman-aa-startup");
+        try {
+            StartupBenchmark.setUp(root, Paths.get("Example Data"));
+            System.out.printf("%d launches per mode, time from process start to the first tick%n%n", launches);
+            for (String mode : modes) {
+                StartupBenchmark.benchmark(root, mode, launches);
+            }
+        } finally {
+            StartupBenchmark.deleteRecursively(root);
+        }
+    }
+
+    private static void benchmark(Path root, String mode, int launches) throws IOException, InterruptedException {
+        long[] times = new long[launches];
+        long[] rss = new long[launches];
+        int finished = 0;
+        String failure = null;
+        for (int i = 0; i < launches; i++) {
+            Launch launch = StartupBenchmark.launch(root, mode, false);
+            if (launch.failure != null) {
+                failure = launch.failure;
+                continue;
+            }
+            times[finished] = launch.nanos;
+            rss[finished] = launch.rssKb;
+            finished++;
+        }
+        if (finished == 0) {
+            System.out.printf("%-7s failed: %s%n", mode, failure);
+            return;
+        }
+        times = Arrays.copyOf(times, finished);
+        rss = Arrays.copyOf(rss, finished);
+        Arrays.sort(times);
+        Launch classes = StartupBenchmark.launch(root, mode, true);
+
+        System.out.printf("%-7s first tick: mean %.0f ms, p50 %.0f ms, min %.0f ms, max %.0f ms | RSS: mean %.1f MB | classes: %s%s%n",
+                mode,
+                Arrays.stream(times).average().orElse(0) / 1e6,
+                LoadGenerator.percentile(times, 50) / 1e6,
+                times[0] / 1e6,
+                times[times.length - 1] / 1e6,
+                Arrays.stream(rss).average().orElse(0) / 1024,
+                classes.failure != null ? "unknown" : String.format("%d loaded, %d AWT/Swing, %d Gson", classes.classes, classes.awtClasses, classes.gsonClasses),
+                finished < launches ? String.format(" (%d of %d launches failed: %s)", launches - finished, launches, failure) : ""
+        );
+    }
+
+    private static Launch launch(Path root, String mode, boolean verboseClass) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Duser.home=" + root.resolve("home"));
+        if (verboseClass) command.add("-verbose:class");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AATrackerJarLaunch.class.getName());
+        command.add("--skiplocks");
+        command.add("--startup-probe");
+        if (!mode.equals("gui")) command.add("--" + mode);
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().put("XDG_CONFIG_HOME", root.resolve("config").toString());
+        Launch launch = new Launch();
+        long start = System.nanoTime();
+        Process process = builder.start();
+        String lastLine = "";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("{\"type\":\"startup_probe\"")) {
+                    launch.nanos = System.nanoTime() - start;
+                    launch.rssKb = JsonParser.parseString(line).getAsJsonObject().get("rssKb").getAsLong();
+                } else if (line.startsWith("[Loaded ") || line.contains("[class,load]")) {
+                    launch.classes++;
+                    if (line.contains(" java.awt.") || line.contains(" javax.swing.") || line.contains(" sun.awt.")) launch.awtClasses++;
+                    if (line.contains(" com.google.gson.")) launch.gsonClasses++;
+                } else if (!line.trim().isEmpty()) {
+                    lastLine = line;
+                }
+            }
+        }
+        if (!process.waitFor(LAUNCH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            launch.failure = "timed out";
+        } else if (launch.nanos == 0) {
+            launch.failure = "exited with " + process.exitValue() + (lastLine.isEmpty() ? "" : ", last output: " + lastLine);
+        }
+        return launch;
+    }
+
+    /**
+     * Writes tracker options that never send anything, and a world from the example files that latest_world.json
+     * points to.
+     */
+    private static void setUp(Path root, Path exampleData) throws IOException {
+        Path optionsPath = root.resolve("config").resolve("PaceMan").resolve("AA").resolve("options.json");
+        Files.createDirectories(optionsPath.getParent());
+        Files.write(optionsPath, "{\"accessKey\":\"startup-benchmark\",\"dryRun\":true,\"apiBaseUrl\":\"http://127.0.0.1:9\"}".getBytes(StandardCharsets.UTF_8));
+
+        Path minecraftPath = root.resolve("instance").resolve(".minecraft");
+        Path atumPath = minecraftPath.resolve("config").resolve("mcsr").resolve("atum.json");
+        Files.createDirectories(atumPath.getParent());
+        Files.write(atumPath, "{\"hasLegalSettings\":true,\"seed\":\"\",\"difficulty\":\"EASY\"}".getBytes(StandardCharsets.UTF_8));
+
+        Path worldPath = minecraftPath.resolve("saves").resolve(WORLD_NAME);
+        Path speedrunigtPath = worldPath.resolve("speedrunigt");
+        Files.createDirectories(speedrunigtPath);
+        Files.copy(exampleData.resolve("record_example.json"), speedrunigtPath.resolve("record.json"));
+        Files.write(speedrunigtPath.resolve("events.log"), "rsg.enter_nether 120000 119000\n".getBytes(StandardCharsets.UTF_8));
+
+        JsonObject latestWorld = JsonParser.parseString(new String(Files.readAllBytes(exampleData.resolve("latest_world_example.json")), StandardCharsets.UTF_8)).getAsJsonObject();
+        latestWorld.addProperty("world_path", worldPath.toAbsolutePath().toString());
+        Path latestWorldPath = root.resolve("home").resolve("speedrunigt").resolve("latest_world.json");
+        Files.createDirectories(latestWorldPath.getParent());
+        Files.write(latestWorldPath, latestWorld.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        File[] children = path.toFile().listFiles();
+        if (children != null) {
+            for (File child : children) {
+                StartupBenchmark.deleteRecursively(child.toPath());
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private static class Launch {
+        private long nanos = 0;
+        private long rssKb = -1;
+        private int classes = 0;
+        private int awtClasses = 0;
+        private int gsonClasses = 0;
+        private String failure = null;
+    }
+}
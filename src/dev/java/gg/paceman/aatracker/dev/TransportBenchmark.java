@@ -0,0 +1,95 @@
+package gg.paceman.aatracker.dev;
+
+import gg.paceman.aatracker.util.PostUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Compares the per-request latency and bytes on the wire of {@link PostUtil} against the old one connection per
+ * request implementation, using a {@link PaceManStubServer}.
+ * <p>
+ * Usage: TransportBenchmark [payload json file] [requests]
+ * <p>
+ * The stub is plain HTTP on localhost, so the numbers only show the TCP setup part of what keep-alive saves, not TLS.
+ */
+public final class TransportBenchmark {
+    private static final int WARMUP_REQUESTS = 50;
+
+    private TransportBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path payloadPath = Paths.get(args.length > 0 ? args[0] : "Example Data/example_send_real.json");
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        String payload = new String(Files.readAllBytes(payloadPath), StandardCharsets.UTF_8);
+
+        try (PaceManStubServer stub = PaceManStubServer.start(0)) {
+            String url = stub.getBaseUrl() + "/api/aa/sendevent";
+            System.out.printf("Payload: %s (%d bytes), %d requests per mode%n%n", payloadPath, payload.length(), requests);
+            System.out.printf("%-22s %10s %10s %10s %10s %12s %12s %12s%n", "mode", "mean us", "p50 us", "p90 us", "p99 us", "connections", "body B/req", "header B/req");
+            TransportBenchmark.run("new connection each", stub, requests, () -> TransportBenchmark.sendWithoutReuse(url, payload));
+            TransportBenchmark.run("keep-alive", stub, requests, () -> PostUtil.sendData(url, payload, false));
+            TransportBenchmark.run("keep-alive + gzip", stub, requests, () -> PostUtil.sendData(url, payload, true));
+        }
+    }
+
+    private static void run(String name, PaceManStubServer stub, int requests, Request request) throws IOException {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            request.send();
+        }
+        stub.resetCounters();
+
+        long[] nanos = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            request.send();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-22s %10.1f %10.1f %10.1f %10.1f %12d %12d %12d%n",
+                name,
+                Arrays.stream(nanos).average().orElse(0) / 1000,
+                LoadGenerator.percentile(nanos, 50) / 1000.0,
+                LoadGenerator.percentile(nanos, 90) / 1000.0,
+                LoadGenerator.percentile(nanos, 99) / 1000.0,
+                stub.getConnections(),
+                stub.getBodyBytes() / requests,
+                stub.getHeaderBytes() / requests
+        );
+    }
+
+    /**
+     * The sending code PostUtil had before connections were reused.
+     */
+    private static void sendWithoutReuse(String endpointUrl, String jsonData) throws IOException {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(endpointUrl).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream os = connection.getOutputStream()) {
+                byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
+                os.write(input, 0, input.length);
+            }
+            connection.getResponseCode();
+            connection.getResponseMessage();
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private interface Request {
+        void send() throws IOException;
+    }
+}
@@ -0,0 +1,90 @@
+package gg.paceman.aatracker.jmh;
+
+import gg.paceman.aatracker.EventIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the checks made on every tick (nether entered, cheat events, last useful event time) done by scanning the
+ * list of event lines, as the tracker used to, against reading them from an {@link EventIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventIndexBenchmark {
+    private static final long EVENTS_MODIFIED_TIME = 1700000000000L;
+
+    @Param({"10000"})
+    public int lines;
+
+    private List<String> events;
+    private EventIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.events = SyntheticData.eventsLogLines(SyntheticData.readExampleRecord(), this.lines);
+        this.index = this.buildIndex();
+    }
+
+    @Benchmark
+    public void scanChecks(Blackhole blackhole) {
+        blackhole.consume(EventIndexBenchmark.hasNetherEnter(this.events));
+        blackhole.consume(EventIndexBenchmark.hasEvilEvents(this.events));
+        blackhole.consume(EventIndexBenchmark.getLastUsefulEventTime(this.events, EVENTS_MODIFIED_TIME));
+    }
+
+    @Benchmark
+    public void indexChecks(Blackhole blackhole) {
+        blackhole.consume(this.index.hasNetherEnter());
+        blackhole.consume(this.index.hasCheatEvents());
+        blackhole.consume(this.index.getLastUsefulEventTime(EVENTS_MODIFIED_TIME));
+    }
+
+    /**
+     * The one time cost of indexing every line, paid as events.log is read.
+     */
+    @Benchmark
+    public EventIndex buildIndex() {
+        EventIndex index = new EventIndex();
+        for (String line : this.events) {
+            index.add(line);
+        }
+        return index;
+    }
+
+    // The checks as WorldSession used to do them
+
+    private static boolean hasNetherEnter(List<String> events) {
+        return events.stream().anyMatch(s -> s.startsWith("rsg.enter_nether"));
+    }
+
+    private static boolean hasEvilEvents(List<String> events) {
+        return events.stream().anyMatch(s -> s.startsWith("common.multiplayer") || s.startsWith("common.view_seed") || s.startsWith("common.enable_cheats") || s.startsWith("common.old_world"));
+    }
+
+    private static long getLastUsefulEventTime(List<String> events, long lastEventsMTime) {
+        if (events.isEmpty()) return 0;
+        String last = events.get(events.size() - 1);
+        String[] lastArgs = last.split(" ");
+        if (lastArgs.length < 2) return 0;
+        for (int i = events.size() - 1; i >= 0; i--) {
+            String s = events.get(i);
+            if (s.startsWith("common.leave_world") || s.startsWith("common.rejoin_world")) continue;
+            String[] lastUsefulArgs = s.split(" ");
+            if (lastUsefulArgs.length < 2) continue;
+            try {
+                return lastEventsMTime - Long.parseLong(lastArgs[1]) + Long.parseLong(lastUsefulArgs[1]);
+            } catch (NumberFormatException e) {
+                break;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,140 @@
+package gg.paceman.aatracker.jmh;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark inputs built from the files in "Example Data", optionally scaled up to a larger number of advancements,
+ * criteria and events than a real run would have.
+ */
+public final class SyntheticData {
+    private static final Gson GSON = new Gson();
+    private static final Path EXAMPLE_DATA = Paths.get(System.getProperty("aatracker.exampleData", "Example Data"));
+
+    private SyntheticData() {
+    }
+
+    public static JsonObject readExampleRecord() throws IOException {
+        return GSON.fromJson(new String(Files.readAllBytes(EXAMPLE_DATA.resolve("record_example.json")), StandardCharsets.UTF_8), JsonObject.class);
+    }
+
+    public static JsonObject readExampleLatestWorld() throws IOException {
+        return GSON.fromJson(new String(Files.readAllBytes(EXAMPLE_DATA.resolve("latest_world_example.json")), StandardCharsets.UTF_8), JsonObject.class);
+    }
+
+    /**
+     * Copies every advancement and timeline scale - 1 extra times under a new name, and adds scale - 1 extra criteria
+     * per existing criterion, so the criteria lists sent in the payload grow too.
+     */
+    public static JsonObject scaleRecord(JsonObject record, int scale) {
+        JsonObject scaled = record.deepCopy();
+        if (scale <= 1) return scaled;
+
+        JsonObject advancements = scaled.getAsJsonObject("advancements");
+        List<Map.Entry<String, JsonElement>> original = new ArrayList<>(advancements.entrySet());
+        for (int i = 1; i < scale; i++) {
+            for (Map.Entry<String, JsonElement> entry : original) {
+                advancements.add(entry.getKey() + "_" + i, entry.getValue().deepCopy());
+            }
+        }
+        // Only the original advancements get extra criteria, so the total grows linearly with the scale
+        for (Map.Entry<String, JsonElement> entry : original) {
+            JsonObject criteria = entry.getValue().getAsJsonObject().getAsJsonObject("criteria");
+            if (criteria == null) continue;
+            for (Map.Entry<String, JsonElement> criterion : new ArrayList<>(criteria.entrySet())) {
+                for (int i = 1; i < scale; i++) {
+                    criteria.add(criterion.getKey() + "_" + i, criterion.getValue().deepCopy());
+                }
+            }
+        }
+
+        JsonArray timelines = scaled.getAsJsonArray("timelines");
+        int timelineCount = timelines.size();
+        for (int i = 1; i < scale; i++) {
+            for (int j = 0; j < timelineCount; j++) {
+                JsonObject timeline = timelines.get(j).getAsJsonObject().deepCopy();
+                timeline.addProperty("name", timeline.get("name").getAsString() + "_" + i);
+                timelines.add(timeline);
+            }
+        }
+        return scaled;
+    }
+
+    /**
+     * Builds events.log contents from the timelines of an unscaled record, with a leave and rejoin after each timeline
+     * like a runner pausing, repeated scale times with increasing times.
+     */
+    public static String eventsLog(JsonObject record, int scale) {
+        JsonArray timelines = record.getAsJsonArray("timelines");
+        StringBuilder builder = new StringBuilder();
+        long offset = 0;
+        for (int i = 0; i < scale; i++) {
+            long last = 0;
+            for (JsonElement element : timelines) {
+                JsonObject timeline = element.getAsJsonObject();
+                long rta = timeline.get("rta").getAsLong() + offset;
+                long igt = timeline.get("igt").getAsLong() + offset;
+                builder.append("rsg.").append(timeline.get("name").getAsString()).append(' ').append(rta).append(' ').append(igt).append('\n');
+                builder.append("common.leave_world ").append(rta + 1000).append(' ').append(igt).append('\n');
+                builder.append("common.rejoin_world ").append(rta + 3000).append(' ').append(igt).append('\n');
+                last = Math.max(last, rta + 3000);
+            }
+            offset = last;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the lines of a synthetic events.log with exactly the given number of lines
+     */
+    public static List<String> eventsLogLines(JsonObject record, int lines) {
+        int perScale = record.getAsJsonArray("timelines").size() * 3;
+        String[] all = SyntheticData.eventsLog(record, (lines + perScale - 1) / perScale).split("\n");
+        List<String> result = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            result.add(all[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a world with a scaled record.json and events.log, and a latest_world.json pointing at it.
+     *
+     * @return the world directory, named like a random speedrun world
+     */
+    public static Path writeWorld(Path root, int scale) throws IOException {
+        JsonObject exampleRecord = SyntheticData.readExampleRecord();
+        JsonObject record = SyntheticData.scaleRecord(exampleRecord, scale);
+        Path worldPath = root.resolve(".minecraft").resolve("saves").resolve("Random Speedrun #1");
+        Path speedrunigtPath = worldPath.resolve("speedrunigt");
+        Files.createDirectories(speedrunigtPath);
+        Files.write(speedrunigtPath.resolve("record.json"), GSON.toJson(record).getBytes(StandardCharsets.UTF_8));
+        Files.write(speedrunigtPath.resolve("events.log"), SyntheticData.eventsLog(exampleRecord, scale).getBytes(StandardCharsets.UTF_8));
+
+        JsonObject latestWorld = SyntheticData.readExampleLatestWorld();
+        latestWorld.addProperty("world_path", worldPath.toAbsolutePath().toString());
+        latestWorld.addProperty("category", "ALL_ADVANCEMENTS");
+        Files.write(root.resolve("latest_world.json"), GSON.toJson(latestWorld).getBytes(StandardCharsets.UTF_8));
+        return worldPath;
+    }
+
+    public static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        List<Path> paths = new ArrayList<>();
+        Files.walk(path).forEach(paths::add);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Files.delete(paths.get(i));
+        }
+    }
+}
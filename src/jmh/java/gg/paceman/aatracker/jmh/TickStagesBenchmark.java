@@ -0,0 +1,135 @@
+package gg.paceman.aatracker.jmh;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.EventsLogReader;
+import gg.paceman.aatracker.PayloadBuilder;
+import gg.paceman.aatracker.PayloadSerializer;
+import gg.paceman.aatracker.RecordData;
+import gg.paceman.aatracker.RecordParser;
+import gg.paceman.aatracker.TrackerMetrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each stage of a world tick on its own, from reading latest_world.json to comparing the payload with the
+ * last one sent. Scale 1 is the example record, 10 and 100 have that many times the advancements, criteria and events.
+ * <p>
+ * Run with "gradlew jmh", which also reports allocations per operation through the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickStagesBenchmark {
+    private static final Gson GSON = new Gson();
+
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    private Path root;
+    private Path latestWorldPath;
+    private Path recordPath;
+    private Path eventsPath;
+
+    private JsonObject latestWorld;
+    private RecordData record;
+    private List<String> events;
+    private JsonObject payload;
+    private final PayloadSerializer serializer = new PayloadSerializer();
+    private PayloadBuilder payloadBuilder;
+    private byte[] lastSendFingerprint;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("aatracker-jmh");
+        Path worldPath = SyntheticData.writeWorld(this.root, this.scale);
+        this.latestWorldPath = this.root.resolve("latest_world.json");
+        this.recordPath = worldPath.resolve("speedrunigt").resolve("record.json");
+        this.eventsPath = worldPath.resolve("speedrunigt").resolve("events.log");
+
+        this.latestWorld = this.parseLatestWorld();
+        this.record = this.parseRecord();
+        this.events = new ArrayList<>(this.ingestEvents());
+        this.payload = this.buildPayload();
+        this.payloadBuilder = new PayloadBuilder(new TrackerMetrics());
+        this.payloadBuilder.build(this.record, this.latestWorld, this.events, "0123456789abcdef", 1700000000000L);
+        this.lastSendFingerprint = this.serializer.fingerprint(this.payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticData.deleteRecursively(this.root);
+    }
+
+    @Benchmark
+    public JsonObject parseLatestWorld() throws IOException {
+        return GSON.fromJson(new String(Files.readAllBytes(this.latestWorldPath)), JsonObject.class);
+    }
+
+    /**
+     * Reading the whole events.log, as happens for the first tick of a world.
+     */
+    @Benchmark
+    public List<String> ingestEvents() throws IOException {
+        return new EventsLogReader().update(this.eventsPath);
+    }
+
+    @Benchmark
+    public RecordData parseRecord() throws IOException {
+        return RecordParser.parse(this.recordPath);
+    }
+
+    @Benchmark
+    public JsonArray extractAdvancements() {
+        return PayloadBuilder.getCompleted(this.record);
+    }
+
+    @Benchmark
+    public JsonObject extractCriteria() {
+        return PayloadBuilder.getCriterias(this.record);
+    }
+
+    /**
+     * Building every section, as for the first payload of a world.
+     */
+    @Benchmark
+    public JsonObject buildPayload() {
+        return new PayloadBuilder(new TrackerMetrics()).build(this.record, this.latestWorld, this.events, "0123456789abcdef", 1700000000000L);
+    }
+
+    /**
+     * Building a payload from the same data again, which reuses every section.
+     */
+    @Benchmark
+    public JsonObject rebuildUnchangedPayload() {
+        return this.payloadBuilder.build(this.record, this.latestWorld, this.events, "0123456789abcdef", 1700000000000L);
+    }
+
+    /**
+     * Serializing the payload with the access key into the buffer handed to the transport.
+     */
+    @Benchmark
+    public int serializePayload() {
+        return this.serializer.write(this.payload, "accesskey").size();
+    }
+
+    /**
+     * Digesting the whole payload, which building it from kept sections avoids.
+     */
+    @Benchmark
+    public boolean compareLastSend() {
+        return Arrays.equals(this.lastSendFingerprint, this.serializer.fingerprint(this.payload));
+    }
+}
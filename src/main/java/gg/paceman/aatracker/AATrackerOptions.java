@@ -1,16 +1,24 @@
 package gg.paceman.aatracker;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -18,18 +26,31 @@ import java.util.Optional;
  */
 public class AATrackerOptions {
     public static final Path SAVE_PATH = getPaceManAADir().resolve("options.json").toAbsolutePath();
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static AATrackerOptions instance;
 
     public String accessKey = "";
     public boolean enabledForPlugin = false;
+    public boolean useFileWatcher = true;
+    public boolean useDeltaPayloads = false;
+    public boolean gzipPayloads = false;
+    public int connectTimeoutMs = 5000;
+    public int readTimeoutMs = 10000;
+    public boolean trackMultipleInstances = true;
+    public int metricsPort = 0; // 0 to disable the local /metrics endpoint
+    public String apiBaseUrl = AATracker.DEFAULT_API_BASE_URL; // e.g. a staging or local server instead of PaceMan.gg
+    public boolean dryRun = false; // Builds payloads but never sends them
+    public int minSendIntervalMs = 1000; // Between payloads of a world, new splits and the end of a run still go out right away
+    public String outputFile = ""; // Also keeps this json file up to date with every payload, e.g. for a stream overlay
+    public String outputWebhookUrl = ""; // Also POSTs every payload here, without the access key
+    public int outputTimeoutMs = 2000; // Writes to an output taking longer are interrupted and counted as failed
+    public int streamPort = 0; // 0 to disable the local /events stream of payloads for overlays
 
     /**
      * Load and return the options file
      */
     public static AATrackerOptions load() throws IOException, JsonSyntaxException {
         if (Files.exists(SAVE_PATH)) {
-            instance = GSON.fromJson(new String(Files.readAllBytes(SAVE_PATH)), AATrackerOptions.class);
+            instance = AATrackerOptions.read(new String(Files.readAllBytes(SAVE_PATH), StandardCharsets.UTF_8));
         } else {
             instance = new AATrackerOptions();
             tryStealKey();
@@ -44,9 +65,9 @@ public class AATrackerOptions {
                     Paths.get(System.getProperty("user.home")).resolve(".PaceMan").resolve("options.json")
             }) {
                 if (Files.exists(path)) {
-                    JsonObject json = GSON.fromJson(new String(Files.readAllBytes(path)), JsonObject.class);
-                    if (json.has("accessKey")) {
-                        instance.accessKey = json.get("accessKey").getAsString();
+                    String accessKey = AATrackerOptions.read(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)).accessKey;
+                    if (!accessKey.isEmpty()) {
+                        instance.accessKey = accessKey;
                         AATracker.log("Access key yoinked from regular tracker options!");
                         return;
                     }
@@ -72,10 +93,106 @@ public class AATrackerOptions {
         return Optional.ofNullable(System.getenv("XDG_CONFIG_HOME")).orElse(System.getProperty("user.home") + "/.config/");
     }
 
+    /**
+     * Reads options with a {@link JsonReader} instead of a Gson instance, which takes longer to set up than the rest of
+     * the tracker's startup. Options missing from the json keep their default value.
+     */
+    private static AATrackerOptions read(String json) throws JsonSyntaxException {
+        AATrackerOptions options = new AATrackerOptions();
+        if (json.trim().isEmpty()) return options;
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Field field = AATrackerOptions.getOptionField(reader.nextName());
+                if (field == null || reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                Class<?> type = field.getType();
+                if (type == String.class) {
+                    field.set(options, reader.nextString());
+                } else if (type == boolean.class) {
+                    field.setBoolean(options, reader.peek() == JsonToken.STRING ? Boolean.parseBoolean(reader.nextString()) : reader.nextBoolean());
+                } else if (type == int.class) {
+                    field.setInt(options, reader.nextInt());
+                } else if (type == long.class) {
+                    field.setLong(options, reader.nextLong());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            // Only possible for truncated json when reading from a String
+            throw new JsonSyntaxException(e);
+        } catch (IllegalAccessException e) {
+            // Option fields are public
+            throw new IllegalStateException(e);
+        }
+        return options;
+    }
+
+    @Nullable
+    private static Field getOptionField(String name) {
+        for (Field field : AATrackerOptions.getOptionFields()) {
+            if (field.getName().equals(name)) return field;
+        }
+        return null;
+    }
+
+    /**
+     * @return the public instance fields in the order they are declared, which is the order they are saved in
+     */
+    private static List<Field> getOptionFields() {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : AATrackerOptions.class.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isPublic(modifiers) && !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @param path a path of the PaceMan.gg API, starting with a slash
+     * @return the URL of the path on the API base URL of these options
+     */
+    public String getApiUrl(String path) {
+        String baseUrl = this.apiBaseUrl.trim();
+        if (baseUrl.isEmpty()) baseUrl = AATracker.DEFAULT_API_BASE_URL;
+        while (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        return baseUrl + path;
+    }
+
     public void save() throws IOException {
         AATrackerOptions.ensurePaceManAADir();
-        FileWriter writer = new FileWriter(SAVE_PATH.toFile());
-        GSON.toJson(this, writer);
-        writer.close();
+        try (JsonWriter writer = new JsonWriter(new FileWriter(SAVE_PATH.toFile()))) {
+            // Same output as Gson's pretty printing
+            writer.setIndent("  ");
+            writer.setHtmlSafe(true);
+            writer.beginObject();
+            for (Field field : AATrackerOptions.getOptionFields()) {
+                Object value = field.get(this);
+                if (value == null) continue;
+                writer.name(field.getName());
+                if (value instanceof Boolean) {
+                    writer.value((boolean) value);
+                } else if (value instanceof Number) {
+                    writer.value((Number) value);
+                } else {
+                    writer.value(value.toString());
+                }
+            }
+            writer.endObject();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,232 @@
+package gg.paceman.aatracker;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Small integer ids for advancement and criterion identifiers, so a record can be kept as bitsets and the payload built
+ * from interned names without any string work.
+ * <p>
+ * The advancements and criteria of 1.16 are known up front. Anything else found in a record (other versions, mods) is
+ * given an id the first time it is seen, so the payload is the same either way. Ids are never freed, so only a limited
+ * number of unknown identifiers get one, and the rest are left out of the payload.
+ */
+public final class AdvancementRegistry {
+    public static final IdTable ADVANCEMENTS = new IdTable(AdvancementRegistry::removeMinecraftPrefix,
+            "minecraft:story/root", "minecraft:story/mine_stone", "minecraft:story/upgrade_tools", "minecraft:story/smelt_iron",
+            "minecraft:story/obtain_armor", "minecraft:story/lava_bucket", "minecraft:story/iron_tools", "minecraft:story/deflect_arrow",
+            "minecraft:story/form_obsidian", "minecraft:story/mine_diamond", "minecraft:story/enter_the_nether", "minecraft:story/shiny_gear",
+            "minecraft:story/enchant_item", "minecraft:story/cure_zombie_villager", "minecraft:story/follow_ender_eye", "minecraft:story/enter_the_end",
+            "minecraft:nether/root", "minecraft:nether/return_to_sender", "minecraft:nether/find_bastion", "minecraft:nether/obtain_ancient_debris",
+            "minecraft:nether/fast_travel", "minecraft:nether/find_fortress", "minecraft:nether/obtain_crying_obsidian", "minecraft:nether/distract_piglin",
+            "minecraft:nether/ride_strider", "minecraft:nether/uneasy_alliance", "minecraft:nether/loot_bastion", "minecraft:nether/use_lodestone",
+            "minecraft:nether/netherite_armor", "minecraft:nether/get_wither_skull", "minecraft:nether/obtain_blaze_rod", "minecraft:nether/charge_respawn_anchor",
+            "minecraft:nether/explore_nether", "minecraft:nether/summon_wither", "minecraft:nether/brew_potion", "minecraft:nether/create_beacon",
+            "minecraft:nether/all_potions", "minecraft:nether/create_full_beacon", "minecraft:nether/all_effects",
+            "minecraft:end/root", "minecraft:end/kill_dragon", "minecraft:end/dragon_egg", "minecraft:end/enter_end_gateway", "minecraft:end/respawn_dragon",
+            "minecraft:end/dragon_breath", "minecraft:end/find_end_city", "minecraft:end/elytra", "minecraft:end/levitate",
+            "minecraft:adventure/root", "minecraft:adventure/voluntary_exile", "minecraft:adventure/kill_a_mob", "minecraft:adventure/trade",
+            "minecraft:adventure/honey_block_slide", "minecraft:adventure/ol_betsy", "minecraft:adventure/sleep_in_bed", "minecraft:adventure/hero_of_the_village",
+            "minecraft:adventure/throw_trident", "minecraft:adventure/shoot_arrow", "minecraft:adventure/kill_all_mobs", "minecraft:adventure/totem_of_undying",
+            "minecraft:adventure/summon_iron_golem", "minecraft:adventure/two_birds_one_arrow", "minecraft:adventure/whos_the_pillager_now", "minecraft:adventure/arbalistic",
+            "minecraft:adventure/adventuring_time", "minecraft:adventure/very_very_frightening", "minecraft:adventure/sniper_duel", "minecraft:adventure/bullseye",
+            "minecraft:husbandry/root", "minecraft:husbandry/safely_harvest_honey", "minecraft:husbandry/breed_an_animal", "minecraft:husbandry/tame_an_animal",
+            "minecraft:husbandry/fishy_business", "minecraft:husbandry/silk_touch_nest", "minecraft:husbandry/plant_seed", "minecraft:husbandry/bred_all_animals",
+            "minecraft:husbandry/complete_catalogue", "minecraft:husbandry/tactical_fishing", "minecraft:husbandry/balanced_diet", "minecraft:husbandry/obtain_netherite_hoe"
+    );
+    /**
+     * The number of advancements in 1.16, all of which have to be completed to finish a run.
+     */
+    public static final int KNOWN_ADVANCEMENTS = ADVANCEMENTS.size();
+
+    private AdvancementRegistry() {
+    }
+
+    private static String removeMinecraftPrefix(String name) {
+        return name.startsWith("minecraft:") ? name.substring(10) : name;
+    }
+
+    private static String cleanseCatName(String catName) {
+        if (catName.startsWith("textures/entity/cat/")) {
+            catName = catName.substring("textures/entity/cat/".length());
+        }
+        if (catName.endsWith(".png")) {
+            catName = catName.substring(0, catName.length() - 4);
+        }
+        return catName;
+    }
+
+    private static String[] prefixed(String prefix, String suffix, String... names) {
+        return Arrays.stream(names).map(name -> prefix + name + suffix).toArray(String[]::new);
+    }
+
+    /**
+     * The advancements whose criteria are sent in the payload.
+     */
+    public enum CriteriaAdvancement {
+        ADVENTURING_TIME("minecraft:adventure/adventuring_time", new IdTable(AdvancementRegistry::removeMinecraftPrefix, AdvancementRegistry.prefixed("minecraft:", "",
+                "badlands", "badlands_plateau", "bamboo_jungle", "bamboo_jungle_hills", "basalt_deltas", "beach", "birch_forest", "birch_forest_hills",
+                "cold_ocean", "crimson_forest", "dark_forest", "deep_cold_ocean", "deep_frozen_ocean", "deep_lukewarm_ocean", "deep_ocean", "desert",
+                "desert_hills", "forest", "frozen_river", "giant_tree_taiga", "giant_tree_taiga_hills", "jungle", "jungle_edge", "jungle_hills",
+                "lukewarm_ocean", "mountains", "mushroom_field_shore", "mushroom_fields", "nether_wastes", "ocean", "plains", "river", "savanna",
+                "savanna_plateau", "snowy_beach", "snowy_mountains", "snowy_taiga", "snowy_taiga_hills", "snowy_tundra", "soul_sand_valley",
+                "stone_shore", "swamp", "taiga", "taiga_hills", "warm_ocean", "warped_forest", "wooded_badlands_plateau", "wooded_hills", "wooded_mountains"))),
+        KILL_ALL_MOBS("minecraft:adventure/kill_all_mobs", new IdTable(AdvancementRegistry::removeMinecraftPrefix, AdvancementRegistry.prefixed("minecraft:", "",
+                "blaze", "cave_spider", "creeper", "drowned", "elder_guardian", "ender_dragon", "enderman", "endermite", "evoker", "ghast",
+                "guardian", "hoglin", "husk", "magma_cube", "phantom", "piglin", "piglin_brute", "pillager", "ravager", "shulker", "silverfish",
+                "skeleton", "slime", "spider", "stray", "vex", "vindicator", "witch", "wither", "wither_skeleton", "zoglin", "zombie",
+                "zombie_villager", "zombified_piglin"))),
+        BRED_ALL_ANIMALS("minecraft:husbandry/bred_all_animals", new IdTable(AdvancementRegistry::removeMinecraftPrefix, AdvancementRegistry.prefixed("minecraft:", "",
+                "bee", "cat", "chicken", "cow", "donkey", "fox", "hoglin", "horse", "llama", "mooshroom", "mule", "ocelot", "panda", "pig",
+                "rabbit", "sheep", "strider", "turtle", "wolf"))),
+        COMPLETE_CATALOGUE("minecraft:husbandry/complete_catalogue", new IdTable(AdvancementRegistry::cleanseCatName, AdvancementRegistry.prefixed("textures/entity/cat/", ".png",
+                "all_black", "black", "british_shorthair", "calico", "jellie", "persian", "ragdoll", "red", "siamese", "tabby", "white"))),
+        BALANCED_DIET("minecraft:husbandry/balanced_diet", new IdTable(AdvancementRegistry::removeMinecraftPrefix, AdvancementRegistry.prefixed("minecraft:", "",
+                "apple", "baked_potato", "beef", "beetroot", "beetroot_soup", "bread", "carrot", "chicken", "chorus_fruit", "cod", "cooked_beef",
+                "cooked_chicken", "cooked_cod", "cooked_mutton", "cooked_porkchop", "cooked_rabbit", "cooked_salmon", "cookie", "dried_kelp",
+                "enchanted_golden_apple", "golden_apple", "golden_carrot", "honey_bottle", "melon_slice", "mushroom_stew", "mutton",
+                "poisonous_potato", "porkchop", "potato", "pufferfish", "pumpkin_pie", "rabbit", "rabbit_stew", "rotten_flesh", "salmon",
+                "spider_eye", "suspicious_stew", "sweet_berries", "tropical_fish")));
+
+        private static final Map<String, CriteriaAdvancement> BY_ID = new HashMap<>();
+
+        static {
+            for (CriteriaAdvancement advancement : CriteriaAdvancement.values()) {
+                BY_ID.put(advancement.id, advancement);
+            }
+        }
+
+        public final String id;
+        public final IdTable criteria;
+
+        CriteriaAdvancement(String id, IdTable criteria) {
+            this.id = id;
+            this.criteria = criteria;
+        }
+
+        @Nullable
+        public static CriteriaAdvancement of(String id) {
+            return BY_ID.get(id);
+        }
+    }
+
+    /**
+     * Ids of one kind of identifier, along with the display name sent in the payload and the order to send them in.
+     * Lookups are lock free, giving an id to a new identifier takes a lock and copies the tables.
+     */
+    public static class IdTable {
+        /**
+         * Returned for an identifier that isn't known once the table is full.
+         */
+        public static final int NO_ID = -1;
+        private static final int MAX_UNKNOWN_IDS = 256; // Far more than any real version or mod pack adds
+
+        private final Function<String, String> displayNamer;
+        private final int maxSize;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile Tables tables = new Tables(new String[0], new String[0], new int[0]);
+        private boolean full = false;
+
+        private IdTable(Function<String, String> displayNamer, String... known) {
+            this(displayNamer, MAX_UNKNOWN_IDS, known);
+        }
+
+        IdTable(Function<String, String> displayNamer, int maxUnknownIds, String... known) {
+            this.displayNamer = displayNamer;
+            this.maxSize = known.length + maxUnknownIds;
+            for (String name : known) {
+                this.idOf(name);
+            }
+        }
+
+        /**
+         * @return the id of an identifier, giving it one if it doesn't have one yet, or {@link #NO_ID} if it has none
+         * and the table is full
+         */
+        public int idOf(String name) {
+            Integer id = this.ids.get(name);
+            return id != null ? id : this.register(name);
+        }
+
+        public int size() {
+            return this.tables.names.length;
+        }
+
+        public String getName(int id) {
+            return this.tables.names[id];
+        }
+
+        /**
+         * @return the interned name sent in the payload
+         */
+        public String getDisplayName(int id) {
+            return this.tables.displayNames[id];
+        }
+
+        /**
+         * @return every id, sorted by identifier. Must not be modified.
+         */
+        public int[] getSortedIds() {
+            return this.tables.sortedIds;
+        }
+
+        private synchronized int register(String name) {
+            Integer existing = this.ids.get(name);
+            if (existing != null) return existing;
+
+            Tables old = this.tables;
+            int id = old.names.length;
+            if (id >= this.maxSize) {
+                if (!this.full) {
+                    this.full = true;
+                    AATracker.logWarning("Too many unknown advancement identifiers, leaving " + name + " and any more out of payloads.");
+                }
+                return NO_ID;
+            }
+            String[] names = Arrays.copyOf(old.names, id + 1);
+            String[] displayNames = Arrays.copyOf(old.displayNames, id + 1);
+            names[id] = name.intern();
+            displayNames[id] = this.displayNamer.apply(name).intern();
+            int[] sortedIds = AdvancementRegistry.insertSorted(old.sortedIds, names, id);
+            // Tables have to be published before the id can be looked up
+            this.tables = new Tables(names, displayNames, sortedIds);
+            this.ids.put(names[id], id);
+            return id;
+        }
+    }
+
+    private static int[] insertSorted(int[] sortedIds, String[] names, int id) {
+        // Binary search for the first name after the new one
+        int position = 0;
+        int end = sortedIds.length;
+        while (position < end) {
+            int middle = (position + end) >>> 1;
+            if (names[sortedIds[middle]].compareTo(names[id]) < 0) {
+                position = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+        int[] result = new int[sortedIds.length + 1];
+        System.arraycopy(sortedIds, 0, result, 0, position);
+        result[position] = id;
+        System.arraycopy(sortedIds, position, result, position + 1, sortedIds.length - position);
+        return result;
+    }
+
+    private static class Tables {
+        private final String[] names;
+        private final String[] displayNames;
+        private final int[] sortedIds;
+
+        private Tables(String[] names, String[] displayNames, int[] sortedIds) {
+            this.names = names;
+            this.displayNames = displayNames;
+            this.sortedIds = sortedIds;
+        }
+    }
+}
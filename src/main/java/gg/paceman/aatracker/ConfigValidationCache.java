@@ -0,0 +1,246 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import gg.paceman.aatracker.util.ExceptionUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Checks the Atum and SpeedRunIGT settings of instances, keeping the verdict for every config file read so it is only
+ * read and parsed again once it changes.
+ * <p>
+ * A cached verdict is reused if the file's modified time and size are unchanged. Files in a directory that is being
+ * watched for changes are not even checked, {@link #invalidate(Path)} is relied on instead. Entries are keyed by path,
+ * so instances using the global SpeedRunIGT options all share one entry.
+ * <p>
+ * A file can change while it is being checked, so every invalidation of a directory bumps its generation, and a verdict
+ * is only kept or reused if it was made in the directory's current generation.
+ */
+public class ConfigValidationCache {
+
+    private final Path homePath;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Path, AtomicLong> generations = new ConcurrentHashMap<>(); // Directory -> times invalidated
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile Predicate<Path> isWatched = directory -> false;
+
+    /**
+     * @param homePath the directory containing the global speedrunigt folder
+     */
+    public ConfigValidationCache(Path homePath) {
+        this.homePath = homePath;
+    }
+
+    /**
+     * Sets the check for whether changes in a directory are reported through {@link #invalidate(Path)}.
+     */
+    public void setWatchedDirectoryCheck(Predicate<Path> isWatched) {
+        this.isWatched = isWatched;
+    }
+
+    /**
+     * Forgets the verdicts of every file in a directory.
+     */
+    public void invalidate(Path directory) {
+        // Bumped first, so a check already running can't put back what is removed here
+        this.generations.computeIfAbsent(directory, d -> new AtomicLong()).incrementAndGet();
+        this.entries.keySet().removeIf(path -> directory.equals(path.getParent()));
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public boolean areAtumSettingsGood(Path worldPath) {
+        // .minecraft/saves/x -> .minecraft/saves -> .minecraft/config
+        Path configPath = worldPath.getParent().resolveSibling("config");
+        // .minecraft/config -> .minecraft/config/atum -> .minecraft/config/atum/atum.properties
+        Path oldAtumPropPath = configPath.resolve("atum").resolve("atum.properties");
+        // .minecraft/config -> .minecraft/config/mcsr -> .minecraft/config/mcsr/atum.json
+        Path newAtumJsonPath = configPath.resolve("mcsr").resolve("atum.json");
+
+        Verdict oldVerdict = this.get(oldAtumPropPath, ConfigValidationCache::checkOldAtumSettings);
+        Verdict newVerdict = this.get(newAtumJsonPath, ConfigValidationCache::checkNewAtumSettings);
+        if (oldVerdict == Verdict.MISSING && newVerdict == Verdict.MISSING) {
+            AATracker.logWarning("You must use the Atum mod!");
+            return false; // no settings exist
+        }
+
+        if (oldVerdict == Verdict.BAD) {
+            AATracker.logWarning("Illegal Atum settings found in " + oldAtumPropPath);
+            AATracker.logWarning("Make sure your Atum settings are set to defaults with no set seed and above peaceful difficulty.");
+            AATracker.logWarning("If you are using the newer Atum with more world generation options, you should delete the old config file.");
+            return false; // old settings exist and are bad
+        } else if (oldVerdict == Verdict.INVALID) {
+            AATracker.logWarning("Invalid/Corrupted Atum settings found in " + oldAtumPropPath);
+            AATracker.logWarning("If you are using the newer Atum with more world generation options, you should delete the old config file.");
+            return false;
+        }
+
+        if (newVerdict == Verdict.BAD) {
+            AATracker.logWarning("Illegal Atum settings found in " + newAtumJsonPath);
+            AATracker.logWarning("Make sure your Atum settings are set to defaults with no set seed and above peaceful difficulty.");
+            AATracker.logWarning("If you are using the older Atum with less world generation options, you should delete the new config file.");
+            return false; // new settings exist and are bad
+        } else if (newVerdict == Verdict.INVALID) {
+            AATracker.logWarning("Invalid/Corrupted Atum settings found in " + newAtumJsonPath);
+            AATracker.logWarning("If you are using the older Atum with less world generation options, you should delete the new config file.");
+            return false; // new settings exist and are bad
+        }
+
+        return true; // settings exists, no settings are bad
+    }
+
+    public boolean hasCorrectRecordsSetting(Path instancePath) {
+        boolean useGlobal = this.get(instancePath.resolve("speedrunigt").resolve(".useglobaloption"), path -> Verdict.GOOD) != Verdict.MISSING;
+        Path srigtOptionsPath = (useGlobal ? this.homePath.resolve("speedrunigt") : instancePath.resolve("speedrunigt")).resolve("options.txt");
+        Verdict verdict = this.get(srigtOptionsPath, ConfigValidationCache::checkRecordsSetting);
+        if (verdict == Verdict.INVALID) {
+            AATracker.logError("Failed to determine SpeedRunIGT settings! Could not read " + srigtOptionsPath);
+            return false;
+        }
+        // A missing options file should mean defaults values are used
+        return verdict != Verdict.BAD;
+    }
+
+    Verdict get(Path path, Checker checker) {
+        long generation = this.getGeneration(path.getParent());
+        Entry entry = this.entries.get(path);
+        if (entry != null && entry.generation != generation) entry = null;
+        if (entry != null && this.isWatched.test(path.getParent())) {
+            this.hits.increment();
+            return entry.verdict;
+        }
+
+        long modifiedTime = -1;
+        long size = -1;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            modifiedTime = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            // Can't tell whether it changed, so don't trust or keep anything about it
+            this.entries.remove(path);
+            this.misses.increment();
+            return Verdict.INVALID;
+        }
+
+        if (entry != null && entry.modifiedTime == modifiedTime && entry.size == size) {
+            this.hits.increment();
+            return entry.verdict;
+        }
+
+        this.misses.increment();
+        Verdict verdict;
+        if (size == -1) {
+            verdict = Verdict.MISSING;
+        } else {
+            try {
+                verdict = checker.check(path);
+            } catch (Exception e) {
+                AATracker.logDebug("Failed to check " + path + ": " + ExceptionUtil.toDetailedString(e));
+                verdict = Verdict.INVALID;
+            }
+        }
+        // Invalidated while checking, so the file may have been read before it changed
+        if (this.getGeneration(path.getParent()) == generation) {
+            this.entries.put(path, new Entry(modifiedTime, size, generation, verdict));
+        }
+        return verdict;
+    }
+
+    private long getGeneration(Path directory) {
+        AtomicLong generation = this.generations.get(directory);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private static Verdict checkOldAtumSettings(Path atumPropPath) throws IOException {
+        String atumPropText = new String(Files.readAllBytes(atumPropPath));
+        for (String line : atumPropText.split("\n")) {
+            String[] args = line.trim().split("=");
+            if (args.length < 2) {
+                continue;
+            }
+            if (args[0].trim().equals("generatorType") && !args[1].trim().equals("0")) {
+                return Verdict.BAD;
+            }
+            if (args[0].trim().equals("bonusChest") && args[1].trim().equals("true")) {
+                return Verdict.BAD;
+            }
+        }
+        return Verdict.GOOD;
+    }
+
+    private static Verdict checkNewAtumSettings(Path atumJsonPath) throws IOException, JsonSyntaxException {
+        String atumJsonText = new String(Files.readAllBytes(atumJsonPath));
+        JsonObject json = JsonParser.parseString(atumJsonText).getAsJsonObject();
+        return json.has("hasLegalSettings")
+                && json.get("hasLegalSettings").getAsBoolean()
+                && json.has("seed")
+                && json.get("seed").getAsString().isEmpty()
+                && ConfigValidationCache.jsonHasGoodDifficulty(json) ? Verdict.GOOD : Verdict.BAD;
+    }
+
+    private static boolean jsonHasGoodDifficulty(JsonObject json) {
+        if (json.has("difficulty")) {
+            return !json.get("difficulty").getAsString().equalsIgnoreCase("peaceful");
+        } else if (json.has("worldDifficulty")) {
+            return !json.get("worldDifficulty").getAsString().equalsIgnoreCase("peaceful");
+        }
+        return false;
+    }
+
+    private static Verdict checkRecordsSetting(Path srigtOptionsPath) throws IOException {
+        String contents = new String(Files.readAllBytes(srigtOptionsPath));
+        for (String line : contents.split("\\n")) {
+            line = line.trim();
+            if (line.startsWith("speedrunigt:generate_record:"))
+                return Objects.equals(line, "speedrunigt:generate_record:EVERYTHING") ? Verdict.GOOD : Verdict.BAD;
+        }
+        // Option doesn't exist, so default value is used
+        return Verdict.GOOD;
+    }
+
+    enum Verdict {
+        GOOD,
+        BAD,
+        INVALID,
+        MISSING
+    }
+
+    interface Checker {
+        Verdict check(Path path) throws Exception;
+    }
+
+    private static class Entry {
+        private final long modifiedTime;
+        private final long size;
+        private final long generation;
+        private final Verdict verdict;
+
+        private Entry(long modifiedTime, long size, long generation, Verdict verdict) {
+            this.modifiedTime = modifiedTime;
+            this.size = size;
+            this.generation = generation;
+            this.verdict = verdict;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sender side of the delta protocol. The first payload of a world is sent as a full snapshot, after that only the
+ * {@link PayloadDelta} against the last acknowledged payload is sent.
+ * <p>
+ * Every message carries a sequence number, and deltas carry the sequence number they are based on ("baseSeq") so the
+ * receiver can spot a gap and ask for a resync, after which the next message is a full snapshot again.
+ * <p>
+ * State is kept per world so that payloads of several tracked worlds can be interleaved.
+ */
+public class DeltaEncoder {
+    private static final int MAX_WORLDS = 32;
+
+    // Least recently used world first
+    private final Map<String, WorldState> worlds = new LinkedHashMap<String, WorldState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WorldState> eldest) {
+            return this.size() > MAX_WORLDS;
+        }
+    };
+
+    private final PayloadSerializer serializer = new PayloadSerializer();
+    private long totalFullBytes = 0;
+    private long totalSentBytes = 0;
+
+    /**
+     * Creates the message to send for a payload. The payload must not contain the access key and must not be modified
+     * afterwards, as it becomes the base for the next delta once acknowledged.
+     */
+    public synchronized Message encode(JsonObject payload) {
+        String payloadWorldId = payload.get("worldId").getAsString();
+        WorldState state = this.worlds.get(payloadWorldId);
+        long nextSeq = state == null ? 1 : state.seq + 1;
+        byte[] fingerprint = this.serializer.fingerprint(payload);
+        long fullBytes = this.serializer.getLastFingerprintedSize();
+
+        if (state != null && state.acknowledged != null) {
+            JsonObject diff = PayloadDelta.diff(state.acknowledged, payload);
+            // Check that the receiver would end up with exactly this payload, otherwise send everything
+            if (Arrays.equals(this.serializer.fingerprint(PayloadDelta.apply(state.acknowledged, diff)), fingerprint)) {
+                JsonObject body = new JsonObject();
+                body.addProperty("worldId", payloadWorldId);
+                body.addProperty("baseSeq", state.seq);
+                body.addProperty("seq", nextSeq);
+                body.add("diff", diff);
+                return new Message(false, payloadWorldId, nextSeq, body, payload, fullBytes);
+            }
+            AATracker.logWarning("Payload delta did not reproduce the payload, sending a full snapshot instead.");
+        }
+
+        JsonObject body = payload.deepCopy();
+        body.addProperty("seq", nextSeq);
+        return new Message(true, payloadWorldId, nextSeq, body, payload, fullBytes);
+    }
+
+    /**
+     * Must be called once the receiver has accepted a message.
+     *
+     * @param sentBytes the size of the body that was sent
+     */
+    public synchronized void onAcknowledged(Message message, int sentBytes) {
+        WorldState state = this.worlds.computeIfAbsent(message.worldId, id -> new WorldState());
+        state.acknowledged = message.payload;
+        state.seq = message.seq;
+        this.totalFullBytes += message.fullBytes;
+        this.totalSentBytes += sentBytes;
+    }
+
+    /**
+     * Forgets the acknowledged payload of a world so its next message is a full snapshot.
+     */
+    public synchronized void reset(String worldId) {
+        WorldState state = this.worlds.get(worldId);
+        if (state != null) {
+            state.acknowledged = null;
+        }
+    }
+
+    public synchronized long getTotalFullBytes() {
+        return this.totalFullBytes;
+    }
+
+    public synchronized long getTotalSentBytes() {
+        return this.totalSentBytes;
+    }
+
+    private static class WorldState {
+        private JsonObject acknowledged = null;
+        private long seq = 0;
+    }
+
+    public static class Message {
+        public final boolean full;
+        public final String worldId;
+        public final long seq;
+        /**
+         * What to send, without the access key.
+         */
+        public final JsonObject body;
+        private final JsonObject payload;
+        private final long fullBytes;
+
+        private Message(boolean full, String worldId, long seq, JsonObject body, JsonObject payload, long fullBytes) {
+            this.full = full;
+            this.worldId = worldId;
+            this.seq = seq;
+            this.body = body;
+            this.payload = payload;
+            this.fullBytes = fullBytes;
+        }
+    }
+}
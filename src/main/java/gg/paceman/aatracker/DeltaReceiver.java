@@ -0,0 +1,57 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A local stand-in for the receiving end of the delta protocol, rebuilding the full payload of each world from the
+ * messages made by {@link DeltaEncoder}. Used to check the protocol and the bytes it saves without PaceMan.gg.
+ */
+public class DeltaReceiver {
+    private final Map<String, WorldState> worlds = new HashMap<>();
+
+    /**
+     * @return true if the message was applied, false if a resync (full snapshot) is needed
+     */
+    public boolean receive(JsonObject message) {
+        String worldId = message.get("worldId").getAsString();
+        long seq = message.get("seq").getAsLong();
+
+        if (!message.has("baseSeq")) {
+            JsonObject snapshot = message.deepCopy();
+            snapshot.remove("seq");
+            snapshot.remove("accessKey");
+            this.worlds.put(worldId, new WorldState(seq, snapshot));
+            return true;
+        }
+
+        WorldState state = this.worlds.get(worldId);
+        if (state == null || state.seq != message.get("baseSeq").getAsLong()) {
+            return false;
+        }
+        this.worlds.put(worldId, new WorldState(seq, PayloadDelta.apply(state.snapshot, message.getAsJsonObject("diff"))));
+        return true;
+    }
+
+    /**
+     * @return the rebuilt payload of a world, or null if no full snapshot was received for it
+     */
+    @Nullable
+    public JsonObject getSnapshot(String worldId) {
+        WorldState state = this.worlds.get(worldId);
+        return state == null ? null : state.snapshot;
+    }
+
+    private static class WorldState {
+        private final long seq;
+        private final JsonObject snapshot;
+
+        private WorldState(long seq, JsonObject snapshot) {
+            this.seq = seq;
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package gg.paceman.aatracker;
+
+import javax.annotation.Nullable;
+
+/**
+ * The facts the tracker checks about the events of an events.log, kept up to date as each event is read, so checking
+ * them doesn't depend on the length of the run. Only these running facts are kept, not the parsed events, as the lines
+ * themselves are already kept by the {@link EventsLogReader}.
+ */
+public class EventIndex {
+    private boolean netherEntered = false;
+    private long netherEnterIgt = Event.UNKNOWN_TIME;
+    private boolean cheatDetected = false;
+    private @Nullable Event lastEvent = null;
+    private @Nullable Event lastUsefulEvent = null;
+
+    /**
+     * @param line a trimmed, non-empty line of events.log
+     */
+    public void add(String line) {
+        Event event = Event.parse(line);
+        this.lastEvent = event;
+        if (event.type == EventType.ENTER_NETHER && !this.netherEntered) {
+            this.netherEntered = true;
+            this.netherEnterIgt = event.igt;
+        }
+        if (event.type.cheat) {
+            this.cheatDetected = true;
+        }
+        if (event.type != EventType.LEAVE_WORLD && event.type != EventType.REJOIN_WORLD && event.argCount >= 2) {
+            this.lastUsefulEvent = event;
+        }
+    }
+
+    public void clear() {
+        this.netherEntered = false;
+        this.netherEnterIgt = Event.UNKNOWN_TIME;
+        this.cheatDetected = false;
+        this.lastEvent = null;
+        this.lastUsefulEvent = null;
+    }
+
+    public boolean hasNetherEnter() {
+        return this.netherEntered;
+    }
+
+    /**
+     * @return the IGT of the first nether enter, or {@link Event#UNKNOWN_TIME} if the nether wasn't entered or the time
+     * can't be told
+     */
+    public long getNetherEnterIgt() {
+        return this.netherEnterIgt;
+    }
+
+    /**
+     * @return true if the run was opened to lan, had cheats enabled, had its seed viewed or is an old world
+     */
+    public boolean hasCheatEvents() {
+        return this.cheatDetected;
+    }
+
+    /**
+     * Estimates when the last event other than leaving or rejoining the world happened, from the time events.log was
+     * last written (which is when its last event happened) and the difference in RTA between the two events.
+     *
+     * @return the estimated time in milliseconds, or 0 if it can't be told
+     */
+    public long getLastUsefulEventTime(long eventsModifiedTime) {
+        if (this.lastEvent == null || this.lastUsefulEvent == null) return 0;
+        if (this.lastEvent.rta == Event.UNKNOWN_TIME || this.lastUsefulEvent.rta == Event.UNKNOWN_TIME) return 0;
+        return eventsModifiedTime - this.lastEvent.rta + this.lastUsefulEvent.rta;
+    }
+
+    public enum EventType {
+        ENTER_NETHER("rsg.enter_nether", false),
+        LEAVE_WORLD("common.leave_world", false),
+        REJOIN_WORLD("common.rejoin_world", false),
+        MULTIPLAYER("common.multiplayer", true),
+        VIEW_SEED("common.view_seed", true),
+        ENABLE_CHEATS("common.enable_cheats", true),
+        OLD_WORLD("common.old_world", true),
+        OTHER("", false);
+
+        private static final EventType[] KNOWN = {ENTER_NETHER, LEAVE_WORLD, REJOIN_WORLD, MULTIPLAYER, VIEW_SEED, ENABLE_CHEATS, OLD_WORLD};
+
+        public final String prefix;
+        public final boolean cheat;
+
+        EventType(String prefix, boolean cheat) {
+            this.prefix = prefix;
+            this.cheat = cheat;
+        }
+
+        public static EventType of(String line) {
+            for (EventType type : KNOWN) {
+                if (line.startsWith(type.prefix)) return type;
+            }
+            return OTHER;
+        }
+    }
+
+    public static class Event {
+        public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+        public final EventType type;
+        public final String name;
+        public final long rta;
+        public final long igt;
+        /**
+         * Number of space separated parts of the line, including the name.
+         */
+        public final int argCount;
+
+        private Event(EventType type, String name, long rta, long igt, int argCount) {
+            this.type = type;
+            this.name = name;
+            this.rta = rta;
+            this.igt = igt;
+            this.argCount = argCount;
+        }
+
+        /**
+         * Parses a line of the form "name rta igt".
+         */
+        public static Event parse(String line) {
+            String[] args = line.split(" ");
+            return new Event(
+                    EventType.of(line),
+                    args[0],
+                    args.length > 1 ? Event.parseTime(args[1]) : UNKNOWN_TIME,
+                    args.length > 2 ? Event.parseTime(args[2]) : UNKNOWN_TIME,
+                    args.length
+            );
+        }
+
+        private static long parseTime(String s) {
+            try {
+                return Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                return UNKNOWN_TIME;
+            }
+        }
+    }
+}
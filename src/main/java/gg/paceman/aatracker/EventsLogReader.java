@@ -0,0 +1,196 @@
+package gg.paceman.aatracker;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Tails a SpeedRunIGT events.log, only reading the bytes appended since the last update.
+ * <p>
+ * Lines are trimmed and empty lines are dropped, matching what reading the whole file used to produce. A line without
+ * its trailing newline is held back until the rest of it is written, or until the caller decides the file has stopped
+ * changing and calls {@link #flushPartialLine()}, as reading the whole file used to return it too. Every event is also
+ * added to an {@link EventIndex} as it is read.
+ */
+public class EventsLogReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final List<String> events = new ArrayList<>();
+    private final List<String> eventsView = Collections.unmodifiableList(this.events);
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final EventIndex index = new EventIndex();
+
+    private Path path = null;
+    private long offset = 0;
+    private boolean partialLineFlushed = false; // The last event is a line that had no newline yet
+
+    private long lastBytesRead = 0;
+    private long totalBytesRead = 0;
+
+    /**
+     * Reads anything new from the events.log at the given path and returns all events read so far. The whole file is
+     * only read again if the path is different from the last update or if the file has shrunk.
+     *
+     * @return an unmodifiable live view of the events
+     */
+    public List<String> update(Path path) throws IOException {
+        this.lastBytesRead = 0;
+        if (!Objects.equals(path, this.path)) {
+            this.reset();
+            this.path = path;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < this.offset) {
+                // File was truncated or recreated
+                this.reset();
+                this.path = path;
+            }
+            if (this.partialLineFlushed && size > this.offset) {
+                this.partialLineFlushed = false;
+                ByteBuffer next = ByteBuffer.allocate(1);
+                channel.read(next, this.offset);
+                if (next.get(0) != '\n' && next.get(0) != '\r') {
+                    // The flushed line was still being written after all, so read the file again to get it whole
+                    this.reset();
+                    this.path = path;
+                }
+            }
+            channel.position(this.offset);
+            while (this.offset < size) {
+                this.buffer.clear();
+                int read = channel.read(this.buffer);
+                if (read <= 0) break;
+                this.offset += read;
+                this.lastBytesRead += read;
+                this.consume(this.buffer.array(), read);
+            }
+        }
+        this.totalBytesRead += this.lastBytesRead;
+        return this.eventsView;
+    }
+
+    private void consume(byte[] bytes, int length) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != '\n') continue;
+            String line;
+            if (this.partialLine.size() > 0) {
+                this.partialLine.write(bytes, lineStart, i - lineStart);
+                line = new String(this.partialLine.toByteArray(), StandardCharsets.UTF_8);
+                this.partialLine.reset();
+            } else {
+                line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            }
+            this.addLine(line);
+            lineStart = i + 1;
+        }
+        this.partialLine.write(bytes, lineStart, length - lineStart);
+    }
+
+    private void addLine(String line) {
+        line = line.trim();
+        if (!line.isEmpty()) {
+            this.events.add(line);
+            this.index.add(line);
+        }
+    }
+
+    /**
+     * @return true if the file ends with a line that has no trailing newline yet
+     */
+    public boolean hasPartialLine() {
+        return this.partialLine.size() > 0;
+    }
+
+    /**
+     * Adds the line held back for its missing newline as an event. If the line turns out to go on, the next update
+     * reads the whole file again.
+     *
+     * @return true if there was such a line
+     */
+    public boolean flushPartialLine() {
+        if (this.partialLine.size() == 0) return false;
+        String line = new String(this.partialLine.toByteArray(), StandardCharsets.UTF_8);
+        this.partialLine.reset();
+        this.addLine(line);
+        this.partialLineFlushed = true;
+        return true;
+    }
+
+    /**
+     * Picks up reading an events.log after the given events, as long as the file still starts with the same event and
+     * is at least as long as it was. Otherwise nothing changes and the next update reads the file from the start.
+     *
+     * @param offset where the last of the events ends, as given by {@link #getCompleteOffset()}
+     * @return true if the reader was resumed
+     */
+    public boolean resume(Path path, long offset, List<String> events) throws IOException {
+        if (events.isEmpty() || Files.size(path) < offset) return false;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.trim().isEmpty());
+            if (line == null || !line.trim().equals(events.get(0))) return false;
+        }
+        this.reset();
+        this.path = path;
+        this.offset = offset;
+        events.forEach(this::addLine);
+        return true;
+    }
+
+    /**
+     * Forgets all events and the read position, the next update reads the file from the start.
+     */
+    public void reset() {
+        this.events.clear();
+        this.index.clear();
+        this.partialLine.reset();
+        this.partialLineFlushed = false;
+        this.path = null;
+        this.offset = 0;
+    }
+
+    /**
+     * @return the read position, not counting a line that is still being written
+     */
+    public long getCompleteOffset() {
+        return this.offset - this.partialLine.size();
+    }
+
+    public List<String> getEvents() {
+        return this.eventsView;
+    }
+
+    /**
+     * @return the index of the events read so far, updated by every update
+     */
+    public EventIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the number of bytes read by the last update
+     */
+    public long getLastBytesRead() {
+        return this.lastBytesRead;
+    }
+
+    public long getTotalBytesRead() {
+        return this.totalBytesRead;
+    }
+}
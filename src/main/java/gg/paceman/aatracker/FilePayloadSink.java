@@ -0,0 +1,32 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps a json file up to date with the newest payload, for stream overlays and other local tools to read instead of
+ * parsing the SpeedRunIGT files themselves. The file is replaced atomically, so readers never see half of a payload.
+ */
+public class FilePayloadSink implements PayloadSink {
+    private final Path path;
+
+    public FilePayloadSink(Path path) {
+        this.path = path.toAbsolutePath();
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public void write(JsonObject payload, byte[] json) throws IOException {
+        Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        Files.write(tempPath, json);
+        Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,124 @@
+package gg.paceman.aatracker;
+
+import gg.paceman.aatracker.util.ExceptionUtil;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the SpeedRunIGT directories and calls back as soon as one of the tracked files changes, so the tracker does
+ * not have to wait for the next poll. Watch events are not reliable on every filesystem (network drives, some macOS
+ * setups), so the polling loop in {@link AATracker} stays active as a fallback.
+ */
+public class FileWatcher {
+    private static final Set<String> WATCHED_FILE_NAMES = new HashSet<>(Arrays.asList(
+            "latest_world.json", "record.json", "events.log",
+            // Config files checked by ConfigValidationCache
+            "options.txt", ".useglobaloption", "atum.properties", "atum.json"
+    ));
+
+    private final Consumer<Path> onChange;
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private WatchService watchService = null;
+    private Thread thread = null;
+
+    /**
+     * @param onChange called on the watcher thread with the directory in which a tracked file changed
+     */
+    public FileWatcher(Consumer<Path> onChange) {
+        this.onChange = onChange;
+    }
+
+    public synchronized void start() throws IOException {
+        if (this.watchService != null) return;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "paceman-aa-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void stop() {
+        if (this.watchService == null) return;
+        this.keys.values().forEach(WatchKey::cancel);
+        this.keys.clear();
+        try {
+            this.watchService.close();
+        } catch (IOException ignored) {
+        }
+        this.watchService = null;
+        this.thread.interrupt();
+        this.thread = null;
+    }
+
+    /**
+     * Replaces the set of watched directories, registering new ones and cancelling ones that are no longer wanted.
+     * Directories that do not exist are skipped, the polling loop will pick up their files instead.
+     */
+    public synchronized void setWatchedDirectories(Collection<Path> directories) {
+        if (this.watchService == null) return;
+        Set<Path> wanted = new HashSet<>();
+        directories.forEach(p -> wanted.add(p.toAbsolutePath()));
+
+        Iterator<Map.Entry<Path, WatchKey>> iterator = this.keys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            if (!wanted.contains(entry.getKey()) || !entry.getValue().isValid()) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+
+        for (Path directory : wanted) {
+            if (this.keys.containsKey(directory) || !Files.isDirectory(directory)) continue;
+            try {
+                this.keys.put(directory, directory.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+                AATracker.logDebug("Watching " + directory);
+            } catch (IOException e) {
+                AATracker.logWarning("Failed to watch " + directory + ", falling back to polling: " + e);
+            }
+        }
+    }
+
+    /**
+     * @return true if changes in the directory are currently being reported
+     */
+    public synchronized boolean isWatching(Path directory) {
+        WatchKey key = this.keys.get(directory);
+        return key != null && key.isValid();
+    }
+
+    private void run() {
+        WatchService service;
+        synchronized (this) {
+            service = this.watchService;
+        }
+        while (service != null) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean relevant = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    relevant = true;
+                } else if (event.context() instanceof Path && WATCHED_FILE_NAMES.contains(((Path) event.context()).getFileName().toString())) {
+                    relevant = true;
+                }
+            }
+            key.reset();
+            if (relevant) {
+                try {
+                    this.onChange.accept((Path) key.watchable());
+                } catch (Throwable t) {
+                    AATracker.logError("Error handling file change: " + ExceptionUtil.toDetailedString(t));
+                }
+            }
+        }
+    }
+}
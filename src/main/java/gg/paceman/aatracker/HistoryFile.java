@@ -0,0 +1,382 @@
+package gg.paceman.aatracker;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact columnar file of past runs, as written by {@link HistoryImporter}.
+ * <p>
+ * The file starts with the magic "PMAAHIST", a version byte and the columns (count, then name and type of each).
+ * Rows follow in groups, each stored as its row count and the deflated length and bytes of its columns, one column
+ * after the other. A group with 0 rows ends the file. Inside a group, integers are zigzag varints, with long columns
+ * stored as the difference from the row before, booleans are packed 8 to a byte, and strings are a dictionary of the
+ * group's distinct values followed by an index per row. Readers go by column name and skip columns they don't know.
+ */
+public final class HistoryFile {
+    private static final byte[] MAGIC = "PMAAHIST".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_BOOLEAN = 3;
+
+    private static final String[] COLUMN_NAMES = {"world", "worldId", "date", "category", "completed", "finalIgt", "finalRta", "advancements", "netherIgt", "cheated", "events"};
+    private static final int[] COLUMN_TYPES = {TYPE_STRING, TYPE_STRING, TYPE_LONG, TYPE_STRING, TYPE_BOOLEAN, TYPE_LONG, TYPE_LONG, TYPE_INT, TYPE_LONG, TYPE_BOOLEAN, TYPE_INT};
+
+    private HistoryFile() {
+    }
+
+    /**
+     * Reads every run of a history file in the order they were written, one group in memory at a time.
+     */
+    public static void read(Path path, Consumer<Run> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a history file");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unsupported history file version " + version);
+            int columnCount = HistoryFile.readVarInt(in);
+            String[] names = new String[columnCount];
+            int[] types = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names[i] = in.readUTF();
+                types[i] = in.readUnsignedByte();
+            }
+
+            Inflater inflater = new Inflater();
+            try {
+                while (true) {
+                    int rows = HistoryFile.readVarInt(in);
+                    if (rows == 0) return;
+                    byte[] compressed = new byte[HistoryFile.readVarInt(in)];
+                    in.readFully(compressed);
+                    DataInputStream group = new DataInputStream(new ByteArrayInputStream(HistoryFile.inflate(inflater, compressed)));
+                    Map<String, Object> columns = new HashMap<>();
+                    for (int i = 0; i < columnCount; i++) {
+                        columns.put(names[i], HistoryFile.readColumn(group, types[i], rows));
+                    }
+                    for (int row = 0; row < rows; row++) {
+                        consumer.accept(Run.fromColumns(columns, row));
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] compressed) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && inflater.needsInput()) throw new EOFException("Truncated history group");
+                out.write(buffer, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt history group", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Object readColumn(DataInputStream in, int type, int rows) throws IOException {
+        switch (type) {
+            case TYPE_STRING:
+                String[] dictionary = new String[HistoryFile.readVarInt(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    byte[] bytes = new byte[HistoryFile.readVarInt(in)];
+                    in.readFully(bytes);
+                    dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                String[] strings = new String[rows];
+                for (int row = 0; row < rows; row++) {
+                    strings[row] = dictionary[HistoryFile.readVarInt(in)];
+                }
+                return strings;
+            case TYPE_LONG:
+                long[] longs = new long[rows];
+                long previous = 0;
+                for (int row = 0; row < rows; row++) {
+                    previous += HistoryFile.readZigZag(in);
+                    longs[row] = previous;
+                }
+                return longs;
+            case TYPE_INT:
+                long[] ints = new long[rows];
+                for (int row = 0; row < rows; row++) {
+                    ints[row] = HistoryFile.readZigZag(in);
+                }
+                return ints;
+            case TYPE_BOOLEAN:
+                byte[] packed = new byte[(rows + 7) / 8];
+                in.readFully(packed);
+                boolean[] booleans = new boolean[rows];
+                for (int row = 0; row < rows; row++) {
+                    booleans[row] = (packed[row >> 3] & (1 << (row & 7))) != 0;
+                }
+                return booleans;
+            default:
+                throw new IOException("Unknown column type " + type);
+        }
+    }
+
+    private static long readZigZag(DataInputStream in) throws IOException {
+        long value = HistoryFile.readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        long value = HistoryFile.readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) throw new IOException("Invalid length in history file");
+        return (int) value;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid varint in history file");
+    }
+
+    private static void writeZigZag(OutputStream out, long value) throws IOException {
+        HistoryFile.writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * One world of a saves folder.
+     */
+    public static class Run {
+        public final String world;
+        /**
+         * The id PaceMan.gg knows the run by.
+         */
+        public final String worldId;
+        /**
+         * When the run was started, in epoch milliseconds.
+         */
+        public final long date;
+        public final String category;
+        public final boolean completed;
+        public final long finalIgt;
+        public final long finalRta;
+        public final int advancements;
+        /**
+         * IGT of the first nether enter, or -1 if the nether was never entered.
+         */
+        public final long netherIgt;
+        public final boolean cheated;
+        public final int events;
+
+        public Run(String world, String worldId, long date, String category, boolean completed, long finalIgt, long finalRta, int advancements, long netherIgt, boolean cheated, int events) {
+            this.world = world;
+            this.worldId = worldId;
+            this.date = date;
+            this.category = category;
+            this.completed = completed;
+            this.finalIgt = finalIgt;
+            this.finalRta = finalRta;
+            this.advancements = advancements;
+            this.netherIgt = netherIgt;
+            this.cheated = cheated;
+            this.events = events;
+        }
+
+        private static Run fromColumns(Map<String, Object> columns, int row) {
+            return new Run(
+                    Run.getString(columns, "world", row),
+                    Run.getString(columns, "worldId", row),
+                    Run.getLong(columns, "date", row, 0),
+                    Run.getString(columns, "category", row),
+                    Run.getBoolean(columns, "completed", row),
+                    Run.getLong(columns, "finalIgt", row, 0),
+                    Run.getLong(columns, "finalRta", row, 0),
+                    (int) Run.getLong(columns, "advancements", row, 0),
+                    Run.getLong(columns, "netherIgt", row, -1),
+                    Run.getBoolean(columns, "cheated", row),
+                    (int) Run.getLong(columns, "events", row, 0)
+            );
+        }
+
+        private static String getString(Map<String, Object> columns, String name, int row) {
+            Object column = columns.get(name);
+            return column instanceof String[] ? ((String[]) column)[row] : "";
+        }
+
+        private static long getLong(Map<String, Object> columns, String name, int row, long missing) {
+            Object column = columns.get(name);
+            return column instanceof long[] ? ((long[]) column)[row] : missing;
+        }
+
+        private static boolean getBoolean(Map<String, Object> columns, String name, int row) {
+            Object column = columns.get(name);
+            return column instanceof boolean[] && ((boolean[]) column)[row];
+        }
+    }
+
+    /**
+     * Writes a history file group by group. The file is written next to the given path and only moved into place by
+     * {@link #close()}, so an import that fails halfway leaves the previous file alone.
+     */
+    public static class Writer implements Closeable {
+        private final Path path;
+        private final Path tempPath;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final ByteArrayOutputStream group = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[8192];
+        private long runs = 0;
+        private boolean closed = false;
+
+        public Writer(Path path) throws IOException {
+            this.path = path;
+            this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.tempPath)));
+            this.out.write(MAGIC);
+            this.out.writeByte(VERSION);
+            HistoryFile.writeVarLong(this.out, COLUMN_NAMES.length);
+            for (int i = 0; i < COLUMN_NAMES.length; i++) {
+                this.out.writeUTF(COLUMN_NAMES[i]);
+                this.out.writeByte(COLUMN_TYPES[i]);
+            }
+        }
+
+        /**
+         * Writes the runs as one group, nothing is written for an empty list.
+         */
+        public void write(List<Run> runs) throws IOException {
+            if (runs.isEmpty()) return;
+            this.group.reset();
+            this.writeStrings(runs, run -> run.world);
+            this.writeStrings(runs, run -> run.worldId);
+            this.writeLongs(runs, run -> run.date);
+            this.writeStrings(runs, run -> run.category);
+            this.writeBooleans(runs, run -> run.completed);
+            this.writeLongs(runs, run -> run.finalIgt);
+            this.writeLongs(runs, run -> run.finalRta);
+            this.writeInts(runs, run -> run.advancements);
+            this.writeLongs(runs, run -> run.netherIgt);
+            this.writeBooleans(runs, run -> run.cheated);
+            this.writeInts(runs, run -> run.events);
+
+            this.deflater.reset();
+            this.deflater.setInput(this.group.toByteArray());
+            this.deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(this.group.size() / 2);
+            while (!this.deflater.finished()) {
+                compressed.write(this.buffer, 0, this.deflater.deflate(this.buffer));
+            }
+            HistoryFile.writeVarLong(this.out, runs.size());
+            HistoryFile.writeVarLong(this.out, compressed.size());
+            compressed.writeTo(this.out);
+            this.runs += runs.size();
+        }
+
+        private void writeStrings(List<Run> runs, Function<Run, String> column) throws IOException {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            int[] indexes = new int[runs.size()];
+            for (int row = 0; row < indexes.length; row++) {
+                String value = column.apply(runs.get(row));
+                Integer index = dictionary.get(value);
+                if (index == null) {
+                    index = dictionary.size();
+                    dictionary.put(value, index);
+                }
+                indexes[row] = index;
+            }
+            HistoryFile.writeVarLong(this.group, dictionary.size());
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                HistoryFile.writeVarLong(this.group, bytes.length);
+                this.group.write(bytes);
+            }
+            for (int index : indexes) {
+                HistoryFile.writeVarLong(this.group, index);
+            }
+        }
+
+        private void writeLongs(List<Run> runs, ToLongFunction<Run> column) throws IOException {
+            long previous = 0;
+            for (Run run : runs) {
+                long value = column.applyAsLong(run);
+                HistoryFile.writeZigZag(this.group, value - previous);
+                previous = value;
+            }
+        }
+
+        private void writeInts(List<Run> runs, ToIntFunction<Run> column) throws IOException {
+            for (Run run : runs) {
+                HistoryFile.writeZigZag(this.group, column.applyAsInt(run));
+            }
+        }
+
+        private void writeBooleans(List<Run> runs, Predicate<Run> column) {
+            byte[] packed = new byte[(runs.size() + 7) / 8];
+            for (int row = 0; row < runs.size(); row++) {
+                if (column.test(runs.get(row))) packed[row >> 3] |= (byte) (1 << (row & 7));
+            }
+            this.group.write(packed, 0, packed.length);
+        }
+
+        /**
+         * @return the number of runs written so far
+         */
+        public long getRuns() {
+            return this.runs;
+        }
+
+        /**
+         * Ends the file and moves it into place.
+         */
+        @Override
+        public void close() throws IOException {
+            if (this.closed) return;
+            this.closed = true;
+            this.deflater.end();
+            try {
+                HistoryFile.writeVarLong(this.out, 0);
+            } finally {
+                this.out.close();
+            }
+            Files.move(this.tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Closes the file without moving it into place.
+         */
+        public void abort() {
+            if (this.closed) return;
+            this.closed = true;
+            this.deflater.end();
+            try {
+                this.out.close();
+                Files.deleteIfExists(this.tempPath);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
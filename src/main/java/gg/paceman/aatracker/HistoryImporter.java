@@ -0,0 +1,213 @@
+package gg.paceman.aatracker;
+
+import gg.paceman.aatracker.util.ExceptionUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Imports every past AA run of one or more saves folders into a {@link HistoryFile}, with the same record.json and
+ * events.log parsing as the tracker.
+ * <p>
+ * Saves folders are listed lazily and their "Random Speedrun #N" worlds are parsed in batches on a fork-join pool.
+ * While one batch is parsed, the next is listed and the one before is written, so only a few batches of runs are in
+ * memory however many worlds there are. Runs are written in the order the worlds were listed. Progress and throughput
+ * are printed about once a second.
+ */
+public class HistoryImporter {
+    private static final int BATCH_SIZE = 2048;
+    private static final int LEAF_SIZE = 16; // Worlds parsed by a task without splitting it further
+    private static final int MAX_LOGGED_FAILURES = 10;
+    private static final long PROGRESS_INTERVAL_NS = 1_000_000_000L;
+
+    private final ForkJoinPool pool;
+    private final HistoryFile.Writer writer;
+
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private long found = 0;
+    private long start = 0;
+    private long lastProgress = 0;
+
+    private List<Path> batch = new ArrayList<>(BATCH_SIZE);
+    private @Nullable ForkJoinTask<?> pending = null;
+    private HistoryFile.Run[] pendingRuns = new HistoryFile.Run[0];
+
+    private HistoryImporter(ForkJoinPool pool, HistoryFile.Writer writer) {
+        this.pool = pool;
+        this.writer = writer;
+    }
+
+    /**
+     * @param savesPaths  saves folders, or instance folders containing one (directly or in .minecraft)
+     * @param parallelism the number of threads to parse worlds with
+     */
+    public static void run(List<Path> savesPaths, Path outputPath, int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        HistoryFile.Writer writer = new HistoryFile.Writer(outputPath);
+        try {
+            HistoryImporter importer = new HistoryImporter(pool, writer);
+            System.out.printf("Importing runs from %s into %s with %d threads%n",
+                    savesPaths.stream().map(Path::toString).collect(Collectors.joining(", ")), outputPath, parallelism);
+            importer.importAll(savesPaths);
+            writer.close();
+            importer.printSummary(outputPath);
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void importAll(List<Path> savesPaths) throws IOException {
+        this.start = System.nanoTime();
+        this.lastProgress = this.start;
+        for (Path savesPath : savesPaths) {
+            savesPath = HistoryImporter.findSavesFolder(savesPath);
+            if (!Files.isDirectory(savesPath)) {
+                AATracker.logWarning("Not a saves folder, skipping it: " + savesPath);
+                continue;
+            }
+            try (DirectoryStream<Path> worlds = Files.newDirectoryStream(savesPath, path -> AATracker.RANDOM_WORLD_PATTERN.matcher(path.getFileName().toString()).matches())) {
+                for (Path worldPath : worlds) {
+                    this.found++;
+                    this.batch.add(worldPath);
+                    if (this.batch.size() == BATCH_SIZE) this.submitBatch();
+                }
+            }
+        }
+        this.submitBatch();
+        this.finishPending();
+    }
+
+    private static Path findSavesFolder(Path path) {
+        if (Files.isDirectory(path.resolve("saves"))) return path.resolve("saves");
+        if (Files.isDirectory(path.resolve(".minecraft").resolve("saves"))) return path.resolve(".minecraft").resolve("saves");
+        return path;
+    }
+
+    /**
+     * Starts parsing the listed batch, then writes the batch that was being parsed once it's done, so writing it
+     * overlaps parsing the new one.
+     */
+    private void submitBatch() throws IOException {
+        if (this.batch.isEmpty()) return;
+        Path[] worlds = this.batch.toArray(new Path[0]);
+        this.batch = new ArrayList<>(BATCH_SIZE);
+        ForkJoinTask<?> previous = this.pending;
+        HistoryFile.Run[] previousRuns = this.pendingRuns;
+        this.pendingRuns = new HistoryFile.Run[worlds.length];
+        this.pending = this.pool.submit(new ParseTask(worlds, this.pendingRuns, 0, worlds.length));
+        if (previous != null) this.write(previous, previousRuns);
+    }
+
+    private void finishPending() throws IOException {
+        if (this.pending == null) return;
+        this.write(this.pending, this.pendingRuns);
+        this.pending = null;
+        this.pendingRuns = new HistoryFile.Run[0];
+    }
+
+    private void write(ForkJoinTask<?> parsing, HistoryFile.Run[] parsedRuns) throws IOException {
+        parsing.join();
+        List<HistoryFile.Run> runs = Arrays.stream(parsedRuns).filter(Objects::nonNull).collect(Collectors.toList());
+        this.writer.write(runs);
+        this.printProgress(false);
+    }
+
+    private void printProgress(boolean force) {
+        long now = System.nanoTime();
+        if (!force && now - this.lastProgress < PROGRESS_INTERVAL_NS) return;
+        this.lastProgress = now;
+        double elapsed = Math.max(1e-9, (now - this.start) / 1e9);
+        long done = this.parsed.sum() + this.skipped.sum() + this.failed.sum();
+        System.out.printf("%d/%d worlds (%d runs, %d skipped, %d failed), %.0f worlds/s, %.1f MB/s%n",
+                done, this.found, this.writer.getRuns(), this.skipped.sum(), this.failed.sum(), done / elapsed, this.bytesRead.sum() / elapsed / 1e6);
+    }
+
+    private void printSummary(Path outputPath) throws IOException {
+        this.printProgress(true);
+        double elapsed = (System.nanoTime() - this.start) / 1e9;
+        System.out.printf("Imported %d runs in %.1f s, %s is %.1f KB%n", this.writer.getRuns(), elapsed, outputPath, Files.size(outputPath) / 1024.0);
+    }
+
+    /**
+     * @return the run of the world, or null if it isn't an AA run that got as far as writing events
+     */
+    @Nullable
+    private HistoryFile.Run parseWorld(Path worldPath, EventsLogReader eventsReader) throws IOException {
+        Path speedrunigtPath = worldPath.resolve("speedrunigt");
+        Path recordPath = speedrunigtPath.resolve("record.json");
+        Path eventsPath = speedrunigtPath.resolve("events.log");
+        if (!Files.exists(recordPath) || !Files.exists(eventsPath)) return null;
+
+        RecordData record = RecordParser.parse(recordPath);
+        this.bytesRead.add(Files.size(recordPath));
+        if (record == null || !"ALL_ADVANCEMENTS".equals(record.category)) return null;
+
+        eventsReader.reset();
+        List<String> events = eventsReader.update(eventsPath);
+        eventsReader.flushPartialLine(); // Past runs are done being written, so a last line without a newline is whole
+        this.bytesRead.add(eventsReader.getLastBytesRead());
+        if (events.isEmpty()) return null;
+
+        EventIndex index = eventsReader.getIndex();
+        long netherIgt = index.getNetherEnterIgt() == EventIndex.Event.UNKNOWN_TIME ? -1 : index.getNetherEnterIgt();
+        return new HistoryFile.Run(
+                worldPath.toString(), WorldSession.getWorldId(worldPath, events.get(0)), record.date, record.category, record.completed,
+                record.finalIgt, record.finalRta, record.completedAdvancements.size(), netherIgt, index.hasCheatEvents(), events.size()
+        );
+    }
+
+    private class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // Never serialized, RecursiveAction just happens to be Serializable
+
+        private final Path[] worlds;
+        private final HistoryFile.Run[] runs;
+        private final int from;
+        private final int to;
+
+        private ParseTask(Path[] worlds, HistoryFile.Run[] runs, int from, int to) {
+            this.worlds = worlds;
+            this.runs = runs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > LEAF_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                ForkJoinTask.invokeAll(new ParseTask(this.worlds, this.runs, this.from, middle), new ParseTask(this.worlds, this.runs, middle, this.to));
+                return;
+            }
+            EventsLogReader eventsReader = new EventsLogReader();
+            for (int i = this.from; i < this.to; i++) {
+                try {
+                    this.runs[i] = HistoryImporter.this.parseWorld(this.worlds[i], eventsReader);
+                    (this.runs[i] == null ? HistoryImporter.this.skipped : HistoryImporter.this.parsed).increment();
+                } catch (Throwable t) {
+                    HistoryImporter.this.failed.increment();
+                    if (HistoryImporter.this.failed.sum() <= MAX_LOGGED_FAILURES) {
+                        AATracker.logWarning("Failed to import " + this.worlds[i] + ": " + ExceptionUtil.toDetailedString(t));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.ExceptionUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The requests waiting to be sent by {@link PayloadSender}. Once a request fails the outbox is saved to disk, and again
+ * on every change until it is empty, so requests waiting for PaceMan.gg to come back survive a restart of the tracker.
+ * It is also saved when the sender stops. Requests sent on the first try are never written.
+ * <p>
+ * Only the newest payload of each world is kept, older ones are dropped when a new one is added. Payloads of different
+ * worlds may be sent in any order, but never ahead of a kill queued before them. Payloads are stored without the
+ * access key. Not thread safe, {@link PayloadSender} guards it with its own lock. Only the file is written without the
+ * lock, from a {@link #takeUnsaved(boolean)} copy.
+ */
+public class Outbox {
+    private static final long MAX_AGE_ON_LOAD = 10 * 60 * 1000; // Older requests are for a run that is long gone
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    private static final int MAX_ATTEMPTS = 10; // About 5 minutes of retrying
+
+    private final @Nullable Path path;
+    private final Clock clock;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private long totalRetries = 0;
+    private long compactedPayloads = 0;
+    private long suppressedPayloads = 0;
+    private long droppedRequests = 0;
+    private boolean saved = false; // The file holds requests, so it has to follow every change
+    private boolean unsaved = false;
+
+    /**
+     * @param path  where to save the outbox, or null to only keep it in memory
+     * @param clock used for the age of entries and when to retry them
+     */
+    public Outbox(@Nullable Path path, Clock clock) {
+        this.path = path;
+        this.clock = clock;
+    }
+
+    /**
+     * Loads entries saved by a previous run of the tracker, dropping requests that are too old to still matter.
+     */
+    public void load() {
+        if (this.path == null || !Files.exists(this.path)) return;
+        try {
+            SavedOutbox saved = GsonHolder.GSON.fromJson(new String(Files.readAllBytes(this.path), StandardCharsets.UTF_8), SavedOutbox.class);
+            if (saved == null || saved.entries == null) return;
+            long now = this.clock.millis();
+            for (Entry entry : saved.entries) {
+                if (entry.kill) {
+                    // A kill ends whatever run is current when it is sent, which after a restart may be a new run. The
+                    // payloads queued before it are of the run it was for, which has ended.
+                    this.entries.clear();
+                } else if (entry.payload != null && now - entry.createdAt <= MAX_AGE_ON_LOAD) {
+                    entry.runId = -1; // Not a run known to this session
+                    entry.inFlight = false;
+                    this.entries.add(entry);
+                }
+            }
+            // Still on disk until they are sent
+            this.saved = true;
+            this.unsaved = true;
+            if (!this.entries.isEmpty()) {
+                AATracker.log("Loaded " + this.entries.size() + " unsent request(s) from the outbox.");
+            }
+        } catch (Exception e) {
+            AATracker.logError("Failed to load outbox, unsent requests from before the restart are lost: " + ExceptionUtil.toDetailedString(e));
+        }
+    }
+
+    /**
+     * @param sendAt the earliest time to send the payload, see {@link SendRateLimiter}
+     * @return the queued entry
+     */
+    public Entry addPayload(JsonObject payload, String worldId, long runId, long sendAt) {
+        Entry entry = new Entry(false, payload, worldId, runId, this.clock.millis());
+        entry.nextAttemptAt = sendAt;
+        entry.rateLimited = sendAt > entry.createdAt;
+        // Replace waiting payloads of the same world, as long as no kill was queued since
+        for (int i = this.entries.size() - 1; i >= 0; i--) {
+            Entry existing = this.entries.get(i);
+            if (existing.kill) break;
+            if (existing.inFlight || !worldId.equals(existing.worldId)) continue;
+            if (existing.attempts > 0) {
+                // Keep backing off if the replaced payload was failing
+                entry.attempts = existing.attempts;
+                entry.nextAttemptAt = Math.max(entry.nextAttemptAt, existing.nextAttemptAt);
+            } else if (existing.rateLimited) {
+                this.suppressedPayloads++;
+            }
+            this.entries.remove(i);
+            this.compactedPayloads++;
+        }
+        this.entries.add(entry);
+        this.onChanged();
+        return entry;
+    }
+
+    public void addKill() {
+        this.entries.add(new Entry(true, null, null, -1, this.clock.millis()));
+        this.onChanged();
+    }
+
+    /**
+     * @return the entry to send next: a kill once every entry queued before it is gone, otherwise the payload queued
+     * before the first kill that can be sent the soonest
+     */
+    @Nullable
+    public Entry peek() {
+        Entry next = null;
+        for (Entry entry : this.entries) {
+            if (entry.kill) return next == null ? entry : next;
+            if (next == null || entry.nextAttemptAt < next.nextAttemptAt) next = entry;
+        }
+        return next;
+    }
+
+    public void remove(Entry entry) {
+        this.entries.remove(entry);
+        this.onChanged();
+    }
+
+    /**
+     * Schedules another attempt of an entry with jittered exponential backoff, or removes it if it has been tried too
+     * many times.
+     *
+     * @return false if the entry was given up on and removed
+     */
+    public boolean scheduleRetry(Entry entry) {
+        entry.inFlight = false;
+        entry.attempts++;
+        this.unsaved = true;
+        if (entry.attempts >= MAX_ATTEMPTS) {
+            this.entries.remove(entry);
+            this.droppedRequests++;
+            return false;
+        }
+        this.totalRetries++;
+        long backoff = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(entry.attempts - 1, 16));
+        // Between half and all of the backoff, so that many trackers don't retry in lockstep
+        entry.nextAttemptAt = this.clock.millis() + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        return true;
+    }
+
+    private void onChanged() {
+        if (this.saved) this.unsaved = true;
+    }
+
+    /**
+     * Forgets every entry without touching the file, see {@link #takeUnsaved(boolean)} to keep them for the next start.
+     */
+    public void clear() {
+        this.entries.clear();
+        this.saved = false;
+        this.unsaved = false;
+    }
+
+    public boolean hasPayloads() {
+        return this.entries.stream().anyMatch(entry -> !entry.kill);
+    }
+
+    public boolean hasPayloads(String worldId) {
+        return this.entries.stream().anyMatch(entry -> !entry.kill && worldId.equals(entry.worldId));
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the age of the oldest entry in milliseconds, or 0 if there are none
+     */
+    public long getOldestAge() {
+        long now = this.clock.millis();
+        return this.entries.stream().mapToLong(entry -> now - entry.createdAt).max().orElse(0);
+    }
+
+    public long getTotalRetries() {
+        return this.totalRetries;
+    }
+
+    public long getCompactedPayloads() {
+        return this.compactedPayloads;
+    }
+
+    public long getSuppressedPayloads() {
+        return this.suppressedPayloads;
+    }
+
+    /**
+     * @return the number of requests given up on after too many failed attempts
+     */
+    public long getDroppedRequests() {
+        return this.droppedRequests;
+    }
+
+    /**
+     * Copies the entries to be written by {@link #save(List)}, which can then be done without holding the lock.
+     *
+     * @param all true to save whatever is queued, such as when the sender stops
+     * @return the entries, or null if the file is up to date
+     */
+    @Nullable
+    public List<Entry> takeUnsaved(boolean all) {
+        if (this.path == null || !(this.unsaved || (all && !this.entries.isEmpty()))) return null;
+        this.unsaved = false;
+        this.saved = !this.entries.isEmpty();
+        List<Entry> copy = new ArrayList<>(this.entries.size());
+        for (Entry entry : this.entries) {
+            copy.add(entry.copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Writes entries taken by {@link #takeUnsaved(boolean)}, deleting the file if there are none. Saves must not run
+     * concurrently and must be made in the order the entries were taken.
+     */
+    public void save(List<Entry> entries) {
+        if (this.path == null) return;
+        try {
+            if (entries.isEmpty()) {
+                // Nothing to load on the next start, which then doesn't have to set up Gson
+                Files.deleteIfExists(this.path);
+                return;
+            }
+            Files.createDirectories(this.path.getParent());
+            Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            SavedOutbox saved = new SavedOutbox();
+            saved.entries = entries;
+            Files.write(tempPath, GsonHolder.GSON.toJson(saved).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            AATracker.logError("Failed to save outbox: " + ExceptionUtil.toDetailedString(e));
+        }
+    }
+
+    public static class Entry {
+        public final boolean kill;
+        public final @Nullable JsonObject payload;
+        public final @Nullable String worldId;
+        public final long createdAt;
+        public int attempts = 0;
+        public long nextAttemptAt = 0;
+        transient long runId;
+        /**
+         * The state of the world when the payload was queued, journaled once it is acknowledged. Not saved, so null for
+         * payloads loaded from a previous run of the tracker.
+         */
+        transient @Nullable StateJournal.Entry state = null;
+        /**
+         * The payload serialized without the access key when it was built. Not saved either, as it is the payload.
+         */
+        transient @Nullable byte[] json = null;
+        transient boolean inFlight = false;
+        transient boolean rateLimited = false; // Waiting for the end of its world's send interval
+
+        private Entry(boolean kill, @Nullable JsonObject payload, @Nullable String worldId, long runId, long createdAt) {
+            this.kill = kill;
+            this.payload = payload;
+            this.worldId = worldId;
+            this.runId = runId;
+            this.createdAt = createdAt;
+        }
+
+        private Entry copy() {
+            Entry copy = new Entry(this.kill, this.payload, this.worldId, this.runId, this.createdAt);
+            copy.attempts = this.attempts;
+            copy.nextAttemptAt = this.nextAttemptAt;
+            return copy;
+        }
+    }
+
+    private static class SavedOutbox {
+        private List<Entry> entries = Collections.emptyList();
+    }
+
+    /**
+     * Creates the Gson instance on first use, as most starts of the tracker have no outbox to load.
+     */
+    private static class GsonHolder {
+        private static final Gson GSON = new Gson();
+    }
+}
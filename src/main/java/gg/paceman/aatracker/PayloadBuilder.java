@@ -0,0 +1,324 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Builds the payload sent to PaceMan.gg from a parsed record, latest_world.json and the events of a world.
+ * <p>
+ * Every section of the payload (mod list, completed advancements, timelines, events, each criteria list and items) is
+ * kept with its serialized bytes and the source data it was built from, and is only built again once that source data
+ * changes. Events are only ever appended, so new events are added on to the kept event list instead. The fingerprint
+ * of a payload is put together from the kept bytes, so an unchanged payload is never serialized as a whole.
+ * <p>
+ * Payloads share the elements of unchanged sections, so they must not be modified once built. Not thread safe, every
+ * world has its own builder.
+ */
+public class PayloadBuilder {
+    private static final String[] PAYLOAD_NAMES = {"lastRecordModified", "gameVersion", "modVersion", "aaTrackerVersion", "worldId", "modList", "completed", "timelines", "eventList", "criterias", "items"};
+    private static final String[] CRITERIA_NAMES = Arrays.stream(Criteria.values()).map(criteria -> criteria.id).toArray(String[]::new);
+
+    private final TrackerMetrics metrics;
+    private final PayloadSerializer serializer = new PayloadSerializer();
+
+    // Small values that change rarely, kept so their bytes aren't made again for every payload
+    private final Section lastRecordModified = new Section(null);
+    private final Section gameVersion = new Section(null);
+    private final Section modVersion = new Section(null);
+    private final Section aaTrackerVersion = new Section(null);
+    private final Section worldId = new Section(null);
+
+    private final Section modList = new Section("modList");
+    private final Section completed = new Section("completed");
+    private final Section timelines = new Section("timelines");
+    private final Section eventList = new Section("eventList");
+    private final Section[] criteria = new Section[Criteria.values().length];
+    private final Section criterias = new Section(null);
+    private final Section items = new Section("items");
+
+    // In the order they are in the payload
+    private final Section[] sections = {this.lastRecordModified, this.gameVersion, this.modVersion, this.aaTrackerVersion, this.worldId, this.modList, this.completed, this.timelines, this.eventList, this.criterias, this.items};
+    private final byte[][] sectionBytes = new byte[this.sections.length][];
+    private final byte[][] criteriaBytes = new byte[this.criteria.length][];
+
+    // The kept event list was built from these, events are the same String objects until the log is read again
+    private int eventCount = 0;
+    private @Nullable String firstEvent = null;
+    private @Nullable String lastEvent = null;
+
+    private int timelineCount = 0;
+    private boolean completedAll = false;
+    private boolean milestone = false;
+
+    private byte[] fingerprint = new byte[0];
+    private long size = 0;
+
+    public PayloadBuilder(TrackerMetrics metrics) {
+        this.metrics = metrics;
+        for (Criteria criteria : Criteria.values()) {
+            this.criteria[criteria.ordinal()] = new Section("criterias." + criteria.id);
+        }
+    }
+
+    /**
+     * @param lastRecordModified the last modified time of the record.json the record was parsed from
+     * @return the payload, without the access key
+     */
+    public JsonObject build(RecordData record, JsonObject latestWorld, List<String> events, String worldId, long lastRecordModified) {
+        if (this.isStale(this.lastRecordModified, lastRecordModified)) {
+            this.set(this.lastRecordModified, new JsonPrimitive(lastRecordModified));
+        }
+        String gameVersion = latestWorld.get("version").getAsString();
+        if (this.isStale(this.gameVersion, gameVersion)) {
+            this.set(this.gameVersion, new JsonPrimitive(gameVersion));
+        }
+        String modVersion = latestWorld.get("mod_version").getAsString();
+        if (this.isStale(this.modVersion, modVersion)) {
+            this.set(this.modVersion, new JsonPrimitive(modVersion.split("\\+")[0]));
+        }
+        String aaTrackerVersion = AATracker.VERSION;
+        if (this.isStale(this.aaTrackerVersion, aaTrackerVersion)) {
+            this.set(this.aaTrackerVersion, new JsonPrimitive(aaTrackerVersion.startsWith("v") ? aaTrackerVersion.substring(1) : aaTrackerVersion));
+        }
+        if (this.isStale(this.worldId, worldId)) {
+            this.set(this.worldId, new JsonPrimitive(worldId));
+        }
+
+        JsonArray mods = latestWorld.getAsJsonArray("mods");
+        if (this.isStale(this.modList, mods)) {
+            JsonArray modList = new JsonArray();
+            mods.asList().stream().map(JsonElement::getAsString).sorted().forEach(modList::add);
+            this.set(this.modList, modList);
+        }
+        if (this.isStale(this.completed, record.completedAdvancements)) {
+            this.set(this.completed, PayloadBuilder.getCompleted(record));
+        }
+        this.milestone = false;
+        if (this.isStale(this.timelines, record.timelines)) {
+            this.set(this.timelines, record.timelines);
+            int timelineCount = record.timelines == null ? 0 : record.timelines.size();
+            this.milestone = timelineCount > this.timelineCount;
+            this.timelineCount = timelineCount;
+        }
+        boolean completedAll = record.completedAdvancements.knownSize() >= AdvancementRegistry.KNOWN_ADVANCEMENTS;
+        this.milestone |= completedAll && !this.completedAll;
+        this.completedAll = completedAll;
+        this.updateEventList(events);
+        this.updateCriterias(record);
+        long itemsKey = ((long) (record.skullsPickedUp - record.skullsDropped - record.skullsUsed) << 1) | (record.hasEnchantedGoldenApple ? 1 : 0);
+        if (this.isStale(this.items, itemsKey)) {
+            this.set(this.items, PayloadBuilder.getItems(record));
+        }
+
+        JsonObject toSend = new JsonObject();
+        for (int i = 0; i < this.sections.length; i++) {
+            toSend.add(PAYLOAD_NAMES[i], this.sections[i].element);
+            this.sectionBytes[i] = this.sections[i].bytes;
+        }
+        this.fingerprint = this.serializer.fingerprint(PAYLOAD_NAMES, this.sectionBytes);
+        this.size = this.serializer.getLastFingerprintedSize();
+        return toSend;
+    }
+
+    /**
+     * @return the SHA-256 digest of the last built payload serialized without the access key, the same as
+     * {@link PayloadSerializer#fingerprint(JsonObject)} would give
+     */
+    public byte[] getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * @return true if the last built payload has a split the previous one didn't, or is the first with every
+     * advancement completed
+     */
+    public boolean isMilestone() {
+        return this.milestone;
+    }
+
+    /**
+     * Serializes the last built payload from its kept sections, the same as {@link JsonObject#toString()} would give,
+     * so it can be handed to the sender and every sink without any of them serializing it again.
+     *
+     * @return the payload without the access key as utf-8 json
+     */
+    public byte[] toJson() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) this.size);
+        PayloadSerializer.writeObject(out, PAYLOAD_NAMES, this.sectionBytes);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the size in bytes of the last built payload serialized without the access key
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Counts a hit or miss of the section and remembers the source it is for.
+     *
+     * @return true if the section has to be built again
+     */
+    private boolean isStale(Section section, @Nullable Object source) {
+        boolean hit = section.element != null && Objects.equals(section.source, source);
+        section.source = source;
+        return this.count(section, hit);
+    }
+
+    private boolean isStale(Section section, long key) {
+        boolean hit = section.element != null && section.key == key;
+        section.key = key;
+        return this.count(section, hit);
+    }
+
+    private boolean count(Section section, boolean hit) {
+        if (section.name != null) this.metrics.recordSection(section.name, hit);
+        return !hit;
+    }
+
+    private void set(Section section, JsonElement element) {
+        section.element = element;
+        section.bytes = this.serializer.toBytes(element);
+    }
+
+    private void updateEventList(List<String> events) {
+        int count = events.size();
+        boolean sameStart = this.eventList.element != null && count >= this.eventCount
+                && (this.eventCount == 0 || (events.get(0) == this.firstEvent && events.get(this.eventCount - 1) == this.lastEvent));
+        if (!this.count(this.eventList, sameStart && count == this.eventCount)) return;
+
+        JsonArray eventList = new JsonArray(count);
+        ByteArrayOutputStream bytes;
+        int start;
+        if (sameStart) {
+            // Share the events already in the list and keep their bytes, only adding the new ones
+            eventList.addAll((JsonArray) this.eventList.element);
+            bytes = new ByteArrayOutputStream(this.eventList.bytes.length + (count - this.eventCount) * 64);
+            bytes.write(this.eventList.bytes, 0, this.eventList.bytes.length - 1);
+            start = this.eventCount;
+        } else {
+            bytes = new ByteArrayOutputStream(count * 64 + 2);
+            bytes.write('[');
+            start = 0;
+        }
+        for (int i = start; i < count; i++) {
+            JsonPrimitive event = new JsonPrimitive(events.get(i));
+            eventList.add(event);
+            if (i > 0) bytes.write(',');
+            byte[] eventBytes = this.serializer.toBytes(event);
+            bytes.write(eventBytes, 0, eventBytes.length);
+        }
+        bytes.write(']');
+
+        this.eventList.element = eventList;
+        this.eventList.bytes = bytes.toByteArray();
+        this.eventCount = count;
+        this.firstEvent = count == 0 ? null : events.get(0);
+        this.lastEvent = count == 0 ? null : events.get(count - 1);
+    }
+
+    private void updateCriterias(RecordData record) {
+        boolean changed = this.criterias.element == null;
+        for (Criteria criteria : Criteria.values()) {
+            Section section = this.criteria[criteria.ordinal()];
+            if (this.isStale(section, record.criteria[criteria.advancement.ordinal()])) {
+                this.set(section, PayloadBuilder.getCriteria(record, criteria));
+                changed = true;
+            }
+        }
+        if (!changed) return;
+
+        JsonObject criterias = new JsonObject();
+        for (Criteria criteria : Criteria.values()) {
+            Section section = this.criteria[criteria.ordinal()];
+            criterias.add(criteria.id, section.element);
+            this.criteriaBytes[criteria.ordinal()] = section.bytes;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PayloadSerializer.writeObject(bytes, CRITERIA_NAMES, this.criteriaBytes);
+        this.criterias.element = criterias;
+        this.criterias.bytes = bytes.toByteArray();
+    }
+
+    /**
+     * @return "name rta igt" of every completed advancement sorted by identifier, without the minecraft: prefix
+     */
+    public static JsonArray getCompleted(RecordData record) {
+        JsonArray completed = new JsonArray(record.completedAdvancements.size());
+        AdvancementRegistry.IdTable advancements = AdvancementRegistry.ADVANCEMENTS;
+        for (int id : advancements.getSortedIds()) {
+            if (!record.completedAdvancements.contains(id)) continue;
+            completed.add(advancements.getDisplayName(id) + " " + record.completedAdvancements.getRta(id) + " " + record.completedAdvancements.getIgt(id));
+        }
+        return completed;
+    }
+
+    public static JsonObject getCriterias(RecordData record) {
+        JsonObject criterias = new JsonObject();
+        for (Criteria criteria : Criteria.values()) {
+            criterias.add(criteria.id, PayloadBuilder.getCriteria(record, criteria));
+        }
+        return criterias;
+    }
+
+    public static JsonObject getItems(RecordData record) {
+        JsonObject aaItems = new JsonObject();
+        aaItems.addProperty("has_enchanted_golden_apple", record.hasEnchantedGoldenApple);
+        aaItems.addProperty("skulls", record.skullsPickedUp - record.skullsDropped - record.skullsUsed);
+        return aaItems;
+    }
+
+    /**
+     * @return the display names of the criteria, sorted by identifier
+     */
+    private static JsonArray getCriteria(RecordData record, Criteria criteria) {
+        BitSet ids = record.criteria[criteria.advancement.ordinal()];
+        AdvancementRegistry.IdTable table = criteria.advancement.criteria;
+        JsonArray names = new JsonArray(ids.cardinality());
+        for (int id : table.getSortedIds()) {
+            if (ids.get(id)) names.add(table.getDisplayName(id));
+        }
+        return names;
+    }
+
+    private enum Criteria {
+        BIOMES("biomes", AdvancementRegistry.CriteriaAdvancement.ADVENTURING_TIME),
+        MONSTERS_KILLED("monstersKilled", AdvancementRegistry.CriteriaAdvancement.KILL_ALL_MOBS),
+        ANIMALS_BRED("animalsBred", AdvancementRegistry.CriteriaAdvancement.BRED_ALL_ANIMALS),
+        CATS_TAMED("catsTamed", AdvancementRegistry.CriteriaAdvancement.COMPLETE_CATALOGUE),
+        FOOD_EATEN("foodEaten", AdvancementRegistry.CriteriaAdvancement.BALANCED_DIET);
+
+        private final String id;
+        private final AdvancementRegistry.CriteriaAdvancement advancement;
+
+        Criteria(String id, AdvancementRegistry.CriteriaAdvancement advancement) {
+            this.id = id;
+            this.advancement = advancement;
+        }
+    }
+
+    private static class Section {
+        /**
+         * Name to count hits and misses under, or null to not count them.
+         */
+        private final @Nullable String name;
+        private @Nullable Object source = null;
+        private long key = 0;
+        private @Nullable JsonElement element = null;
+        private byte[] bytes = new byte[0];
+
+        private Section(@Nullable String name) {
+            this.name = name;
+        }
+    }
+}
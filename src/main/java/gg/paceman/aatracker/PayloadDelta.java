@@ -0,0 +1,135 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Computes and applies the differences between two payloads for the delta protocol.
+ * <p>
+ * A diff is an object with any of these members:
+ * <ul>
+ *     <li>"set": members that are new or replaced entirely</li>
+ *     <li>"remove": names of members that no longer exist</li>
+ *     <li>"append": arrays that only had elements added to the end, mapped to the added elements</li>
+ *     <li>"insert": arrays that only had elements added, mapped to [index, element] pairs in ascending index order,
+ *     where the index is the element's position in the new array</li>
+ *     <li>"patch": objects that changed, mapped to their own diff</li>
+ * </ul>
+ * This covers what actually happens during a run: events and timelines get appended, completed advancements and
+ * criteria get inserted into sorted lists and item counts change.
+ */
+public final class PayloadDelta {
+    private PayloadDelta() {
+    }
+
+    public static JsonObject diff(JsonObject previous, JsonObject current) {
+        JsonObject set = new JsonObject();
+        JsonArray remove = new JsonArray();
+        JsonObject append = new JsonObject();
+        JsonObject insert = new JsonObject();
+        JsonObject patch = new JsonObject();
+
+        for (Map.Entry<String, JsonElement> entry : current.entrySet()) {
+            String key = entry.getKey();
+            JsonElement value = entry.getValue();
+            JsonElement previousValue = previous.get(key);
+            if (Objects.equals(previousValue, value)) continue;
+
+            if (previousValue != null && previousValue.isJsonArray() && value.isJsonArray()) {
+                JsonArray insertions = PayloadDelta.findInsertions(previousValue.getAsJsonArray(), value.getAsJsonArray());
+                if (insertions == null) {
+                    set.add(key, value);
+                } else if (PayloadDelta.allAppended(insertions, previousValue.getAsJsonArray().size())) {
+                    JsonArray appended = new JsonArray(insertions.size());
+                    insertions.forEach(pair -> appended.add(pair.getAsJsonArray().get(1)));
+                    append.add(key, appended);
+                } else {
+                    insert.add(key, insertions);
+                }
+            } else if (previousValue != null && previousValue.isJsonObject() && value.isJsonObject()) {
+                patch.add(key, PayloadDelta.diff(previousValue.getAsJsonObject(), value.getAsJsonObject()));
+            } else {
+                set.add(key, value);
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.has(key)) remove.add(key);
+        }
+
+        JsonObject diff = new JsonObject();
+        if (set.size() > 0) diff.add("set", set);
+        if (remove.size() > 0) diff.add("remove", remove);
+        if (append.size() > 0) diff.add("append", append);
+        if (insert.size() > 0) diff.add("insert", insert);
+        if (patch.size() > 0) diff.add("patch", patch);
+        return diff;
+    }
+
+    /**
+     * Applies a diff to a copy of the base object, the base object itself is left untouched.
+     */
+    public static JsonObject apply(JsonObject base, JsonObject diff) {
+        JsonObject result = base.deepCopy();
+        PayloadDelta.applyInPlace(result, diff);
+        return result;
+    }
+
+    private static void applyInPlace(JsonObject target, JsonObject diff) {
+        if (diff.has("remove")) {
+            diff.getAsJsonArray("remove").forEach(key -> target.remove(key.getAsString()));
+        }
+        if (diff.has("set")) {
+            diff.getAsJsonObject("set").entrySet().forEach(e -> target.add(e.getKey(), e.getValue().deepCopy()));
+        }
+        if (diff.has("append")) {
+            for (Map.Entry<String, JsonElement> entry : diff.getAsJsonObject("append").entrySet()) {
+                JsonArray array = target.getAsJsonArray(entry.getKey());
+                entry.getValue().getAsJsonArray().forEach(e -> array.add(e.deepCopy()));
+            }
+        }
+        if (diff.has("insert")) {
+            for (Map.Entry<String, JsonElement> entry : diff.getAsJsonObject("insert").entrySet()) {
+                List<JsonElement> array = target.getAsJsonArray(entry.getKey()).asList();
+                for (JsonElement pair : entry.getValue().getAsJsonArray()) {
+                    array.add(pair.getAsJsonArray().get(0).getAsInt(), pair.getAsJsonArray().get(1).deepCopy());
+                }
+            }
+        }
+        if (diff.has("patch")) {
+            for (Map.Entry<String, JsonElement> entry : diff.getAsJsonObject("patch").entrySet()) {
+                PayloadDelta.applyInPlace(target.getAsJsonObject(entry.getKey()), entry.getValue().getAsJsonObject());
+            }
+        }
+    }
+
+    /**
+     * @return [index, element] pairs that turn the previous array into the current one, or null if elements were
+     * removed or reordered
+     */
+    @Nullable
+    private static JsonArray findInsertions(JsonArray previous, JsonArray current) {
+        JsonArray insertions = new JsonArray();
+        int i = 0;
+        for (int j = 0; j < current.size(); j++) {
+            if (i < previous.size() && previous.get(i).equals(current.get(j))) {
+                i++;
+            } else {
+                JsonArray pair = new JsonArray(2);
+                pair.add(j);
+                pair.add(current.get(j));
+                insertions.add(pair);
+            }
+        }
+        return i == previous.size() ? insertions : null;
+    }
+
+    private static boolean allAppended(JsonArray insertions, int previousSize) {
+        return insertions.size() == 0 || insertions.get(0).getAsJsonArray().get(0).getAsInt() == previousSize;
+    }
+}
@@ -0,0 +1,292 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.ExceptionUtil;
+import gg.paceman.aatracker.util.PostUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.List;
+
+/**
+ * Sends payloads and kill requests on its own thread so that file detection and payload building never wait on the
+ * network.
+ * <p>
+ * Requests are kept in an {@link Outbox} and sent in the order they were queued, except that a payload waiting to be
+ * sent is replaced when a newer payload of the same world is queued, so only the newest snapshot goes out after a slow
+ * send. Payloads of a world are also held back by a {@link SendRateLimiter}, during which payloads of other worlds may
+ * go first. A kill is only sent after every payload queued before it. Network errors and server errors are retried
+ * with backoff instead of ending the run, and only reported as a failure once a request has failed for several minutes.
+ * A rejection by PaceMan.gg (4xx) is reported right away.
+ */
+public class PayloadSender {
+    private final Handler handler;
+    private final Outbox outbox;
+    private final Clock clock;
+    private final SendRateLimiter rateLimiter = new SendRateLimiter();
+    private @Nullable Thread thread = null;
+
+    /**
+     * @param clock used for the rate limit and for when to retry, should be the clock of the outbox
+     */
+    public PayloadSender(Handler handler, Outbox outbox, Clock clock) {
+        this.handler = handler;
+        this.outbox = outbox;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        if (this.thread != null) return;
+        this.outbox.load();
+        this.saveOutbox(this.outbox.takeUnsaved(false));
+        this.thread = new Thread(this::run, "paceman-aa-sender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the sender, waiting a few seconds for an in-flight request to finish. Queued requests are saved for the
+     * next start.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+            this.thread = null;
+            this.notifyAll();
+        }
+        if (thread == null) return;
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ignored) {
+        }
+        thread.interrupt();
+        List<Outbox.Entry> unsaved;
+        synchronized (this) {
+            unsaved = this.outbox.takeUnsaved(true);
+            this.outbox.clear();
+        }
+        this.saveOutbox(unsaved);
+    }
+
+    /**
+     * @param minIntervalMs the minimum time between two sends of a world, 0 to send payloads as soon as they are queued
+     */
+    public synchronized void setMinSendInterval(long minIntervalMs) {
+        this.rateLimiter.setMinInterval(minIntervalMs);
+    }
+
+    /**
+     * @param payload   the payload without the access key
+     * @param json      the payload serialized without the access key, passed to {@link Handler#send}, or null to
+     *                  have it serialized when sent
+     * @param runId     passed back to {@link Handler#onSendFinished} so results of older runs can be told apart
+     * @param milestone true to send the payload right away even if the world was sent recently
+     * @param state     passed back to {@link Handler#onSendFinished} with the entry, null if there is nothing to save
+     */
+    public synchronized void queuePayload(JsonObject payload, @Nullable byte[] json, long runId, boolean milestone, @Nullable StateJournal.Entry state) {
+        String worldId = payload.get("worldId").getAsString();
+        Outbox.Entry entry = this.outbox.addPayload(payload, worldId, runId, this.rateLimiter.getSendTime(worldId, this.clock.millis(), milestone));
+        entry.json = json;
+        entry.state = state;
+        this.notifyAll();
+    }
+
+    /**
+     * Queues a kill request behind every queued payload.
+     */
+    public synchronized void queueKill() {
+        this.outbox.addKill();
+        this.notifyAll();
+    }
+
+    /**
+     * @return true if a payload is queued, waiting for a retry or currently being sent
+     */
+    public synchronized boolean hasPendingPayloads() {
+        return this.outbox.hasPayloads();
+    }
+
+    /**
+     * @return true if a payload of the given world is queued, waiting for a retry or currently being sent
+     */
+    public synchronized boolean hasPendingPayloads(String worldId) {
+        return this.outbox.hasPayloads(worldId);
+    }
+
+    public synchronized int getQueueDepth() {
+        return this.outbox.size();
+    }
+
+    public synchronized long getOldestQueuedAge() {
+        return this.outbox.getOldestAge();
+    }
+
+    public synchronized long getTotalRetries() {
+        return this.outbox.getTotalRetries();
+    }
+
+    /**
+     * @return the number of payloads that were replaced by a newer one before being sent
+     */
+    public synchronized long getCoalescedPayloads() {
+        return this.outbox.getCompactedPayloads();
+    }
+
+    /**
+     * @return the number of payloads held back to keep the minimum interval between sends of a world
+     */
+    public synchronized long getRateLimitedPayloads() {
+        return this.rateLimiter.getHeldPayloads();
+    }
+
+    /**
+     * @return the number of payloads held back by the rate limit that were replaced by a newer one, and never sent
+     */
+    public synchronized long getSuppressedPayloads() {
+        return this.outbox.getSuppressedPayloads();
+    }
+
+    /**
+     * @return the number of requests given up on after failing too many times
+     */
+    public synchronized long getDroppedRequests() {
+        return this.outbox.getDroppedRequests();
+    }
+
+    public synchronized long getBypassedMilestones() {
+        return this.rateLimiter.getBypassedMilestones();
+    }
+
+    private void run() {
+        while (true) {
+            Outbox.Entry entry;
+            synchronized (this) {
+                while (true) {
+                    if (this.thread != Thread.currentThread()) return;
+                    entry = this.outbox.peek();
+                    long waitTime = entry == null ? 0 : entry.nextAttemptAt - this.clock.millis();
+                    if (entry != null && waitTime <= 0) break;
+                    try {
+                        this.wait(Math.max(0, waitTime));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                entry.inFlight = true;
+                if (!entry.kill && entry.worldId != null) {
+                    this.rateLimiter.onSent(entry.worldId, this.clock.millis());
+                }
+            }
+            if (entry.kill) {
+                this.kill(entry);
+            } else {
+                this.send(entry);
+            }
+        }
+    }
+
+    private void send(Outbox.Entry entry) {
+        assert entry.payload != null;
+        PostUtil.PostResponse response = null;
+        Throwable error = null;
+        try {
+            response = this.handler.send(entry.payload, entry.json);
+        } catch (Throwable t) {
+            error = t;
+        }
+
+        boolean retry = PayloadSender.shouldRetry(response, error);
+        boolean retrying = false;
+        List<Outbox.Entry> unsaved;
+        synchronized (this) {
+            // Stopped while sending, the entry was saved for the next start
+            if (this.thread != Thread.currentThread()) return;
+            if (retry) {
+                retrying = this.outbox.scheduleRetry(entry);
+            } else {
+                this.outbox.remove(entry);
+            }
+            unsaved = this.outbox.takeUnsaved(false);
+            if (retrying) {
+                AATracker.logWarning("Failed to send to PaceMan.gg (" + PayloadSender.describe(response, error) + "), retrying in " + (entry.nextAttemptAt - this.clock.millis()) + "ms. (attempt " + entry.attempts + ", " + this.outbox.size() + " queued)");
+            }
+        }
+        this.saveOutbox(unsaved);
+        if (retrying) return;
+        if (retry) {
+            AATracker.logError("Giving up on sending to PaceMan.gg after " + entry.attempts + " attempts (" + PayloadSender.describe(response, error) + ")");
+        }
+        this.handler.onSendFinished(entry, response, error);
+    }
+
+    private void kill(Outbox.Entry entry) {
+        PostUtil.PostResponse response = null;
+        IOException error = null;
+        try {
+            response = this.handler.kill();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        boolean retrying = false;
+        List<Outbox.Entry> unsaved;
+        synchronized (this) {
+            if (this.thread != Thread.currentThread()) return;
+            if (PayloadSender.shouldRetry(response, error)) {
+                retrying = this.outbox.scheduleRetry(entry);
+                if (retrying) {
+                    AATracker.logWarning("Failed to kill run (" + PayloadSender.describe(response, error) + "), retrying. (attempt " + entry.attempts + ")");
+                }
+            } else {
+                this.outbox.remove(entry);
+            }
+            unsaved = this.outbox.takeUnsaved(false);
+        }
+        this.saveOutbox(unsaved);
+        if (retrying) return;
+        if (error != null) {
+            AATracker.logError("Failed to kill run: " + ExceptionUtil.toDetailedString(error));
+        } else if (response.code >= 400) {
+            AATracker.logError("Failed to kill run: " + PayloadSender.describe(response, null));
+        }
+    }
+
+    /**
+     * Writes the outbox outside of the lock, so queueing a payload never waits on the disk. Only called from the sender
+     * thread, or once it has stopped, so saves are made in order.
+     */
+    private void saveOutbox(@Nullable List<Outbox.Entry> unsaved) {
+        if (unsaved != null) this.outbox.save(unsaved);
+    }
+
+    private static String describe(@Nullable PostUtil.PostResponse response, @Nullable Throwable error) {
+        return error != null ? error.toString() : response.code + ": " + response.message;
+    }
+
+    /**
+     * Network errors, timeouts, rate limiting and server errors are worth retrying. Anything else the server
+     * rejected will be rejected again.
+     */
+    private static boolean shouldRetry(@Nullable PostUtil.PostResponse response, @Nullable Throwable error) {
+        if (error != null) return error instanceof IOException;
+        return response != null && (response.code >= 500 || response.code == 408 || response.code == 429);
+    }
+
+    public interface Handler {
+        /**
+         * @param json the payload as serialized when it was queued, null for payloads loaded from the outbox
+         */
+        PostUtil.PostResponse send(JsonObject payload, @Nullable byte[] json) throws IOException;
+
+        PostUtil.PostResponse kill() throws IOException;
+
+        /**
+         * Called on the sender thread once a payload is sent or permanently failed, with either the response or the
+         * error thrown. Payloads loaded from the outbox of a previous session have a run id of -1, their world id tells
+         * which run they belong to.
+         */
+        void onSendFinished(Outbox.Entry entry, @Nullable PostUtil.PostResponse response, @Nullable Throwable error);
+    }
+}
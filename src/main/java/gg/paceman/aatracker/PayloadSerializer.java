@@ -0,0 +1,223 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Writes payloads as JSON through a {@link JsonWriter} without ever holding them as a String, either into a reusable
+ * buffer that is handed to the transport as is, or straight into a SHA-256 digest to tell whether a payload changed.
+ * <p>
+ * The output is byte for byte what {@link JsonElement#toString()} gives. Not thread safe, every thread serializing
+ * payloads needs its own instance.
+ */
+public class PayloadSerializer {
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final byte[] ACCESS_KEY_NAME = "\"accessKey\":".getBytes(StandardCharsets.UTF_8);
+
+    private final Buffer buffer = new Buffer();
+    private final Writer bufferWriter = new OutputStreamWriter(this.buffer, StandardCharsets.UTF_8);
+    private final DigestStream digestStream = new DigestStream();
+    private final Writer digestWriter = new OutputStreamWriter(this.digestStream, StandardCharsets.UTF_8);
+
+    /**
+     * Serializes a payload into the reusable buffer, with the access key appended as the last property if given.
+     *
+     * @return the buffer, which is only valid until the next call
+     */
+    public Buffer write(JsonObject payload, @Nullable String accessKey) {
+        this.buffer.reset();
+        try {
+            PayloadSerializer.writeTo(this.bufferWriter, payload, accessKey);
+        } catch (IOException e) {
+            // Only the buffer is written to
+            throw new UncheckedIOException(e);
+        }
+        return this.buffer;
+    }
+
+    /**
+     * Same as {@link #write(JsonObject, String)} for a payload already serialized without the access key, which is
+     * copied into the buffer instead of being serialized again.
+     *
+     * @return the buffer, which is only valid until the next call
+     */
+    public Buffer write(byte[] json, @Nullable String accessKey) {
+        this.buffer.reset();
+        if (accessKey == null) {
+            this.buffer.write(json, 0, json.length);
+            return this.buffer;
+        }
+        // The access key goes in as the last property, in place of the closing brace
+        this.buffer.write(json, 0, json.length - 1);
+        if (json.length > 2) this.buffer.write(',');
+        this.buffer.write(ACCESS_KEY_NAME, 0, ACCESS_KEY_NAME.length);
+        try {
+            JsonWriter writer = new JsonWriter(this.bufferWriter);
+            writer.setLenient(true);
+            writer.value(accessKey);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.buffer.write('}');
+        return this.buffer;
+    }
+
+    /**
+     * @return the SHA-256 digest of the serialized payload, without the access key
+     */
+    public byte[] fingerprint(JsonObject payload) {
+        this.digestStream.reset();
+        try {
+            PayloadSerializer.writeTo(this.digestWriter, payload, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.digestStream.digest.digest();
+    }
+
+    /**
+     * Same as {@link #fingerprint(JsonObject)} for an object whose property values are already serialized.
+     *
+     * @param names  property names in order, which must not need escaping
+     * @param values the serialized value of each property
+     */
+    public byte[] fingerprint(String[] names, byte[][] values) {
+        this.digestStream.reset();
+        PayloadSerializer.writeObject(this.digestStream, names, values);
+        return this.digestStream.digest.digest();
+    }
+
+    /**
+     * @return a serialized element, to be kept as a fragment of later payloads
+     */
+    public byte[] toBytes(JsonElement element) {
+        this.buffer.reset();
+        try {
+            JsonWriter writer = new JsonWriter(this.bufferWriter);
+            writer.setLenient(true);
+            AdapterHolder.ELEMENT_ADAPTER.write(writer, element);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.buffer.toByteArray();
+    }
+
+    /**
+     * @return the size in bytes of the payload given to the last fingerprint call
+     */
+    public long getLastFingerprintedSize() {
+        return this.digestStream.count;
+    }
+
+    private static void writeTo(Writer out, JsonObject payload, @Nullable String accessKey) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        // Same settings as JsonElement.toString()
+        writer.setLenient(true);
+        writer.beginObject();
+        for (Map.Entry<String, JsonElement> entry : payload.entrySet()) {
+            writer.name(entry.getKey());
+            AdapterHolder.ELEMENT_ADAPTER.write(writer, entry.getValue());
+        }
+        if (accessKey != null) {
+            writer.name("accessKey").value(accessKey);
+        }
+        writer.endObject();
+        // Not closed, that would close the reused stream
+        writer.flush();
+    }
+
+    /**
+     * Writes an object from already serialized property values, exactly as a {@link JsonWriter} would have.
+     *
+     * @param names property names in order, which must not need escaping
+     */
+    public static void writeObject(OutputStream out, String[] names, byte[][] values) {
+        try {
+            out.write('{');
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) out.write(',');
+                out.write('"');
+                out.write(names[i].getBytes(StandardCharsets.UTF_8));
+                out.write('"');
+                out.write(':');
+                out.write(values[i]);
+            }
+            out.write('}');
+        } catch (IOException e) {
+            // Only ever given in-memory streams
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A byte buffer that exposes its backing array so it can be written out without copying.
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+        private Buffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        /**
+         * @return the backing array, of which the first {@link #size()} bytes are used
+         */
+        public byte[] getBytes() {
+            return this.buf;
+        }
+    }
+
+    private static class DigestStream extends OutputStream {
+        private final MessageDigest digest;
+        private long count = 0;
+
+        private DigestStream() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void reset() {
+            this.digest.reset();
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            this.digest.update((byte) b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.digest.update(b, off, len);
+            this.count += len;
+        }
+    }
+
+    /**
+     * Creates the adapter, and the Gson instance it comes from, the first time a payload is serialized rather than
+     * while the tracker starts.
+     */
+    private static class AdapterHolder {
+        private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+    }
+}
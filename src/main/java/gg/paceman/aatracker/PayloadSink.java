@@ -0,0 +1,27 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+
+/**
+ * Somewhere other than PaceMan.gg that every built payload goes to, such as a file read by a stream overlay or a local
+ * webhook. Sinks are run by a {@link SinkDispatcher}, each on a thread of its own, so a slow or failing sink never holds
+ * up the tracker or the other outputs.
+ */
+public interface PayloadSink {
+    /**
+     * @return a short name to tell the sink apart in logs
+     */
+    String getName();
+
+    /**
+     * Called with the newest payload of a world, payloads built while the sink was busy are skipped. A write that takes
+     * longer than the timeout given to the dispatcher is interrupted and counted as failed, so it should stop on an
+     * interrupt. Blocking network I/O ignores interrupts and should use the timeout itself.
+     *
+     * @param payload the payload without the access key, must not be modified
+     * @param json    the payload serialized as utf-8 json, shared by every sink and must not be modified
+     */
+    void write(JsonObject payload, byte[] json) throws IOException;
+}
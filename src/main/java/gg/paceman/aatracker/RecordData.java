@@ -0,0 +1,106 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonArray;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * The parts of a SpeedRunIGT record.json that the tracker actually uses, as read by {@link RecordParser}.
+ */
+public class RecordData {
+    public @Nullable String category = null;
+    public @Nullable JsonArray timelines = null;
+    public boolean hasAdvancements = false;
+    // Run summary, only used by the history import
+    public long date = 0;
+    public boolean completed = false;
+    public long finalIgt = 0;
+    public long finalRta = 0;
+
+    /**
+     * Completed advancements (complete and is_advancement both true).
+     */
+    public final CompletedAdvancements completedAdvancements = new CompletedAdvancements();
+    /**
+     * Criteria names of each {@link AdvancementRegistry.CriteriaAdvancement}, indexed by its ordinal, as ids of its
+     * criteria table.
+     */
+    public final BitSet[] criteria = new BitSet[AdvancementRegistry.CriteriaAdvancement.values().length];
+    public boolean hasEnchantedGoldenApple = false;
+
+    // Wither skeleton skull stats of the first player in the record's stats
+    public int skullsPickedUp = 0;
+    public int skullsDropped = 0;
+    public int skullsUsed = 0;
+
+    public RecordData() {
+        for (int i = 0; i < this.criteria.length; i++) {
+            this.criteria[i] = new BitSet();
+        }
+    }
+
+    /**
+     * A set of {@link AdvancementRegistry#ADVANCEMENTS} ids with the rta and igt of each.
+     */
+    public static class CompletedAdvancements {
+        private final BitSet ids = new BitSet();
+        private long[] rta = new long[AdvancementRegistry.ADVANCEMENTS.size()];
+        private long[] igt = new long[AdvancementRegistry.ADVANCEMENTS.size()];
+
+        public void add(int id, long rta, long igt) {
+            if (id >= this.rta.length) {
+                this.rta = Arrays.copyOf(this.rta, Math.max(id + 1, this.rta.length * 2));
+                this.igt = Arrays.copyOf(this.igt, this.rta.length);
+            }
+            this.ids.set(id);
+            this.rta[id] = rta;
+            this.igt[id] = igt;
+        }
+
+        public boolean contains(int id) {
+            return this.ids.get(id);
+        }
+
+        public long getRta(int id) {
+            return this.rta[id];
+        }
+
+        public long getIgt(int id) {
+            return this.igt[id];
+        }
+
+        public int size() {
+            return this.ids.cardinality();
+        }
+
+        /**
+         * @return the number of completed advancements of 1.16, leaving out any of other versions or mods
+         */
+        public int knownSize() {
+            int count = 0;
+            // Known advancements have the lowest ids
+            for (int id = this.ids.nextSetBit(0); id >= 0 && id < AdvancementRegistry.KNOWN_ADVANCEMENTS; id = this.ids.nextSetBit(id + 1)) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CompletedAdvancements)) return false;
+            CompletedAdvancements that = (CompletedAdvancements) o;
+            if (!this.ids.equals(that.ids)) return false;
+            for (int id = this.ids.nextSetBit(0); id >= 0; id = this.ids.nextSetBit(id + 1)) {
+                if (this.rta[id] != that.rta[id] || this.igt[id] != that.igt[id]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.ids.hashCode();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Streams through a SpeedRunIGT record.json and only keeps what ends up in the payload, skipping over everything else
+ * instead of building the whole json tree.
+ */
+public final class RecordParser {
+    public static final String EGA_ADVANCEMENT = "minecraft:recipes/misc/mojang_banner_pattern";
+    private static final String SKULL_ITEM = "minecraft:wither_skeleton_skull";
+
+    private RecordParser() {
+    }
+
+    /**
+     * @return the parsed record, or null if the file is empty or only contains a json null
+     */
+    @Nullable
+    public static RecordData parse(Path recordPath) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(recordPath, StandardCharsets.UTF_8)) {
+            return RecordParser.parse(new JsonReader(reader));
+        }
+    }
+
+    @Nullable
+    public static RecordData parse(JsonReader reader) throws IOException {
+        reader.setLenient(true);
+        try {
+            if (reader.peek() == JsonToken.NULL) return null;
+        } catch (EOFException e) {
+            return null; // Empty file
+        }
+
+        RecordData data = new RecordData();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "category":
+                    data.category = RecordParser.nextStringOrNull(reader);
+                    break;
+                case "timelines":
+                    JsonElement timelines = JsonParser.parseReader(reader);
+                    data.timelines = timelines.isJsonArray() ? timelines.getAsJsonArray() : null;
+                    break;
+                case "advancements":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        data.hasAdvancements = true;
+                        RecordParser.readAdvancements(reader, data);
+                    } else {
+                        data.hasAdvancements = false;
+                        reader.skipValue();
+                    }
+                    break;
+                case "stats":
+                    RecordParser.readStats(reader, data);
+                    break;
+                case "date":
+                    data.date = RecordParser.nextLong(reader);
+                    break;
+                case "is_completed":
+                    data.completed = RecordParser.nextBoolean(reader);
+                    break;
+                case "final_igt":
+                    data.finalIgt = RecordParser.nextLong(reader);
+                    break;
+                case "final_rta":
+                    data.finalRta = RecordParser.nextLong(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    private static void readAdvancements(JsonReader reader, RecordData data) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            AdvancementRegistry.CriteriaAdvancement criteriaAdvancement = AdvancementRegistry.CriteriaAdvancement.of(name);
+            boolean complete = false;
+            boolean isAdvancement = false;
+            long rta = 0;
+            long igt = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "complete":
+                        complete = RecordParser.nextBoolean(reader);
+                        break;
+                    case "is_advancement":
+                        isAdvancement = RecordParser.nextBoolean(reader);
+                        break;
+                    case "rta":
+                        rta = RecordParser.nextLong(reader);
+                        break;
+                    case "igt":
+                        igt = RecordParser.nextLong(reader);
+                        break;
+                    case "criteria":
+                        if (criteriaAdvancement != null) {
+                            RecordParser.readCriteria(reader, criteriaAdvancement.criteria, data.criteria[criteriaAdvancement.ordinal()]);
+                        } else {
+                            reader.skipValue();
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (complete && isAdvancement) {
+                int id = AdvancementRegistry.ADVANCEMENTS.idOf(name);
+                if (id != AdvancementRegistry.IdTable.NO_ID) data.completedAdvancements.add(id, rta, igt);
+            }
+            if (name.equals(EGA_ADVANCEMENT)) {
+                data.hasEnchantedGoldenApple = complete;
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readCriteria(JsonReader reader, AdvancementRegistry.IdTable table, BitSet criteria) throws IOException {
+        criteria.clear();
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int id = table.idOf(reader.nextName());
+            if (id != AdvancementRegistry.IdTable.NO_ID) criteria.set(id);
+            reader.skipValue();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads stats.[first player].stats, ignoring every other player.
+     */
+    private static void readStats(JsonReader reader, RecordData data) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        boolean first = true;
+        while (reader.hasNext()) {
+            reader.nextName();
+            if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                first = false;
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("stats") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    RecordParser.readPlayerStats(reader, data);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    private static void readPlayerStats(JsonReader reader, RecordData data) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String type = reader.nextName();
+            if (!(type.equals("minecraft:picked_up") || type.equals("minecraft:dropped") || type.equals("minecraft:used")) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(SKULL_ITEM) && reader.peek() == JsonToken.NUMBER) {
+                    int count = RecordParser.nextTruncatedInt(reader);
+                    switch (type) {
+                        case "minecraft:picked_up":
+                            data.skullsPickedUp = count;
+                            break;
+                        case "minecraft:dropped":
+                            data.skullsDropped = count;
+                            break;
+                        default:
+                            data.skullsUsed = count;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    @Nullable
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        return Boolean.parseBoolean(RecordParser.nextStringOrNull(reader));
+    }
+
+    /**
+     * Reads a number the way Gson's getAsInt() did for the tree, truncating fractions and keeping the low bits of
+     * anything too large instead of failing on it.
+     */
+    private static int nextTruncatedInt(JsonReader reader) throws IOException {
+        String number = reader.nextString();
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            return new BigDecimal(number).intValue();
+        }
+    }
+
+    private static long nextLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+            return reader.nextLong();
+        }
+        reader.skipValue();
+        return 0;
+    }
+}
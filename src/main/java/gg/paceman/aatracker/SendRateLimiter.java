@@ -0,0 +1,68 @@
+package gg.paceman.aatracker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a minimum interval between payload sends of each world, so that bursts of record.json and events.log rewrites
+ * don't each become a request.
+ * <p>
+ * A payload queued within the interval is held in the {@link Outbox} until the interval is over. Newer payloads of the
+ * world replace it while it waits, so the latest state always goes out at the end of the interval. Payloads that reach
+ * a milestone (a new split or the end of the run) are sent right away. Not thread safe, {@link PayloadSender} guards it
+ * with its own lock.
+ */
+public class SendRateLimiter {
+    private static final int MAX_WORLDS = 32;
+
+    // Least recently sent world first
+    private final Map<String, Long> lastSends = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return this.size() > MAX_WORLDS;
+        }
+    };
+
+    private long minIntervalMs = 0;
+    private long heldPayloads = 0;
+    private long bypassedMilestones = 0;
+
+    /**
+     * @param minIntervalMs the minimum time between the starts of two sends of a world, 0 to not limit sends
+     */
+    public void setMinInterval(long minIntervalMs) {
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+    }
+
+    /**
+     * @return the earliest time a payload of the world queued now may be sent
+     */
+    public long getSendTime(String worldId, long now, boolean milestone) {
+        Long lastSend = this.lastSends.get(worldId);
+        if (lastSend == null || now - lastSend >= this.minIntervalMs) return now;
+        if (milestone) {
+            this.bypassedMilestones++;
+            return now;
+        }
+        this.heldPayloads++;
+        return lastSend + this.minIntervalMs;
+    }
+
+    public void onSent(String worldId, long sentAt) {
+        this.lastSends.put(worldId, sentAt);
+    }
+
+    /**
+     * @return the number of payloads that had to wait for the end of their world's interval
+     */
+    public long getHeldPayloads() {
+        return this.heldPayloads;
+    }
+
+    /**
+     * @return the number of milestone payloads sent right away that would have been held otherwise
+     */
+    public long getBypassedMilestones() {
+        return this.bypassedMilestones;
+    }
+}
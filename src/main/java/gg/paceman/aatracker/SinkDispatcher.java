@@ -0,0 +1,218 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.ExceptionUtil;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans payloads out to the {@link PayloadSink}s, each on its own thread with its own queue.
+ * <p>
+ * Publishing never waits on a sink. Every sink has a queue holding the newest payload of each world, so a sink that
+ * is slower than payloads are built skips the ones it had no time for instead of falling behind. A sink that throws is
+ * logged and keeps getting payloads. Every sink is given the bytes the payload was serialized to when it was built.
+ * <p>
+ * Writes run on a thread of their own, and one that takes longer than the timeout is interrupted and given up on as a
+ * failure. The sink gets no more payloads until that write has returned, so a sink that hangs holds at most one thread.
+ */
+public class SinkDispatcher {
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private List<Worker> workers = Collections.emptyList();
+
+    /**
+     * Starts a thread for each sink.
+     *
+     * @param timeoutMs how long a sink may take to write a payload before the write is interrupted and given up on
+     */
+    public synchronized void start(List<PayloadSink> sinks, long timeoutMs) {
+        if (!this.workers.isEmpty()) return;
+        List<Worker> workers = new ArrayList<>();
+        for (PayloadSink sink : sinks) {
+            Worker worker = new Worker(sink, timeoutMs);
+            worker.thread.start();
+            workers.add(worker);
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Stops the sink threads, payloads they haven't written yet are dropped.
+     */
+    public void stop() {
+        List<Worker> workers;
+        synchronized (this) {
+            workers = this.workers;
+            this.workers = Collections.emptyList();
+        }
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    /**
+     * Queues a payload for every sink.
+     *
+     * @param payload the payload without the access key, must not be modified afterwards
+     * @param json    the payload serialized as utf-8 json, must not be modified afterwards
+     */
+    public void publish(JsonObject payload, byte[] json) {
+        List<Worker> workers;
+        synchronized (this) {
+            workers = this.workers;
+        }
+        if (workers.isEmpty()) return;
+        Snapshot snapshot = new Snapshot(payload, json);
+        String worldId = payload.get("worldId").getAsString();
+        for (Worker worker : workers) {
+            worker.offer(worldId, snapshot);
+        }
+    }
+
+    public synchronized int getSinkCount() {
+        return this.workers.size();
+    }
+
+    public long getWrites() {
+        return this.writes.sum();
+    }
+
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return the number of payloads a sink never wrote because a newer one of the same world came in first
+     */
+    public long getSkipped() {
+        return this.skipped.sum();
+    }
+
+    /**
+     * @return the number of writes given up on for taking longer than the timeout, also counted as failures
+     */
+    public long getTimeouts() {
+        return this.timeouts.sum();
+    }
+
+    private static class Snapshot {
+        private final JsonObject payload;
+        private final byte[] json;
+
+        private Snapshot(JsonObject payload, byte[] json) {
+            this.payload = payload;
+            this.json = json;
+        }
+    }
+
+    private class Worker {
+        private final PayloadSink sink;
+        private final long timeoutMs;
+        private final Thread thread;
+        private final Map<String, Snapshot> pending = new LinkedHashMap<>(); // World id -> newest payload
+        private boolean stopped = false;
+        private boolean failing = false;
+        private ExecutorService writer;
+        private @Nullable ExecutorService abandonedWriter = null; // Still running a write that timed out
+
+        private Worker(PayloadSink sink, long timeoutMs) {
+            this.sink = sink;
+            this.timeoutMs = timeoutMs;
+            this.thread = new Thread(this::run, "paceman-aa-sink-" + sink.getName());
+            this.thread.setDaemon(true);
+            this.writer = this.createWriter();
+        }
+
+        private ExecutorService createWriter() {
+            return Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "paceman-aa-sink-" + this.sink.getName() + "-write");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private synchronized void offer(String worldId, Snapshot snapshot) {
+            if (this.pending.put(worldId, snapshot) != null) SinkDispatcher.this.skipped.increment();
+            this.notifyAll();
+        }
+
+        private void stop() {
+            synchronized (this) {
+                this.stopped = true;
+                this.pending.clear();
+                this.notifyAll();
+            }
+            try {
+                this.thread.join(this.timeoutMs);
+            } catch (InterruptedException ignored) {
+            }
+            this.thread.interrupt();
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    Snapshot snapshot;
+                    synchronized (this) {
+                        while (!this.stopped && this.pending.isEmpty()) {
+                            this.wait();
+                        }
+                        if (this.stopped) return;
+                        Iterator<Snapshot> iterator = this.pending.values().iterator();
+                        snapshot = iterator.next();
+                        iterator.remove();
+                    }
+                    this.write(snapshot);
+                }
+            } catch (InterruptedException ignored) {
+            } finally {
+                this.writer.shutdownNow();
+            }
+        }
+
+        private void write(Snapshot snapshot) throws InterruptedException {
+            if (this.abandonedWriter != null) {
+                this.abandonedWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                this.abandonedWriter = null;
+            }
+            Future<?> future = this.writer.submit(() -> {
+                this.sink.write(snapshot.payload, snapshot.json);
+                return null;
+            });
+            try {
+                future.get(this.timeoutMs, TimeUnit.MILLISECONDS);
+                SinkDispatcher.this.writes.increment();
+                if (this.failing) {
+                    this.failing = false;
+                    AATracker.log("Output " + this.sink.getName() + " is working again.");
+                }
+            } catch (ExecutionException e) {
+                this.onFailure(ExceptionUtil.toDetailedString(e.getCause()));
+            } catch (TimeoutException e) {
+                SinkDispatcher.this.timeouts.increment();
+                // Interrupts the write, the next one waits for it to return on a new thread
+                this.abandonedWriter = this.writer;
+                this.abandonedWriter.shutdownNow();
+                this.writer = this.createWriter();
+                this.onFailure("took longer than " + this.timeoutMs + "ms");
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            }
+        }
+
+        private void onFailure(String reason) {
+            SinkDispatcher.this.failures.increment();
+            // Only logged once until it works again, a sink that's down would fail for every payload
+            if (!this.failing) {
+                this.failing = true;
+                AATracker.logWarning("Output " + this.sink.getName() + " failed, PaceMan.gg and other outputs are not affected: " + reason);
+            }
+        }
+    }
+}
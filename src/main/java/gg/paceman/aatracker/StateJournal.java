@@ -0,0 +1,271 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import gg.paceman.aatracker.util.ExceptionUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The state of every tracked world as of its last acknowledged send, saved so that a restart of the tracker (or of
+ * Julti/Jingle) mid-run can pick up where it left off instead of reading every file again and sending the run again.
+ * <p>
+ * The events read so far are kept along with the events.log offset they end at, so a resumed world only reads what
+ * was appended since. Each world is saved as it was when its acknowledged payload was queued, so the journal never
+ * claims a payload was sent that is only in the outbox, which may be dropped on load. Changes are only kept in memory
+ * until {@link #save()}, which replaces the file atomically, so a crash leaves either the old or the new state and
+ * frequent acknowledgements don't rewrite every world's events each time. Every method is synchronized, worlds are
+ * saved from whichever tracker thread handled their send.
+ */
+public class StateJournal {
+    private final @Nullable Path path;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(); // World path -> entry
+    private @Nullable String lastAcknowledgedWorld = null;
+    private boolean changed = false;
+
+    /**
+     * @param path where to save the journal, or null to only keep it in memory
+     */
+    public StateJournal(@Nullable Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Loads the journal saved by a previous run of the tracker, dropping worlds saved before the given time.
+     */
+    public synchronized void load(long savedAfter) {
+        this.entries.clear();
+        this.lastAcknowledgedWorld = null;
+        this.changed = false;
+        if (this.path == null || !Files.exists(this.path)) return;
+        try (Reader reader = Files.newBufferedReader(this.path, StandardCharsets.UTF_8)) {
+            this.read(new JsonReader(reader));
+        } catch (Exception e) {
+            AATracker.logError("Failed to load the tracker state, runs from before the restart will be read again: " + ExceptionUtil.toDetailedString(e));
+            this.entries.clear();
+            this.lastAcknowledgedWorld = null;
+            return;
+        }
+        this.entries.values().removeIf(entry -> entry.savedAt < savedAfter);
+        if (!this.entries.containsKey(this.lastAcknowledgedWorld)) this.lastAcknowledgedWorld = null;
+    }
+
+    /**
+     * @return the saved state of the world at the given path, if any
+     */
+    @Nullable
+    public synchronized Entry get(Path worldPath) {
+        return this.entries.get(worldPath.toString());
+    }
+
+    /**
+     * @return true if PaceMan.gg most recently accepted a payload of the world at the given path
+     */
+    public synchronized boolean isLastAcknowledged(Path worldPath) {
+        return worldPath.toString().equals(this.lastAcknowledgedWorld);
+    }
+
+    /**
+     * Keeps the state of a world right after PaceMan.gg accepted one of its payloads.
+     *
+     * @param entry the state the world was in when the accepted payload was queued
+     */
+    public synchronized void putAcknowledged(Entry entry) {
+        this.entries.put(entry.worldPath, entry);
+        this.lastAcknowledgedWorld = entry.worldPath;
+        this.changed = true;
+    }
+
+    /**
+     * Marks the world of the given run id as the one PaceMan.gg most recently accepted a payload of, for payloads sent
+     * before their world was resumed. If no saved world has the id, no saved world is the last acknowledged one.
+     */
+    public synchronized void setLastAcknowledged(String worldId) {
+        String worldPath = this.entries.values().stream().filter(entry -> entry.worldId.equals(worldId)).map(entry -> entry.worldPath).findFirst().orElse(null);
+        if (Objects.equals(worldPath, this.lastAcknowledgedWorld)) return;
+        this.lastAcknowledgedWorld = worldPath;
+        this.changed = true;
+    }
+
+    /**
+     * Forgets a world whose run has ended, so it isn't resumed.
+     */
+    public synchronized void remove(Path worldPath) {
+        if (this.entries.remove(worldPath.toString()) == null) return;
+        if (worldPath.toString().equals(this.lastAcknowledgedWorld)) this.lastAcknowledgedWorld = null;
+        this.changed = true;
+    }
+
+    /**
+     * Writes the journal if it changed since it was last written or loaded.
+     */
+    public synchronized void save() {
+        if (this.path == null || !this.changed) return;
+        this.changed = false;
+        try {
+            if (this.entries.isEmpty()) {
+                Files.deleteIfExists(this.path);
+                return;
+            }
+            Files.createDirectories(this.path.getParent());
+            Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                this.write(new JsonWriter(writer));
+            }
+            Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            AATracker.logError("Failed to save the tracker state: " + ExceptionUtil.toDetailedString(e));
+        }
+    }
+
+    /**
+     * Written with a {@link JsonWriter} and read with a {@link JsonReader}, so resuming doesn't have to set up Gson.
+     */
+    private void write(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        if (this.lastAcknowledgedWorld != null) writer.name("lastAcknowledgedWorld").value(this.lastAcknowledgedWorld);
+        writer.name("worlds").beginArray();
+        for (Entry entry : this.entries.values()) {
+            writer.beginObject();
+            writer.name("worldPath").value(entry.worldPath);
+            writer.name("worldId").value(entry.worldId);
+            writer.name("savedAt").value(entry.savedAt);
+            writer.name("recordMTime").value(entry.recordMTime);
+            writer.name("eventsMTime").value(entry.eventsMTime);
+            writer.name("eventsOffset").value(entry.eventsOffset);
+            writer.name("fingerprint").value(Base64.getEncoder().encodeToString(entry.fingerprint));
+            writer.name("runOnPaceMan").value(entry.runOnPaceMan);
+            writer.name("worldActive").value(entry.worldActive);
+            writer.name("events").beginArray();
+            for (String event : entry.events) {
+                writer.value(event);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private void read(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "lastAcknowledgedWorld":
+                    this.lastAcknowledgedWorld = reader.nextString();
+                    break;
+                case "worlds":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Entry entry = StateJournal.readEntry(reader);
+                        this.entries.put(entry.worldPath, entry);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static Entry readEntry(JsonReader reader) throws IOException {
+        String worldPath = null, worldId = null;
+        long savedAt = 0, recordMTime = 0, eventsMTime = 0, eventsOffset = 0;
+        byte[] fingerprint = new byte[0];
+        boolean runOnPaceMan = false, worldActive = false;
+        List<String> events = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "worldPath":
+                    worldPath = reader.nextString();
+                    break;
+                case "worldId":
+                    worldId = reader.nextString();
+                    break;
+                case "savedAt":
+                    savedAt = reader.nextLong();
+                    break;
+                case "recordMTime":
+                    recordMTime = reader.nextLong();
+                    break;
+                case "eventsMTime":
+                    eventsMTime = reader.nextLong();
+                    break;
+                case "eventsOffset":
+                    eventsOffset = reader.nextLong();
+                    break;
+                case "fingerprint":
+                    fingerprint = Base64.getDecoder().decode(reader.nextString());
+                    break;
+                case "runOnPaceMan":
+                    runOnPaceMan = reader.nextBoolean();
+                    break;
+                case "worldActive":
+                    worldActive = reader.nextBoolean();
+                    break;
+                case "events":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        events.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (worldPath == null || worldId == null) throw new IOException("World without a path or id");
+        return new Entry(worldPath, worldId, savedAt, recordMTime, eventsMTime, eventsOffset, fingerprint, runOnPaceMan, worldActive, events);
+    }
+
+    public static class Entry {
+        public final String worldPath;
+        public final String worldId;
+        /**
+         * When the payload the state was saved with was queued.
+         */
+        public final long savedAt;
+        public final long recordMTime;
+        public final long eventsMTime;
+        /**
+         * Where the last of the events ends in events.log.
+         */
+        public final long eventsOffset;
+        /**
+         * Of the acknowledged payload.
+         */
+        public final byte[] fingerprint;
+        public final boolean runOnPaceMan;
+        public final boolean worldActive;
+        public final List<String> events;
+
+        public Entry(String worldPath, String worldId, long savedAt, long recordMTime, long eventsMTime, long eventsOffset, byte[] fingerprint, boolean runOnPaceMan, boolean worldActive, List<String> events) {
+            this.worldPath = worldPath;
+            this.worldId = worldId;
+            this.savedAt = savedAt;
+            this.recordMTime = recordMTime;
+            this.eventsMTime = eventsMTime;
+            this.eventsOffset = eventsOffset;
+            this.fingerprint = fingerprint;
+            this.runOnPaceMan = runOnPaceMan;
+            this.worldActive = worldActive;
+            this.events = events;
+        }
+    }
+}
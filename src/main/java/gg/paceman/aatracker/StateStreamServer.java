@@ -0,0 +1,264 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Streams the tracker's payloads as Server-Sent Events at http://127.0.0.1:port/events, so overlays and other local
+ * tools can follow a run without reading the SpeedRunIGT files themselves. Only listens on the loopback address.
+ * <p>
+ * A client first gets a "snapshot" event for every world: the payload with a "seq" added, like a full message of the
+ * delta protocol. After that every payload comes as a "delta" event of the form {"worldId","baseSeq","seq","diff"},
+ * which applies to the previous state as described in {@link PayloadDelta}. Each delta is made and serialized once for
+ * every client.
+ * <p>
+ * Every client has a bounded buffer. A client that falls too far behind has its buffer dropped and gets snapshots of
+ * the current state instead, so it never holds up the tracker or the other clients.
+ */
+public class StateStreamServer implements PayloadSink {
+    private static final int MAX_CLIENTS = 64;
+    private static final int MAX_WORLDS = 16;
+    private static final int MAX_CLIENT_BUFFER_BYTES = 1024 * 1024;
+    private static final long HEARTBEAT_MS = 15_000; // Lets a client that went away be noticed
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // World id -> latest state, oldest world first
+    private final Map<String, WorldState> worlds = new LinkedHashMap<String, WorldState>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WorldState> eldest) {
+            return this.size() > MAX_WORLDS;
+        }
+    };
+    private final Set<Client> clients = new HashSet<>();
+    private long resyncs = 0;
+
+    private StateStreamServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static StateStreamServer start(int port) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Every client holds a thread while it is connected
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "paceman-aa-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        StateStreamServer streamServer = new StateStreamServer(httpServer, executor);
+        httpServer.createContext("/events", streamServer::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return streamServer;
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            for (Client client : this.clients) {
+                client.close();
+            }
+            this.clients.clear();
+        }
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public synchronized int getClientCount() {
+        return this.clients.size();
+    }
+
+    /**
+     * @return the number of times a client fell behind and was sent snapshots instead of its buffered events
+     */
+    public synchronized long getResyncs() {
+        return this.resyncs;
+    }
+
+    @Override
+    public String getName() {
+        return "stream";
+    }
+
+    @Override
+    public void write(JsonObject payload, byte[] json) {
+        String worldId = payload.get("worldId").getAsString();
+        synchronized (this) {
+            WorldState state = this.worlds.get(worldId);
+            if (state == null) {
+                state = new WorldState();
+                this.worlds.put(worldId, state);
+            }
+            byte[] event = null;
+            if (state.payload != null && !this.clients.isEmpty()) {
+                JsonObject delta = new JsonObject();
+                delta.addProperty("worldId", worldId);
+                delta.addProperty("baseSeq", state.seq);
+                delta.addProperty("seq", state.seq + 1);
+                delta.add("diff", PayloadDelta.diff(state.payload, payload));
+                event = StateStreamServer.toEvent("delta", delta.toString());
+            }
+            state.payload = payload;
+            state.seq++;
+            state.snapshotEvent = null;
+            for (Client client : this.clients) {
+                if (event == null) {
+                    // First payload of the world
+                    client.requestResync();
+                } else if (!client.offer(event)) {
+                    this.resyncs++;
+                }
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Client client = new Client();
+            synchronized (this) {
+                if (this.clients.size() >= MAX_CLIENTS) {
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                this.clients.add(client);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            // Overlays are usually browser sources loaded from a file or another port
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                this.stream(client, os);
+            } finally {
+                synchronized (this) {
+                    this.clients.remove(client);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void stream(Client client, OutputStream os) throws IOException {
+        List<byte[]> events = new ArrayList<>();
+        while (true) {
+            events.clear();
+            boolean resync;
+            synchronized (client) {
+                while (!client.closed && !client.resync && client.queue.isEmpty()) {
+                    try {
+                        client.wait(HEARTBEAT_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (!client.resync && client.queue.isEmpty()) break;
+                }
+                if (client.closed) return;
+                resync = client.resync;
+            }
+            if (resync) {
+                // Deltas queued after the snapshots are taken apply on top of them, so both happen under the lock
+                synchronized (this) {
+                    for (WorldState state : this.worlds.values()) {
+                        events.add(state.getSnapshotEvent());
+                    }
+                    synchronized (client) {
+                        client.queue.clear();
+                        client.queuedBytes = 0;
+                        client.resync = false;
+                    }
+                }
+            } else {
+                synchronized (client) {
+                    events.addAll(client.queue);
+                    client.queue.clear();
+                    client.queuedBytes = 0;
+                }
+            }
+            if (events.isEmpty()) {
+                os.write(HEARTBEAT);
+            }
+            for (byte[] event : events) {
+                os.write(event);
+            }
+            os.flush();
+        }
+    }
+
+    private static byte[] toEvent(String type, String data) {
+        return ("event: " + type + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class WorldState {
+        private JsonObject payload = null;
+        private long seq = 0;
+        private byte[] snapshotEvent = null;
+
+        /**
+         * Made on the first resync after a payload, and shared by every client that needs it.
+         */
+        private byte[] getSnapshotEvent() {
+            if (this.snapshotEvent == null) {
+                JsonObject snapshot = this.payload.deepCopy();
+                snapshot.addProperty("seq", this.seq);
+                this.snapshotEvent = StateStreamServer.toEvent("snapshot", snapshot.toString());
+            }
+            return this.snapshotEvent;
+        }
+    }
+
+    private static class Client {
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private int queuedBytes = 0;
+        private boolean resync = true; // Starts with a snapshot of every world
+        private boolean closed = false;
+
+        /**
+         * @return false if the buffer was full, in which case it is dropped for a resync
+         */
+        private synchronized boolean offer(byte[] event) {
+            // Anything queued before a resync is dropped anyway
+            if (this.closed || this.resync) return true;
+            boolean fits = this.queuedBytes + event.length <= MAX_CLIENT_BUFFER_BYTES;
+            if (fits) {
+                this.queue.add(event);
+                this.queuedBytes += event.length;
+                this.notifyAll();
+            } else {
+                this.requestResync();
+            }
+            return fits;
+        }
+
+        private synchronized void requestResync() {
+            this.queue.clear();
+            this.queuedBytes = 0;
+            this.resync = true;
+            this.notifyAll();
+        }
+
+        private synchronized void close() {
+            this.closed = true;
+            this.notifyAll();
+        }
+    }
+}
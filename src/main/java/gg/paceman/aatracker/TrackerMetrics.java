@@ -0,0 +1,254 @@
+package gg.paceman.aatracker;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Timings and counters of a {@link TrackerSession}, readable as Prometheus text or as a short summary for the GUI.
+ * <p>
+ * Everything is lock free so recording from the tracker and sender threads costs next to nothing.
+ */
+public class TrackerMetrics {
+    private static final String PREFIX = "paceman_aa_";
+    // Upper bounds in seconds
+    private static final double[] PHASE_BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double[] LAG_BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10, 30, 60, 300};
+
+    private final EnumMap<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+    private final Histogram ackLag = new Histogram(LAG_BUCKETS);
+
+    public final LongAdder eventsBytesRead = new LongAdder();
+    public final LongAdder recordBytesRead = new LongAdder();
+    public final LongAdder ticks = new LongAdder();
+    public final LongAdder ticksUnchanged = new LongAdder();
+    public final LongAdder payloadsUnchanged = new LongAdder();
+    public final LongAdder sends = new LongAdder();
+    public final LongAdder sendFailures = new LongAdder();
+    public final LongAdder kills = new LongAdder();
+
+    // Section name -> {hits, misses}
+    private final Map<String, LongAdder[]> sections = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, Gauge> gauges = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, Info> infos = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public TrackerMetrics() {
+        for (Phase phase : Phase.values()) {
+            this.phases.put(phase, new Histogram(PHASE_BUCKETS));
+        }
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        this.phases.get(phase).record(nanos / 1e9);
+    }
+
+    /**
+     * Records the time from the newest event of a payload being written to events.log until PaceMan.gg accepted it.
+     */
+    public void recordAckLag(long millis) {
+        this.ackLag.record(Math.max(0, millis) / 1e3);
+    }
+
+    /**
+     * Records whether a section of a payload was reused from the last payload (a hit) or had to be built (a miss).
+     */
+    public void recordSection(String section, boolean hit) {
+        this.sections.computeIfAbsent(section, name -> new LongAdder[]{new LongAdder(), new LongAdder()})[hit ? 0 : 1].increment();
+    }
+
+    /**
+     * Adds a value owned by something else, such as the outbox size, read whenever the metrics are exported.
+     */
+    public void addGauge(String name, String help, LongSupplier value) {
+        this.gauges.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * @return the current value of a gauge added with {@link #addGauge}, or 0 if there is none with the name
+     */
+    public long getGauge(String name) {
+        Gauge gauge = this.gauges.get(name);
+        return gauge == null ? 0 : gauge.value.getAsLong();
+    }
+
+    /**
+     * Adds a text value, exported as a gauge of 1 with the value as its label.
+     */
+    public void addInfo(String name, String help, Supplier<String> value) {
+        this.infos.put(name, new Info(help, value));
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP ").append(PREFIX).append("phase_seconds Time spent in each phase of a world tick.\n");
+        out.append("# TYPE ").append(PREFIX).append("phase_seconds histogram\n");
+        this.phases.forEach((phase, histogram) -> histogram.appendPrometheus(out, PREFIX + "phase_seconds", "phase=\"" + phase.id + "\""));
+
+        out.append("# HELP ").append(PREFIX).append("ack_lag_seconds Time from queueing a payload to PaceMan.gg accepting it.\n");
+        out.append("# TYPE ").append(PREFIX).append("ack_lag_seconds histogram\n");
+        this.ackLag.appendPrometheus(out, PREFIX + "ack_lag_seconds", "");
+
+        out.append("# HELP ").append(PREFIX).append("bytes_read_total Bytes read from SpeedRunIGT files.\n");
+        out.append("# TYPE ").append(PREFIX).append("bytes_read_total counter\n");
+        out.append(PREFIX).append("bytes_read_total{file=\"events.log\"} ").append(this.eventsBytesRead.sum()).append('\n');
+        out.append(PREFIX).append("bytes_read_total{file=\"record.json\"} ").append(this.recordBytesRead.sum()).append('\n');
+        TrackerMetrics.appendCounter(out, "ticks_total", "Checks of latest_world.json and the tracked worlds.", this.ticks.sum());
+        TrackerMetrics.appendCounter(out, "ticks_unchanged_total", "World ticks skipped because no file changed.", this.ticksUnchanged.sum());
+        TrackerMetrics.appendCounter(out, "payloads_unchanged_total", "Payloads not sent because they matched the last one.", this.payloadsUnchanged.sum());
+        TrackerMetrics.appendCounter(out, "sends_total", "Payload requests made to PaceMan.gg.", this.sends.sum());
+        TrackerMetrics.appendCounter(out, "send_failures_total", "Payload requests that failed or were rejected.", this.sendFailures.sum());
+        TrackerMetrics.appendCounter(out, "kills_total", "Kill requests made to PaceMan.gg.", this.kills.sum());
+
+        out.append("# HELP ").append(PREFIX).append("payload_sections_total Payload sections reused from the last payload (hit) or built (miss).\n");
+        out.append("# TYPE ").append(PREFIX).append("payload_sections_total counter\n");
+        synchronized (this.sections) {
+            this.sections.forEach((name, counts) -> {
+                out.append(PREFIX).append("payload_sections_total{section=\"").append(name).append("\",result=\"hit\"} ").append(counts[0].sum()).append('\n');
+                out.append(PREFIX).append("payload_sections_total{section=\"").append(name).append("\",result=\"miss\"} ").append(counts[1].sum()).append('\n');
+            });
+        }
+
+        synchronized (this.gauges) {
+            this.gauges.forEach((name, gauge) -> {
+                out.append("# HELP ").append(PREFIX).append(name).append(' ').append(gauge.help).append('\n');
+                out.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+                out.append(PREFIX).append(name).append(' ').append(gauge.value.getAsLong()).append('\n');
+            });
+        }
+        synchronized (this.infos) {
+            this.infos.forEach((name, info) -> {
+                out.append("# HELP ").append(PREFIX).append(name).append(' ').append(info.help).append('\n');
+                out.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+                out.append(PREFIX).append(name).append("{value=\"").append(info.value.get()).append("\"} 1\n");
+            });
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return a few lines summarizing the metrics for people to read
+     */
+    public String toSummary() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-14s %7s %9s %9s %9s%n", "phase", "count", "mean ms", "p50 ms", "p99 ms"));
+        this.phases.forEach((phase, histogram) -> histogram.appendSummary(out, phase.id, 1e3));
+        this.ackLag.appendSummary(out, "ack lag", 1e3);
+        out.append(String.format("%nRead: %d B events.log, %d B record.json%n", this.eventsBytesRead.sum(), this.recordBytesRead.sum()));
+        out.append(String.format("Unchanged: %d ticks, %d payloads%n", this.ticksUnchanged.sum(), this.payloadsUnchanged.sum()));
+        out.append(String.format("Sends: %d, failures: %d, kills: %d%n", this.sends.sum(), this.sendFailures.sum(), this.kills.sum()));
+        synchronized (this.sections) {
+            this.sections.forEach((name, counts) -> out.append(String.format("Section %s: %d hits, %d misses%n", name, counts[0].sum(), counts[1].sum())));
+        }
+        synchronized (this.gauges) {
+            this.gauges.forEach((name, gauge) -> out.append(name).append(": ").append(gauge.value.getAsLong()).append('\n'));
+        }
+        synchronized (this.infos) {
+            this.infos.forEach((name, info) -> out.append(name).append(": ").append(info.value.get()).append('\n'));
+        }
+        return out.toString();
+    }
+
+    private static void appendCounter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    public enum Phase {
+        MTIME_CHECK("mtime_check"),
+        EVENTS_READ("events_read"),
+        RECORD_PARSE("record_parse"),
+        PAYLOAD_BUILD("payload_build"),
+        COMPARE("compare"),
+        HTTP_SEND("http_send");
+
+        public final String id;
+
+        Phase(String id) {
+            this.id = id;
+        }
+    }
+
+    private static class Gauge {
+        private final String help;
+        private final LongSupplier value;
+
+        private Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private static class Info {
+        private final String help;
+        private final Supplier<String> value;
+
+        private Info(String help, Supplier<String> value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A fixed bucket histogram, bucket counts are not cumulative until exported.
+     */
+    private static class Histogram {
+        private final double[] bounds;
+        private final AtomicLongArray counts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        private void record(double value) {
+            int bucket = Arrays.binarySearch(this.bounds, value);
+            this.counts.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+            this.count.increment();
+            this.sum.add(value);
+        }
+
+        /**
+         * @return the upper bound of the bucket containing the given quantile, or the largest bound if it is past the
+         * last bucket
+         */
+        private double quantile(double quantile) {
+            long total = this.count.sum();
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(quantile * total);
+            long cumulative = 0;
+            for (int i = 0; i < this.bounds.length; i++) {
+                cumulative += this.counts.get(i);
+                if (cumulative >= target) return this.bounds[i];
+            }
+            return this.bounds[this.bounds.length - 1];
+        }
+
+        private void appendPrometheus(StringBuilder out, String name, String labels) {
+            String separator = labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+            for (int i = 0; i < this.bounds.length; i++) {
+                cumulative += this.counts.get(i);
+                out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"").append(this.bounds[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += this.counts.get(this.bounds.length);
+            out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(suffix).append(' ').append(this.sum.sum()).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ').append(this.count.sum()).append('\n');
+        }
+
+        private void appendSummary(StringBuilder out, String name, double scale) {
+            long total = this.count.sum();
+            out.append(String.format("%-14s %7d %9.2f %9.2f %9.2f%n", name, total, total == 0 ? 0 : this.sum.sum() / total * scale, this.quantile(0.5) * scale, this.quantile(0.99) * scale));
+        }
+    }
+}
@@ -0,0 +1,685 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import gg.paceman.aatracker.util.ExceptionUtil;
+import gg.paceman.aatracker.util.PostUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The tracking engine: watches latest_world.json, keeps a {@link WorldSession} per tracked world and sends their
+ * payloads. All state belongs to the instance, so an engine can be stopped and started again, and several engines can
+ * run side by side with their own clock, home directory and transport.
+ */
+public class TrackerSession {
+    private static final int TRACKER_THREADS = 2;
+    private static final long WATCH_TICK_DELAY_MS = 50; // Lets SpeedRunIGT finish writing before we read
+    private static final long LIVE_EVENTS_TIMEOUT_MS = 30_000; // How long after the last event a run counts as live
+    private static final long RECENT_EVENTS_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final long SESSION_IDLE_TIMEOUT_MS = 30 * 60 * 1000;
+    private static final long JOURNAL_SAVE_INTERVAL_MS = 5000; // A crash loses at most this much, which is only sent again
+    private static final int MAX_SESSIONS = 16;
+    private static final int DELTA_RESYNC_CODE = 409; // Sent back by the delta endpoint if it is missing the base of a delta
+
+    private final boolean asPlugin;
+    private final Path homePath;
+    private final Path latestWorldPath;
+    private final AATrackerOptions options;
+    private final Clock clock;
+    private final Transport transport;
+    private final FileWatcher watcher = new FileWatcher(this::onFileChanged);
+    private final AtomicBoolean watchTickPending = new AtomicBoolean(false);
+    private final DeltaEncoder deltaEncoder = new DeltaEncoder();
+    private final PayloadSerializer serializer = new PayloadSerializer(); // Only used on the sender thread
+    private final PayloadSender sender;
+    private final TrackerMetrics metrics = new TrackerMetrics();
+    private final ConfigValidationCache configCache;
+    private final StateJournal stateJournal;
+    private final SinkDispatcher sinkDispatcher = new SinkDispatcher();
+    private final List<PayloadSink> extraSinks = new CopyOnWriteArrayList<>();
+    private @Nullable MetricsServer metricsServer = null;
+    private volatile @Nullable StateStreamServer streamServer = null;
+    private Set<Path> watchedDirectories = Collections.emptySet();
+    private Consumer<Throwable> crashHandler = t -> AATracker.logError("PaceMan AA Tracker has crashed! " + ExceptionUtil.toDetailedString(t));
+    private volatile Runnable tickListener = () -> {
+    };
+    private @Nullable ScheduledExecutorService executor = null;
+
+    // Stuff that changes over the course of tick()
+    private long lastLatestWorldMTime = 0;
+    private final Map<Path, WorldSession> sessions = new ConcurrentHashMap<>(); // Instance path -> session
+    private @Nullable WorldSession latestSession = null;
+    private long nextRunId = 0;
+    private volatile long lastAcknowledgedRunId = -1;
+    private volatile PollReason pollReason = PollReason.NOT_CONFIGURED;
+
+    /**
+     * Creates an engine using the user's home directory, the loaded options, the system clock and real requests to
+     * PaceMan.gg.
+     */
+    public TrackerSession(boolean asPlugin) {
+        this(asPlugin, Paths.get(System.getProperty("user.home")), AATrackerOptions.getPaceManAADir(), AATrackerOptions.getInstance(), Clock.systemUTC(), PostUtil::sendData);
+    }
+
+    /**
+     * @param homePath  the directory containing the global speedrunigt folder (latest_world.json and global options)
+     * @param dataPath  the directory to keep the outbox and the saved state of tracked worlds in
+     * @param options   read on every start, and the access key on every tick, so changes made while running apply
+     * @param clock     used for every time the engine keeps or compares, such as whether worlds are idle and when to
+     *                  retry a send
+     * @param transport used for every request to PaceMan.gg
+     */
+    public TrackerSession(boolean asPlugin, Path homePath, Path dataPath, AATrackerOptions options, Clock clock, Transport transport) {
+        this.asPlugin = asPlugin;
+        this.homePath = homePath.toAbsolutePath();
+        this.latestWorldPath = this.homePath.resolve("speedrunigt").resolve("latest_world.json");
+        this.options = options;
+        this.clock = clock;
+        this.transport = transport;
+        this.configCache = new ConfigValidationCache(this.homePath);
+        this.configCache.setWatchedDirectoryCheck(this.watcher::isWatching);
+        this.stateJournal = new StateJournal(dataPath.resolve("state.json"));
+        this.sender = new PayloadSender(new PayloadSender.Handler() {
+            @Override
+            public PostUtil.PostResponse send(JsonObject payload, @Nullable byte[] json) throws IOException {
+                return TrackerSession.this.sendPayload(payload, json);
+            }
+
+            @Override
+            public PostUtil.PostResponse kill() throws IOException {
+                return TrackerSession.this.sendKill();
+            }
+
+            @Override
+            public void onSendFinished(Outbox.Entry entry, @Nullable PostUtil.PostResponse response, @Nullable Throwable error) {
+                TrackerSession.this.onSendFinished(entry, response, error);
+            }
+        }, new Outbox(dataPath.resolve("outbox.json"), clock), clock);
+        this.metrics.addGauge("tracked_worlds", "Worlds currently tracked.", this.sessions::size);
+        this.metrics.addGauge("outbox_size", "Requests waiting to be sent.", this.sender::getQueueDepth);
+        this.metrics.addGauge("outbox_oldest_age_ms", "Age of the oldest request waiting to be sent.", this.sender::getOldestQueuedAge);
+        this.metrics.addGauge("send_retries", "Requests retried since start.", this.sender::getTotalRetries);
+        this.metrics.addGauge("send_dropped", "Requests given up on after failing too many times.", this.sender::getDroppedRequests);
+        this.metrics.addGauge("payloads_coalesced", "Queued payloads replaced by a newer one before being sent.", this.sender::getCoalescedPayloads);
+        this.metrics.addGauge("payloads_rate_limited", "Payloads held back to keep the minimum interval between sends of a world.", this.sender::getRateLimitedPayloads);
+        this.metrics.addGauge("payloads_suppressed", "Payloads held back by the rate limit and replaced before being sent.", this.sender::getSuppressedPayloads);
+        this.metrics.addGauge("output_sinks", "Outputs other than PaceMan.gg that payloads are written to.", this.sinkDispatcher::getSinkCount);
+        this.metrics.addGauge("output_writes", "Payloads written to outputs other than PaceMan.gg.", this.sinkDispatcher::getWrites);
+        this.metrics.addGauge("output_failures", "Payloads that failed to be written to an output.", this.sinkDispatcher::getFailures);
+        this.metrics.addGauge("output_skipped", "Payloads an output skipped because a newer one came in while it was busy.", this.sinkDispatcher::getSkipped);
+        this.metrics.addGauge("output_timeouts", "Payload writes given up on for taking longer than the output timeout.", this.sinkDispatcher::getTimeouts);
+        this.metrics.addGauge("stream_clients", "Clients connected to the local event stream.", () -> {
+            StateStreamServer streamServer = this.streamServer;
+            return streamServer == null ? 0 : streamServer.getClientCount();
+        });
+        this.metrics.addGauge("stream_resyncs", "Times a stream client fell behind and was sent snapshots instead.", () -> {
+            StateStreamServer streamServer = this.streamServer;
+            return streamServer == null ? 0 : streamServer.getResyncs();
+        });
+        this.metrics.addGauge("milestones_bypassed", "Payloads with a new split or the end of the run sent despite the rate limit.", this.sender::getBypassedMilestones);
+        this.metrics.addGauge("config_cache_hits", "Config file checks answered from the cache.", this.configCache::getHits);
+        this.metrics.addGauge("config_cache_misses", "Config file checks that had to read the file.", this.configCache::getMisses);
+        this.metrics.addGauge("poll_interval_ms", "Current time between polls of latest_world.json and the tracked worlds.", () -> this.pollReason.intervalMs);
+        this.metrics.addInfo("poll_reason", "Why the current poll interval was chosen.", () -> this.pollReason.id);
+    }
+
+    /**
+     * Sets what happens when a tick throws, the engine keeps running unless the handler stops it.
+     */
+    public void setCrashHandler(Consumer<Throwable> crashHandler) {
+        this.crashHandler = crashHandler;
+    }
+
+    /**
+     * Sets what runs on a tracker thread after every check of latest_world.json and the tracked worlds.
+     */
+    public void setTickListener(Runnable tickListener) {
+        this.tickListener = tickListener;
+    }
+
+    public TrackerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Adds an output that gets every payload from the next start on, along with the outputs set in the options.
+     */
+    public void addSink(PayloadSink sink) {
+        this.extraSinks.add(sink);
+    }
+
+    StateJournal getStateJournal() {
+        return this.stateJournal;
+    }
+
+    public synchronized boolean isRunning() {
+        return this.executor != null;
+    }
+
+    public synchronized void start() {
+        if (this.executor != null) return;
+        this.executor = Executors.newScheduledThreadPool(TRACKER_THREADS, r -> new Thread(r, "paceman-aa-tracker"));
+        PostUtil.setTimeouts(this.options.connectTimeoutMs, this.options.readTimeoutMs);
+        String baseUrl = this.options.getApiUrl("");
+        if (!baseUrl.equals(AATracker.DEFAULT_API_BASE_URL)) {
+            AATracker.log("Sending to " + baseUrl + " instead of PaceMan.gg");
+        }
+        if (this.options.dryRun) {
+            AATracker.log("Dry run, payloads will be built but not sent.");
+        }
+        // Worlds idle for longer would have stopped being tracked anyway. Loaded before the sender starts, as payloads
+        // reloaded from the outbox are acknowledged in the journal
+        this.stateJournal.load(this.currentTimeMillis() - SESSION_IDLE_TIMEOUT_MS);
+        this.sender.setMinSendInterval(this.options.minSendIntervalMs);
+        this.sender.start();
+        // Acknowledgements can come in several times a second, so the journal is written on its own schedule
+        this.executor.scheduleWithFixedDelay(this.stateJournal::save, JOURNAL_SAVE_INTERVAL_MS, JOURNAL_SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (this.options.streamPort > 0) {
+            try {
+                this.streamServer = StateStreamServer.start(this.options.streamPort);
+                AATracker.log("Streaming payloads at http://127.0.0.1:" + this.streamServer.getPort() + "/events");
+            } catch (IOException e) {
+                AATracker.logWarning("Failed to start stream server on port " + this.options.streamPort + ": " + e);
+            }
+        }
+        this.sinkDispatcher.start(this.createSinks(), this.options.outputTimeoutMs);
+        if (this.options.useFileWatcher) {
+            try {
+                this.watcher.start();
+                this.updateWatchedDirectories();
+            } catch (IOException e) {
+                AATracker.logWarning("Failed to start file watcher, only polling will be used: " + e);
+            }
+        }
+        if (this.options.metricsPort > 0) {
+            try {
+                this.metricsServer = MetricsServer.start(this.options.metricsPort, this.metrics);
+                AATracker.log("Metrics available at http://127.0.0.1:" + this.metricsServer.getPort() + "/metrics");
+            } catch (IOException e) {
+                AATracker.logWarning("Failed to start metrics server on port " + this.options.metricsPort + ": " + e);
+            }
+        }
+        // Polling is the only source of ticks if file watching is disabled or unreliable
+        this.schedule(this::poll, 0);
+    }
+
+    /**
+     * Stops the engine and forgets every tracked world. Must not be called from one of the engine's own threads.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        MetricsServer metricsServer;
+        StateStreamServer streamServer;
+        synchronized (this) {
+            executor = this.executor;
+            metricsServer = this.metricsServer;
+            streamServer = this.streamServer;
+            this.executor = null;
+            this.metricsServer = null;
+            this.streamServer = null;
+        }
+        if (executor == null) return;
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        this.watcher.stop();
+        this.sender.stop();
+        this.sinkDispatcher.stop();
+        if (streamServer != null) {
+            streamServer.stop();
+        }
+        try {
+            // Wait for and shutdown executor
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        this.stateJournal.save();
+
+        synchronized (this) {
+            this.sessions.clear();
+            this.watchedDirectories = Collections.emptySet();
+            this.latestSession = null;
+            this.lastLatestWorldMTime = 0;
+        }
+    }
+
+    public void restart() {
+        this.stop();
+        this.start();
+    }
+
+    long currentTimeMillis() {
+        return this.clock.millis();
+    }
+
+    Clock getClock() {
+        return this.clock;
+    }
+
+    private void onFileChanged(Path directory) {
+        this.configCache.invalidate(directory);
+        // Only tick the session whose files changed
+        for (WorldSession session : this.sessions.values()) {
+            if (session.getSpeedrunIGTPath().equals(directory)) {
+                this.queueSessionTick(session, WATCH_TICK_DELAY_MS);
+                return;
+            }
+        }
+        // Multiple events usually arrive for a single write, so only one tick is queued at a time
+        if (!this.watchTickPending.compareAndSet(false, true)) return;
+        if (!this.schedule(() -> {
+            this.watchTickPending.set(false);
+            this.tryTick();
+        }, WATCH_TICK_DELAY_MS)) {
+            this.watchTickPending.set(false);
+        }
+    }
+
+    private void queueSessionTick(WorldSession session, long delayMs) {
+        if (!session.tickQueued.compareAndSet(false, true)) return;
+        if (!this.schedule(() -> {
+            session.tickQueued.set(false);
+            if (!this.shouldRun() || this.sessions.get(WorldSession.getInstancePath(session.getWorldPath())) != session) return;
+            try {
+                session.tick();
+            } catch (Throwable t) {
+                this.crashHandler.accept(t);
+            }
+        }, delayMs)) {
+            session.tickQueued.set(false);
+        }
+    }
+
+    /**
+     * @return false if the engine is stopped
+     */
+    private boolean schedule(Runnable runnable, long delayMs) {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+        }
+        if (executor == null) return false;
+        try {
+            executor.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Executor was shut down
+            return false;
+        }
+    }
+
+    private void updateWatchedDirectories() {
+        List<Path> directories = new ArrayList<>();
+        directories.add(this.latestWorldPath.getParent());
+        for (WorldSession session : this.sessions.values()) {
+            Path instancePath = WorldSession.getInstancePath(session.getWorldPath());
+            directories.add(session.getSpeedrunIGTPath());
+            // Config files, so their cached verdicts can be trusted until a change is seen
+            directories.add(instancePath.resolve("speedrunigt"));
+            directories.add(instancePath.resolve("config").resolve("atum"));
+            directories.add(instancePath.resolve("config").resolve("mcsr"));
+        }
+        Set<Path> wasWatched = this.watchedDirectories;
+        this.watcher.setWatchedDirectories(directories);
+        this.watchedDirectories = new HashSet<>(directories);
+        // Changes made before a directory was watched were never reported
+        directories.stream().filter(directory -> !wasWatched.contains(directory)).forEach(this.configCache::invalidate);
+    }
+
+    /**
+     * @return how often the tracker is currently polling, and why
+     */
+    public PollReason getPollReason() {
+        return this.pollReason;
+    }
+
+    private void poll() {
+        this.tryTick();
+        PollReason reason = this.choosePollReason();
+        if (reason != this.pollReason) {
+            AATracker.logDebug("Polling every " + reason.intervalMs + "ms: " + reason.description);
+            this.pollReason = reason;
+        }
+        this.schedule(this::poll, reason.intervalMs);
+    }
+
+    /**
+     * Polls fast while a run is live, slower as its events stop, and mostly sleeps with nothing to track.
+     */
+    private PollReason choosePollReason() {
+        if (!this.shouldRun()) return PollReason.NOT_CONFIGURED;
+        if (this.sessions.isEmpty()) return PollReason.NO_WORLD;
+        long now = this.currentTimeMillis();
+        PollReason best = PollReason.IDLE;
+        for (WorldSession session : this.sessions.values()) {
+            PollReason reason = PollReason.IDLE;
+            if (session.isLive()) {
+                long sinceLastEvent = now - session.getLastUsefulEventMillis();
+                if (sinceLastEvent <= LIVE_EVENTS_TIMEOUT_MS) {
+                    reason = PollReason.LIVE;
+                } else if (sinceLastEvent <= RECENT_EVENTS_TIMEOUT_MS) {
+                    reason = PollReason.SLOWING_DOWN;
+                }
+            } else if (session.isWaitingForNether()) {
+                reason = PollReason.WAITING_FOR_NETHER;
+            }
+            if (reason.intervalMs < best.intervalMs) best = reason;
+        }
+        return best;
+    }
+
+    private void tryTick() {
+        try {
+            this.tick();
+        } catch (Throwable t) {
+            this.crashHandler.accept(t);
+        }
+        this.metrics.ticks.increment();
+        this.tickListener.run();
+    }
+
+    /**
+     * Checks latest_world.json for new worlds and queues a tick for every tracked world.
+     */
+    private synchronized void tick() throws IOException {
+        if (!this.shouldRun()) return;
+
+        this.checkLatestWorld();
+        this.removeIdleSessions();
+
+        this.sessions.values().forEach(session -> this.queueSessionTick(session, 0));
+    }
+
+    /**
+     * @param json      the payload serialized without the access key, shared by the sender and every output
+     * @param milestone true if the payload has a new split or ends the run, so it isn't held back by the rate limit
+     * @param state     the state of the world to journal once the payload is acknowledged
+     */
+    void queuePayload(JsonObject payload, byte[] json, long runId, boolean milestone, StateJournal.Entry state) {
+        // Local outputs get payloads in a dry run as well
+        this.sinkDispatcher.publish(payload, json);
+        if (this.options.dryRun) {
+            AATracker.logDebug("Dry run, not sending the payload.");
+            return;
+        }
+        this.sender.queuePayload(payload, json, runId, milestone, state);
+    }
+
+    boolean hasPendingPayloads(String worldId) {
+        return this.sender.hasPendingPayloads(worldId);
+    }
+
+    /**
+     * Queues a kill request, which goes out after any payload still waiting to be sent.
+     */
+    void killRun() {
+        AATracker.logDebug("Killing run since it ended and was on paceman...");
+        this.sender.queueKill();
+    }
+
+    /**
+     * @return true if the given run is the one that PaceMan.gg most recently accepted a payload for
+     */
+    boolean isLastAcknowledgedRun(long runId) {
+        return this.lastAcknowledgedRunId == runId;
+    }
+
+    private void onSendFinished(Outbox.Entry entry, @Nullable PostUtil.PostResponse response, @Nullable Throwable error) {
+        long sentRunId = entry.runId;
+        String worldId = entry.worldId;
+        assert worldId != null;
+        if (sentRunId == -1) {
+            // Loaded from the outbox, it belongs to whichever session resumed its world
+            sentRunId = this.sessions.values().stream().filter(session -> worldId.equals(session.getWorldId())).mapToLong(WorldSession::getRunId).findFirst().orElse(-1);
+        }
+        if (error == null && response != null && response.code < 400) {
+            if (sentRunId == -1) {
+                // Its world isn't resumed yet, checkLatestWorld picks this up from the journal if it is later
+                this.stateJournal.setLastAcknowledged(worldId);
+            }
+            this.lastAcknowledgedRunId = sentRunId;
+        }
+        for (WorldSession session : this.sessions.values()) {
+            if (session.getRunId() != sentRunId) continue;
+            // Handle the result on a tracker thread so the sender thread never waits on a session
+            this.schedule(() -> session.handleSendResult(entry, response, error), 0);
+            return;
+        }
+        // Result of a run that has already ended
+    }
+
+    private List<PayloadSink> createSinks() {
+        List<PayloadSink> sinks = new ArrayList<>();
+        if (!this.options.outputFile.isEmpty()) {
+            sinks.add(new FilePayloadSink(Paths.get(this.options.outputFile)));
+            AATracker.log("Writing payloads to " + this.options.outputFile);
+        }
+        if (!this.options.outputWebhookUrl.isEmpty()) {
+            sinks.add(new WebhookPayloadSink(this.options.outputWebhookUrl, this.options.outputTimeoutMs));
+            AATracker.log("Posting payloads to " + this.options.outputWebhookUrl);
+        }
+        if (this.streamServer != null) {
+            sinks.add(this.streamServer);
+        }
+        sinks.addAll(this.extraSinks);
+        return sinks;
+    }
+
+    private PostUtil.PostResponse sendKill() throws IOException {
+        this.metrics.kills.increment();
+        byte[] body = String.format("{\"accessKey\":\"%s\"}", this.options.accessKey).getBytes(StandardCharsets.UTF_8);
+        return this.transport.post(this.options.getApiUrl(AATracker.AA_KILL_PATH), body, body.length, false);
+    }
+
+    private PostUtil.PostResponse sendPayload(JsonObject payload, @Nullable byte[] json) throws IOException {
+        this.metrics.sends.increment();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PostUtil.PostResponse response = this.sendPayloadNow(payload, json);
+            failed = response.code >= 400;
+            return response;
+        } finally {
+            this.metrics.recordPhase(TrackerMetrics.Phase.HTTP_SEND, System.nanoTime() - start);
+            if (failed) this.metrics.sendFailures.increment();
+        }
+    }
+
+    private PostUtil.PostResponse sendPayloadNow(JsonObject payload, @Nullable byte[] json) throws IOException {
+        if (!this.options.useDeltaPayloads) {
+            // The payload may be kept in the outbox for a retry, so the access key is only added while serializing
+            PayloadSerializer.Buffer body = json != null ? this.serializer.write(json, this.options.accessKey) : this.serializer.write(payload, this.options.accessKey);
+            return this.transport.post(this.options.getApiUrl(AATracker.AA_SEND_PATH), body.getBytes(), body.size(), this.options.gzipPayloads);
+        }
+
+        DeltaEncoder.Message message = this.deltaEncoder.encode(payload);
+        PostUtil.PostResponse response = this.sendDeltaMessage(message);
+        if (response.code == DELTA_RESYNC_CODE && !message.full) {
+            AATracker.logDebug("PaceMan.gg asked for a resync, sending a full snapshot.");
+            this.deltaEncoder.reset(message.worldId);
+            response = this.sendDeltaMessage(this.deltaEncoder.encode(payload));
+        }
+        return response;
+    }
+
+    private PostUtil.PostResponse sendDeltaMessage(DeltaEncoder.Message message) throws IOException {
+        PayloadSerializer.Buffer body = this.serializer.write(message.body, this.options.accessKey);
+        int sentBytes = body.size();
+        PostUtil.PostResponse response = this.transport.post(this.options.getApiUrl(message.full ? AATracker.AA_SEND_PATH : AATracker.AA_DELTA_PATH), body.getBytes(), sentBytes, this.options.gzipPayloads);
+        if (response.code < 400) {
+            this.deltaEncoder.onAcknowledged(message, sentBytes);
+            AATracker.logDebug("Sent " + (message.full ? "full snapshot" : "delta") + " #" + message.seq + " (" + sentBytes + " bytes, " + this.deltaEncoder.getTotalSentBytes() + "/" + this.deltaEncoder.getTotalFullBytes() + " bytes sent/full in total)");
+        }
+        return response;
+    }
+
+    private void checkLatestWorld() throws IOException {
+        if (!Files.exists(this.latestWorldPath)) {
+            if (!this.sessions.isEmpty()) {
+                new ArrayList<>(this.sessions.values()).forEach(session -> this.endSession(session, "Latest World was null."));
+            }
+            this.lastLatestWorldMTime = 0;
+            return;
+        }
+        long newMTime = Files.getLastModifiedTime(this.latestWorldPath).toMillis();
+        if (newMTime == this.lastLatestWorldMTime) return;
+        this.lastLatestWorldMTime = newMTime;
+
+        // Read and parse
+        JsonObject json;
+        try {
+            // Parsed without a Gson instance, which would take longer to create than the parsing itself
+            JsonElement element = JsonParser.parseString(new String(Files.readAllBytes(this.latestWorldPath)));
+            json = element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (Throwable t) {
+            AATracker.logError("Failed to read latest_world.json: " + ExceptionUtil.toDetailedString(t));
+            this.lastLatestWorldMTime = 0; // SpeedRunIGT may have been mid-write, so read it again on the next tick
+            return;
+        }
+
+        // Check everything is there
+        if (json == null || !Stream.of("version", "mod_version", "category", "mods", "world_path").allMatch(json::has)) {
+            AATracker.logDebug("latest_world.json is missing data! Required data: \"version\", \"mod_version\", \"category\", \"mods\", \"world_path\"");
+            return;
+        }
+
+        Path worldPath = Paths.get(json.get("world_path").getAsString()).toAbsolutePath();
+        Path instancePath = WorldSession.getInstancePath(worldPath);
+        @Nullable WorldSession existing = this.sessions.get(instancePath);
+
+        if (!this.isValidWorld(json, worldPath)) {
+            // The instance moved on to a world that can't be tracked
+            if (existing != null) this.endSession(existing, "Latest World was null.");
+            return;
+        }
+
+        if (existing != null && existing.getWorldPath().equals(worldPath)) {
+            existing.setLatestWorld(json);
+            this.latestSession = existing;
+            return;
+        }
+
+        // New world in this instance
+        if (existing != null) this.endSession(existing, "World path changed.");
+        if (!this.options.trackMultipleInstances) {
+            new ArrayList<>(this.sessions.values()).forEach(session -> this.endSession(session, "World path changed."));
+        }
+        WorldSession session = new WorldSession(this, json, this.nextRunId++);
+        this.sessions.put(instancePath, session);
+        this.latestSession = session;
+        AATracker.logDebug("Tracking " + worldPath + " (" + this.sessions.size() + " world(s) tracked)");
+        @Nullable StateJournal.Entry saved = this.stateJournal.get(worldPath);
+        if (saved != null && session.resume(saved)) {
+            if (this.stateJournal.isLastAcknowledged(worldPath)) this.lastAcknowledgedRunId = session.getRunId();
+            AATracker.logDebug("Resumed " + worldPath + " from before the restart (" + saved.events.size() + " events, " + (saved.runOnPaceMan ? "" : "not ") + "on PaceMan.gg)");
+        }
+        this.updateWatchedDirectories();
+    }
+
+    /**
+     * Checks for random speedrun #x, AA cat, atum settings and the SpeedRunIGT files existing.
+     */
+    private boolean isValidWorld(JsonObject json, Path worldPath) {
+        if (!AATracker.RANDOM_WORLD_PATTERN.matcher(worldPath.getFileName().toString()).matches()) {
+            AATracker.logDebug("World path from latest_world.json does not match random world pattern.");
+            return false;
+        }
+        String category = json.get("category").getAsString();
+        if (!(category.equals("ALL_ADVANCEMENTS") || category.equals("ANY"))) {
+            AATracker.logDebug("Invalid category in latest_world.json.");
+            return false;
+        }
+        if (!this.configCache.areAtumSettingsGood(worldPath)) return false;
+
+        Path recordPath = worldPath.resolve("speedrunigt").resolve("record.json");
+        Path eventsPath = worldPath.resolve("speedrunigt").resolve("events.log");
+        return Files.exists(recordPath) && Files.exists(eventsPath);
+    }
+
+    private void endSession(WorldSession session, String reason) {
+        session.endRun(reason, true);
+        this.sessions.remove(WorldSession.getInstancePath(session.getWorldPath()), session);
+        if (this.latestSession == session) this.latestSession = null;
+        this.updateWatchedDirectories();
+    }
+
+    /**
+     * Stops tracking worlds other than the latest one that haven't changed in a long time, and the least recently
+     * active ones if too many are tracked.
+     */
+    private void removeIdleSessions() {
+        long now = this.currentTimeMillis();
+        for (WorldSession session : new ArrayList<>(this.sessions.values())) {
+            if (session != this.latestSession && now - session.getLastActivity() > SESSION_IDLE_TIMEOUT_MS) {
+                this.endSession(session, "World was idle for too long.");
+            }
+        }
+        while (this.sessions.size() > MAX_SESSIONS) {
+            this.sessions.values().stream()
+                    .filter(session -> session != this.latestSession)
+                    .min(Comparator.comparingLong(WorldSession::getLastActivity))
+                    .ifPresent(session -> this.endSession(session, "Too many worlds tracked."));
+        }
+    }
+
+    private boolean shouldRun() {
+        if (this.options.accessKey.isEmpty()) {
+            return false;
+        }
+        return !this.asPlugin || this.options.enabledForPlugin;
+    }
+
+    boolean hasCorrectRecordsSetting(Path instancePath) {
+        return this.configCache.hasCorrectRecordsSetting(instancePath);
+    }
+
+    public enum PollReason {
+        LIVE("live", 500, "a run is live"),
+        WAITING_FOR_NETHER("waiting_for_nether", 2000, "waiting for the nether to be entered"),
+        SLOWING_DOWN("slowing_down", 2000, "no events for a while"),
+        IDLE("idle", 5000, "no run is being played"),
+        NO_WORLD("no_world", 15000, "no valid world in latest_world.json"),
+        NOT_CONFIGURED("not_configured", 15000, "no access key or the tracker is disabled");
+
+        public final String id;
+        public final long intervalMs;
+        public final String description;
+
+        PollReason(String id, long intervalMs, String description) {
+            this.id = id;
+            this.intervalMs = intervalMs;
+            this.description = description;
+        }
+    }
+
+    /**
+     * Sends requests to PaceMan.gg, {@link PostUtil#sendData(String, byte[], int, boolean)} unless replaced.
+     */
+    public interface Transport {
+        /**
+         * @param body utf-8 encoded json, of which only the first length bytes are sent. The array may be reused once
+         *             this returns.
+         */
+        PostUtil.PostResponse post(String endpointUrl, byte[] body, int length, boolean gzip) throws IOException;
+    }
+}
@@ -0,0 +1,35 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.PostUtil;
+
+import java.io.IOException;
+
+/**
+ * POSTs every payload as json to a url, such as a local bot. The access key is never included.
+ */
+public class WebhookPayloadSink implements PayloadSink {
+    private final String url;
+    private final int timeoutMs;
+
+    /**
+     * @param timeoutMs the connect and read timeout of each request
+     */
+    public WebhookPayloadSink(String url, int timeoutMs) {
+        this.url = url;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public String getName() {
+        return "webhook";
+    }
+
+    @Override
+    public void write(JsonObject payload, byte[] json) throws IOException {
+        PostUtil.PostResponse response = PostUtil.sendData(this.url, json, json.length, false, this.timeoutMs, this.timeoutMs);
+        if (response.code >= 400) {
+            throw new IOException("Webhook responded with " + response.code + ": " + response.message);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.ExceptionUtil;
+import gg.paceman.aatracker.util.PostUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracking state of one world, so that several instances can be tracked at once without losing each other's progress
+ * when the runner switches between them.
+ * <p>
+ * All methods that touch the run state are synchronized, ticks of different sessions can run in parallel.
+ */
+public class WorldSession {
+    private static final long PARTIAL_LINE_SETTLE_MS = 1000; // How long events.log has to be unchanged for a last line without a newline to count
+
+    private final TrackerSession tracker;
+    private final Clock clock;
+    private final Path worldPath;
+    private final long runId;
+    private final EventsLogReader eventsReader = new EventsLogReader();
+    final AtomicBoolean tickQueued = new AtomicBoolean(false);
+
+    private JsonObject latestWorld;
+    private long lastRecordMTime = 0;
+    private long lastEventsMTime = 0;
+    private List<String> events = Collections.emptyList();
+    private final PayloadBuilder payloadBuilder;
+    private byte[] lastSendFingerprint = new byte[0];
+    private volatile @Nullable String worldId = null;
+    // Read by the poll scheduler without holding the session's lock
+    private volatile boolean worldActive = false;
+    private volatile boolean netherEntered = false;
+    private volatile long lastUsefulEventTime = 0;
+    private boolean runOnPaceMan = false;
+    private volatile boolean runKilledOrEnded = false;
+    private volatile long lastActivity;
+    private long lastAcknowledgedQueuedAt = 0; // Results are handled on any tracker thread, so they may come out of order
+
+    WorldSession(TrackerSession tracker, JsonObject latestWorld, long runId) {
+        this.tracker = tracker;
+        this.clock = tracker.getClock();
+        this.payloadBuilder = new PayloadBuilder(tracker.getMetrics());
+        this.lastActivity = this.clock.millis();
+        this.latestWorld = latestWorld;
+        this.worldPath = Paths.get(latestWorld.get("world_path").getAsString()).toAbsolutePath();
+        this.runId = runId;
+    }
+
+    /**
+     * @return the .minecraft directory that the world is in
+     */
+    public static Path getInstancePath(Path worldPath) {
+        return worldPath.toAbsolutePath().getParent().getParent();
+    }
+
+    public Path getWorldPath() {
+        return this.worldPath;
+    }
+
+    public Path getSpeedrunIGTPath() {
+        return this.worldPath.resolve("speedrunigt");
+    }
+
+    /**
+     * @return the id of the run as sent to PaceMan.gg, or null if nothing was built or resumed yet
+     */
+    @Nullable
+    public String getWorldId() {
+        return this.worldId;
+    }
+
+    public long getRunId() {
+        return this.runId;
+    }
+
+    /**
+     * @return the last time the world's files changed, or when the session was created
+     */
+    public long getLastActivity() {
+        return this.lastActivity;
+    }
+
+    /**
+     * @return true if the world is being played and past the nether enter, so its payloads are being sent
+     */
+    public boolean isLive() {
+        return this.worldActive && this.netherEntered && !this.runKilledOrEnded;
+    }
+
+    /**
+     * @return true if the run could still start sending once the nether is entered
+     */
+    public boolean isWaitingForNether() {
+        return !this.netherEntered && !this.runKilledOrEnded;
+    }
+
+    /**
+     * @return the estimated time the last event other than leaving or rejoining the world happened, or 0 if unknown
+     */
+    public long getLastUsefulEventMillis() {
+        return this.lastUsefulEventTime;
+    }
+
+    /**
+     * Replaces the latest_world.json contents when it was rewritten for this same world.
+     */
+    synchronized void setLatestWorld(JsonObject latestWorld) {
+        this.latestWorld = latestWorld;
+    }
+
+    /**
+     * Restores the state saved before a restart of the tracker, so the world's files are only read again once they
+     * change, only the events appended since are read, and an unchanged payload isn't sent again.
+     *
+     * @return false if the saved state doesn't match the world's files, which are then read from the start
+     */
+    synchronized boolean resume(StateJournal.Entry entry) {
+        Path eventsPath = this.getSpeedrunIGTPath().resolve("events.log");
+        try {
+            if (!Files.exists(eventsPath) || !this.eventsReader.resume(eventsPath, entry.eventsOffset, entry.events)) return false;
+        } catch (IOException e) {
+            AATracker.logDebug("Could not resume " + this.worldPath + ": " + e);
+            return false;
+        }
+        this.events = this.eventsReader.getEvents();
+        if (!this.computeWorldId().equals(entry.worldId)) {
+            // Same world name, different run
+            this.eventsReader.reset();
+            this.events = Collections.emptyList();
+            return false;
+        }
+        this.worldId = entry.worldId;
+        this.lastRecordMTime = entry.recordMTime;
+        this.lastEventsMTime = entry.eventsMTime;
+        this.lastSendFingerprint = entry.fingerprint;
+        this.runOnPaceMan = entry.runOnPaceMan;
+        this.worldActive = entry.worldActive;
+        EventIndex index = this.eventsReader.getIndex();
+        this.netherEntered = index.hasNetherEnter();
+        this.lastUsefulEventTime = index.getLastUsefulEventTime(this.lastEventsMTime);
+        return true;
+    }
+
+    synchronized void tick() throws IOException {
+        if (this.runKilledOrEnded) return;
+        TrackerMetrics metrics = this.tracker.getMetrics();
+        // Phase durations are only reported as metrics, so they are measured with the monotonic timer instead of the clock
+        long phaseStart = System.nanoTime();
+
+        Path speedrunigtPath = this.getSpeedrunIGTPath();
+        Path recordPath = speedrunigtPath.resolve("record.json");
+        Path eventsPath = speedrunigtPath.resolve("events.log");
+
+        if (!Files.exists(recordPath) || !Files.exists(eventsPath)) return;
+
+        long newRecordMTime = Files.getLastModifiedTime(recordPath).toMillis();
+        long newEventsMTime = Files.getLastModifiedTime(eventsPath).toMillis();
+
+        boolean recordFileModified = newRecordMTime != this.lastRecordMTime;
+        boolean eventsFileModified = newEventsMTime != this.lastEventsMTime;
+        // A last line without its newline is only taken as an event once events.log has stopped changing
+        boolean partialLineSettled = !eventsFileModified && this.eventsReader.hasPartialLine() && this.clock.millis() - newEventsMTime >= PARTIAL_LINE_SETTLE_MS;
+        metrics.recordPhase(TrackerMetrics.Phase.MTIME_CHECK, System.nanoTime() - phaseStart);
+
+        if (!recordFileModified && !eventsFileModified && !partialLineSettled) {
+            metrics.ticksUnchanged.increment();
+            return;
+        }
+
+        this.lastEventsMTime = newEventsMTime;
+        this.lastRecordMTime = newRecordMTime;
+        this.lastActivity = this.clock.millis();
+
+        if (eventsFileModified || partialLineSettled) {
+            phaseStart = System.nanoTime();
+            if (partialLineSettled) {
+                this.eventsReader.flushPartialLine();
+            } else {
+                this.updateEvents(eventsPath);
+                metrics.eventsBytesRead.add(this.eventsReader.getLastBytesRead());
+            }
+            metrics.recordPhase(TrackerMetrics.Phase.EVENTS_READ, System.nanoTime() - phaseStart);
+            EventIndex index = this.eventsReader.getIndex();
+            this.lastUsefulEventTime = index.getLastUsefulEventTime(this.lastEventsMTime);
+            this.netherEntered = index.hasNetherEnter();
+            if (Math.abs(this.clock.millis() - this.lastUsefulEventTime) <= 20_000) {
+                this.worldActive = true;
+            }
+        }
+
+        if (this.events.isEmpty()) {
+            AATracker.logDebug("Cancelling because no events yet...");
+            return;
+        }
+        if (!this.worldActive) {
+            AATracker.logDebug("Cancelling because the world isn't being actively played...");
+            return;
+        }
+        if (this.eventsReader.getIndex().hasCheatEvents()) {
+            AATracker.logDebug("Ending run because cheaty events are detected!");
+            this.endRun("Run has cheaty events (such as open to lan)", false);
+            return;
+        }
+        if (!this.netherEntered) {
+            AATracker.logDebug("Not sending yet because the nether has not been entered...");
+            return;
+        }
+
+        if (!this.tracker.hasCorrectRecordsSetting(getInstancePath(this.worldPath))) {
+            AATracker.logWarning("Your SpeedRunIGT records setting is incorrect! Please change the 'Make Record' setting to 'Every Run'!");
+            return;
+        }
+
+        RecordData record;
+        phaseStart = System.nanoTime();
+        try {
+            record = RecordParser.parse(recordPath);
+            metrics.recordPhase(TrackerMetrics.Phase.RECORD_PARSE, System.nanoTime() - phaseStart);
+            metrics.recordBytesRead.add(Files.size(recordPath));
+        } catch (Throwable t) {
+            AATracker.logError("Error reading record file: " + ExceptionUtil.toDetailedString(t));
+            this.lastRecordMTime = 0; // SpeedRunIGT may have been mid-write, so read it again on the next tick
+            return;
+        }
+
+        if (record == null) {
+            AATracker.logDebug("Not sending yet because the record is null or empty.");
+            return;
+        }
+
+        if (!"ALL_ADVANCEMENTS".equals(record.category)) {
+            AATracker.log("Run category is not yet ALL_ADVANCEMENTS, won't be sending this run until the category is set or auto switch occurs.");
+            return;
+        }
+
+        if (!(record.timelines != null && record.hasAdvancements)) {
+            AATracker.log("record.json is missing stuff, can't send this run yet (you should never see this message lol).");
+            return;
+        }
+
+        phaseStart = System.nanoTime();
+        this.worldId = this.computeWorldId();
+        JsonObject toSend = this.payloadBuilder.build(record, this.latestWorld, this.events, this.worldId, this.lastRecordMTime);
+        metrics.recordPhase(TrackerMetrics.Phase.PAYLOAD_BUILD, System.nanoTime() - phaseStart);
+
+        phaseStart = System.nanoTime();
+        byte[] fingerprint = this.payloadBuilder.getFingerprint();
+        boolean unchanged = Arrays.equals(this.lastSendFingerprint, fingerprint);
+        metrics.recordPhase(TrackerMetrics.Phase.COMPARE, System.nanoTime() - phaseStart);
+        if (unchanged) {
+            metrics.payloadsUnchanged.increment();
+            AATracker.logDebug("Something updated but no changes found!");
+            return;
+        }
+        this.lastSendFingerprint = fingerprint;
+
+        AATracker.logDebug("Sending payload of " + this.payloadBuilder.getSize() + " bytes with " + this.events.size() + " events.");
+
+        // The payload may still be in the outbox when the state changes again, so the state it was built from goes with it
+        StateJournal.Entry state = new StateJournal.Entry(
+                this.worldPath.toString(), this.worldId, this.clock.millis(), this.lastRecordMTime, this.lastEventsMTime,
+                this.eventsReader.getCompleteOffset(), fingerprint, true, this.worldActive, new ArrayList<>(this.events)
+        );
+        this.tracker.queuePayload(toSend, this.payloadBuilder.toJson(), this.runId, this.payloadBuilder.isMilestone(), state);
+    }
+
+    /**
+     * @param sent the payload's outbox entry, with the state of the world when it was queued
+     */
+    synchronized void handleSendResult(Outbox.Entry sent, @Nullable PostUtil.PostResponse response, @Nullable Throwable error) {
+        if (this.runKilledOrEnded) return;
+        if (error != null) {
+            AATracker.logError("Error during paceman.gg sending:\n" + ExceptionUtil.toDetailedString(error));
+            this.endRun("Error during sending to paceman.gg", false);
+        } else if (response != null && response.code < 400) {
+            this.runOnPaceMan = true;
+            if (sent.createdAt >= this.lastAcknowledgedQueuedAt) {
+                this.lastAcknowledgedQueuedAt = sent.createdAt;
+                // Payloads loaded from the outbox have no state, the journal keeps the last one acknowledged before
+                if (sent.state != null) this.tracker.getStateJournal().putAcknowledged(sent.state);
+            }
+            // From when this payload was queued, as newer payloads may have been queued since
+            this.tracker.getMetrics().recordAckLag(this.clock.millis() - sent.createdAt);
+            AATracker.log("Run updated on PaceMan.gg!");
+        } else if (response != null) {
+            AATracker.logError("Failed to send to PaceMan.gg: " + response.message);
+            this.endRun("Failed to send to PaceMan.gg", false);
+        }
+    }
+
+    synchronized void endRun(String reason, boolean onlyLogIfWasOnPaceman) {
+        // The kill request isn't specific to a world, so don't kill if another instance's run was sent more recently
+        boolean mayBeOnPaceMan = (this.runOnPaceMan && this.tracker.isLastAcknowledgedRun(this.runId)) || (this.worldId != null && this.tracker.hasPendingPayloads(this.worldId));
+        if (mayBeOnPaceMan || !onlyLogIfWasOnPaceman) AATracker.logDebug("Ending run for reason: " + reason);
+        if (mayBeOnPaceMan) {
+            this.tracker.killRun();
+            this.runOnPaceMan = false;
+        }
+        this.runKilledOrEnded = true;
+        this.tracker.getStateJournal().remove(this.worldPath);
+    }
+
+    private void updateEvents(Path eventsLogPath) {
+        try {
+            this.events = this.eventsReader.update(eventsLogPath);
+            AATracker.logDebug("Read " + this.eventsReader.getLastBytesRead() + " new bytes from events.log (" + this.eventsReader.getTotalBytesRead() + " total)");
+        } catch (Exception e) {
+            AATracker.logError("Error while reading events.log: " + ExceptionUtil.toDetailedString(e));
+            this.eventsReader.reset();
+            this.events = Collections.emptyList();
+        }
+    }
+
+    private String computeWorldId() {
+        assert !this.events.isEmpty();
+        return WorldSession.getWorldId(this.worldPath, this.events.get(0));
+    }
+
+    /**
+     * @return the id PaceMan.gg knows the run by, from the world's path and the first line of its events.log
+     */
+    static String getWorldId(Path worldPath, String firstEvent) {
+        String[] parts = firstEvent.split(" ");
+        String worldUniquifier;
+        switch (parts.length) {
+            case 3: // should always be this
+                worldUniquifier = ";" + parts[0] + ";" + parts[1] + ";" + parts[2];
+                break;
+            case 2:
+                AATracker.logWarning("Event log contained only 2 parts for an event line! \"" + firstEvent + "\"");
+                worldUniquifier = ";" + parts[0] + ";" + parts[1];
+                break;
+            default:
+                AATracker.logWarning("Event log contained a strange number of parts for an event line! \"" + firstEvent + "\"");
+                worldUniquifier = ";" + parts[0];
+                break;
+        }
+        return AATracker.sha256Hash(worldPath + worldUniquifier);
+    }
+}
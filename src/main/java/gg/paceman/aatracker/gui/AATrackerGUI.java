@@ -5,6 +5,7 @@ import com.intellij.uiDesigner.core.GridLayoutManager;
 import com.intellij.uiDesigner.core.Spacer;
 import gg.paceman.aatracker.AATracker;
 import gg.paceman.aatracker.AATrackerOptions;
+import gg.paceman.aatracker.TrackerSession;
 import gg.paceman.aatracker.util.PostUtil;
 
 import javax.swing.*;
@@ -24,6 +25,7 @@ public class AATrackerGUI extends JFrame {
     private JPanel mainPanel;
     private JButton saveButton;
     private JButton testButton;
+    private JButton statsButton;
     private JPanel accessKeyPanel;
     private boolean closed = false;
     private final boolean asPlugin;
@@ -73,9 +75,10 @@ public class AATrackerGUI extends JFrame {
         this.saveButton.setEnabled(this.hasChanges());
 
         this.testButton.addActionListener(e -> this.onPressTest());
+        this.statsButton.addActionListener(e -> this.onPressStats());
 
         this.revalidate();
-        this.setMinimumSize(new Dimension(300, asPlugin ? 140 : 120));
+        this.setMinimumSize(new Dimension(300, asPlugin ? 170 : 150));
         this.pack();
         this.setResizable(false);
         this.setVisible(actuallyShow);
@@ -106,6 +109,34 @@ public class AATrackerGUI extends JFrame {
         }, "test-button").start();
     }
 
+    /**
+     * Shows the tracker's metrics, refreshed every second while the window is open.
+     */
+    private void onPressStats() {
+        JTextArea textArea = new JTextArea(24, 60);
+        textArea.setEditable(false);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JDialog dialog = new JDialog(this, "PaceMan AA Tracker: Stats");
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.setContentPane(new JScrollPane(textArea));
+        Runnable update = () -> {
+            TrackerSession session = AATracker.getSession();
+            textArea.setText(session == null ? "The tracker is not running." : session.getMetrics().toSummary());
+        };
+        update.run();
+        Timer timer = new Timer(1000, e -> update.run());
+        timer.start();
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                timer.stop();
+            }
+        });
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
     private void testKey() {
         AATrackerOptions options = AATrackerOptions.getInstance();
         final Consumer<String> onFailure = s -> {
@@ -195,7 +226,7 @@ public class AATrackerGUI extends JFrame {
      */
     private void $$$setupUI$$$() {
         mainPanel = new JPanel();
-        mainPanel.setLayout(new GridLayoutManager(5, 2, new Insets(5, 5, 5, 5), -1, -1));
+        mainPanel.setLayout(new GridLayoutManager(6, 2, new Insets(5, 5, 5, 5), -1, -1));
         final JLabel label1 = new JLabel();
         label1.setText("PaceMan AA Tracker");
         mainPanel.add(label1, new GridConstraints(0, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
@@ -212,13 +243,16 @@ public class AATrackerGUI extends JFrame {
         label2.setText("Access Key:");
         accessKeyPanel.add(label2, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         final Spacer spacer1 = new Spacer();
-        mainPanel.add(spacer1, new GridConstraints(4, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
+        mainPanel.add(spacer1, new GridConstraints(5, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
         saveButton = new JButton();
         saveButton.setText("Save");
         mainPanel.add(saveButton, new GridConstraints(3, 0, 1, 1, GridConstraints.ANCHOR_EAST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         testButton = new JButton();
         testButton.setText("Test");
         mainPanel.add(testButton, new GridConstraints(3, 1, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        statsButton = new JButton();
+        statsButton.setText("Stats");
+        mainPanel.add(statsButton, new GridConstraints(4, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
     }
 
     /**
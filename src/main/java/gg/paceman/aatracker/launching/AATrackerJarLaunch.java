@@ -3,19 +3,31 @@ package gg.paceman.aatracker.launching;
 import com.formdev.flatlaf.FlatDarkLaf;
 import gg.paceman.aatracker.AATracker;
 import gg.paceman.aatracker.AATrackerOptions;
+import gg.paceman.aatracker.HistoryImporter;
+import gg.paceman.aatracker.TrackerSession;
 import gg.paceman.aatracker.gui.AATrackerGUI;
 import gg.paceman.aatracker.util.LockUtil;
 
 import javax.swing.*;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Launches PaceMan as a standalone program.
+ * <p>
+ * With --nogui the tracker runs without a window, with --daemon its log and status are also printed as JSON lines (see
+ * {@link DaemonOutput}), with --status-file path the status is kept in a file as well. With --import saves folders are
+ * imported into a history file instead of running the tracker (see {@link #runImport()}).
  */
 public class AATrackerJarLaunch {
     private static LockUtil.LockStuff lockStuff;
@@ -23,28 +35,168 @@ public class AATrackerJarLaunch {
 
     public static void main(String[] args) throws IOException {
         AATrackerJarLaunch.args = Arrays.asList(args);
-        FlatDarkLaf.setup();
+        if (AATrackerJarLaunch.args.contains("--loadtest")) {
+            AATrackerJarLaunch.runLoadTest();
+            return;
+        }
+        if (AATrackerJarLaunch.args.contains("--import")) {
+            AATrackerJarLaunch.runImport();
+            return;
+        }
+        // Headless launches never touch AWT or Swing, so none of it has to be loaded
+        boolean daemon = AATrackerJarLaunch.args.contains("--daemon");
+        boolean headless = daemon || AATrackerJarLaunch.args.contains("--nogui");
+        DaemonOutput daemonOutput = null;
+        if (daemon) {
+            daemonOutput = new DaemonOutput(AATrackerJarLaunch.getArgValue("--status-file").map(Paths::get).orElse(null));
+            daemonOutput.redirectLogs();
+        }
+        AATracker.headless = headless;
+        if (!headless) {
+            FlatDarkLaf.setup();
+        }
 
         if (!AATrackerJarLaunch.args.contains("--skiplocks")) {
-            AATrackerJarLaunch.checkLock();
+            AATrackerJarLaunch.checkLock(headless);
         }
 
         AATracker.VERSION = Optional.ofNullable(AATrackerJarLaunch.class.getPackage().getImplementationVersion()).orElse("DEV");
-        AATrackerOptions.load().save();
-        if (!AATrackerJarLaunch.args.contains("--nogui")) {
-            AATrackerGUI gui = AATrackerGUI.open(false, null);
-            gui.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        AATrackerOptions options = AATrackerOptions.load();
+        options.save();
+        // Only for this launch, so applied after saving
+        Optional<String> apiUrl = AATrackerJarLaunch.getArgValue("--api-url");
+        if (apiUrl.isPresent()) {
+            try {
+                new URL(apiUrl.get());
+            } catch (MalformedURLException e) {
+                AATracker.logError("Invalid --api-url: " + e.getMessage());
+                System.exit(1);
+            }
+            options.apiBaseUrl = apiUrl.get();
+        }
+        if (AATrackerJarLaunch.args.contains("--dry-run")) {
+            options.dryRun = true;
+        }
+        if (!headless) {
+            AATrackerJarLaunch.openGUI();
         }
         AATracker.log("Running PaceMan AA Tracker v" + AATracker.VERSION);
         AATracker.start(false);
+        if (daemonOutput != null) {
+            daemonOutput.start();
+        }
+        if (AATrackerJarLaunch.args.contains("--startup-probe")) {
+            AATrackerJarLaunch.exitOnFirstTick();
+        }
+    }
+
+    private static void openGUI() {
+        AATrackerGUI gui = AATrackerGUI.open(false, null);
+        gui.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+    }
+
+    /**
+     * Used by StartupBenchmark in the dev source set: prints {"type":"startup_probe","rssKb":...} once the
+     * tracker has checked for a world for the first time, then exits.
+     */
+    private static void exitOnFirstTick() {
+        TrackerSession session = AATracker.getSession();
+        AtomicBoolean probed = new AtomicBoolean(false);
+        Runnable probe = () -> {
+            if (!probed.compareAndSet(false, true)) return;
+            synchronized (System.out) {
+                System.out.println("{\"type\":\"startup_probe\",\"rssKb\":" + AATrackerJarLaunch.getRssKb() + "}");
+            }
+            System.exit(0);
+        };
+        session.setTickListener(probe);
+        // The first tick might have happened before the listener was set
+        if (session.getMetrics().ticks.sum() > 0) probe.run();
+    }
+
+    /**
+     * @return the resident set size of this process in KiB, or -1 if it can't be read (only Linux has /proc)
+     */
+    private static long getRssKb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+        }
+        return -1;
+    }
+
+    /**
+     * Usage: --loadtest [parallel runs] [--loadtest-seconds s] [--loadtest-interval ms] [--loadtest-failure-rate 0-1]
+     * <p>
+     * The load generator is in the dev source set, so this only works when running with it on the classpath. It is
+     * looked up by name, so the jars don't depend on it.
+     */
+    private static void runLoadTest() throws IOException {
+        AATracker.VERSION = Optional.ofNullable(AATrackerJarLaunch.class.getPackage().getImplementationVersion()).orElse("DEV");
+        AATrackerOptions options = AATrackerOptions.load();
+        String[] loadTestArgs = {
+                AATrackerJarLaunch.getArgValue("--loadtest").orElse("8"),
+                AATrackerJarLaunch.getArgValue("--loadtest-seconds").orElse("10"),
+                AATrackerJarLaunch.getArgValue("--loadtest-interval").orElse("0"),
+                AATrackerJarLaunch.getArgValue("--loadtest-failure-rate").orElse("0"),
+                String.valueOf(options.gzipPayloads)
+        };
+        try {
+            Class.forName("gg.paceman.aatracker.dev.LoadGenerator").getMethod("main", String[].class).invoke(null, (Object) loadTestArgs);
+        } catch (ClassNotFoundException e) {
+            AATracker.logError("--loadtest is only available when running with the dev source set on the classpath.");
+            System.exit(1);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Usage: --import [saves folder]... [--import-output path] [--import-threads n]
+     * <p>
+     * Without a saves folder, the one in the current directory is imported.
+     */
+    private static void runImport() throws IOException {
+        List<Path> savesPaths = new ArrayList<>();
+        for (int i = AATrackerJarLaunch.args.indexOf("--import") + 1; i < AATrackerJarLaunch.args.size() && !AATrackerJarLaunch.args.get(i).startsWith("--"); i++) {
+            savesPaths.add(Paths.get(AATrackerJarLaunch.args.get(i)));
+        }
+        if (savesPaths.isEmpty()) savesPaths.add(Paths.get(""));
+        HistoryImporter.run(
+                savesPaths,
+                AATrackerJarLaunch.getArgValue("--import-output").map(Paths::get).orElse(AATrackerOptions.getPaceManAADir().resolve("history.bin")),
+                Integer.parseInt(AATrackerJarLaunch.getArgValue("--import-threads").orElse(String.valueOf(Runtime.getRuntime().availableProcessors())))
+        );
+    }
+
+    /**
+     * @return the argument after the given one, if there is one and it isn't another option
+     */
+    private static Optional<String> getArgValue(String name) {
+        int index = AATrackerJarLaunch.args.indexOf(name);
+        if (index < 0 || index + 1 >= AATrackerJarLaunch.args.size() || AATrackerJarLaunch.args.get(index + 1).startsWith("--")) {
+            return Optional.empty();
+        }
+        return Optional.of(AATrackerJarLaunch.args.get(index + 1));
     }
 
-    private static void checkLock() {
+    private static void checkLock(boolean headless) {
         AATrackerOptions.ensurePaceManAADir();
         Path lockPath = AATrackerOptions.getPaceManAADir().resolve("LOCK");
         if (LockUtil.isLocked(lockPath)) {
-            if (AATrackerJarLaunch.args.contains("--nogui")) {
-                System.out.println("PaceMan AA Tracker is already opened, you cannot run another instance. (Not recommended: use --skiplocks to bypass)");
+            if (headless) {
+                AATracker.logError("PaceMan AA Tracker is already opened, you cannot run another instance. (Not recommended: use --skiplocks to bypass)");
                 System.exit(0);
             } else {
                 AATrackerJarLaunch.showMultiTrackerWarning();
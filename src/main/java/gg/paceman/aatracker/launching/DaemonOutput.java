@@ -0,0 +1,156 @@
+package gg.paceman.aatracker.launching;
+
+import com.google.gson.stream.JsonWriter;
+import gg.paceman.aatracker.AATracker;
+import gg.paceman.aatracker.TrackerMetrics;
+import gg.paceman.aatracker.TrackerSession;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Machine readable output of the tracker when launched with --daemon: every log message and every change of status is
+ * printed as a JSON line, and the latest status can also be kept in a file that is replaced every second.
+ * <p>
+ * Lines look like {"type":"log","time":...,"level":"info","message":"..."} and
+ * {"type":"status","time":...,"running":true,"pollReason":"live",...}.
+ */
+public class DaemonOutput {
+    private static final long STATUS_INTERVAL_MS = 1000;
+
+    private final @Nullable Path statusFile;
+    private String lastStatus = "";
+    private @Nullable ScheduledExecutorService executor = null;
+
+    /**
+     * @param statusFile where to keep the latest status, or null to only print it
+     */
+    public DaemonOutput(@Nullable Path statusFile) {
+        this.statusFile = statusFile;
+    }
+
+    /**
+     * Prints the tracker's log messages as JSON lines from now on.
+     */
+    public void redirectLogs() {
+        AATracker.logConsumer = message -> this.printLog("info", message);
+        AATracker.debugConsumer = message -> this.printLog("debug", message);
+        AATracker.warningConsumer = message -> this.printLog("warning", message);
+        AATracker.errorConsumer = message -> this.printLog("error", message);
+    }
+
+    /**
+     * Starts reporting the status of the tracker started by {@link AATracker#start(boolean)}, until {@link #stop()} or
+     * the JVM shutting down.
+     */
+    public synchronized void start() {
+        if (this.executor != null) return;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "paceman-aa-status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleAtFixedRate(this::reportStatus, 0, STATUS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "paceman-aa-status-stop"));
+    }
+
+    /**
+     * Stops the status reports, after reporting the status one last time so the status file isn't left a second old.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STATUS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+        }
+        this.reportStatus();
+    }
+
+    private void printLog(String level, String message) {
+        String line = DaemonOutput.toJson(writer -> {
+            writer.name("type").value("log");
+            writer.name("time").value(System.currentTimeMillis());
+            writer.name("level").value(level);
+            writer.name("message").value(message);
+        });
+        synchronized (System.out) {
+            System.out.println(line);
+        }
+    }
+
+    private synchronized void reportStatus() {
+        try {
+            // Compared without the time, so a line is only printed when something changed
+            String status = DaemonOutput.toJson(DaemonOutput::writeStatus);
+            String line = DaemonOutput.toJson(writer -> {
+                writer.name("type").value("status");
+                writer.name("time").value(System.currentTimeMillis());
+                DaemonOutput.writeStatus(writer);
+            });
+            if (!status.equals(this.lastStatus)) {
+                this.lastStatus = status;
+                synchronized (System.out) {
+                    System.out.println(line);
+                }
+            }
+            if (this.statusFile != null) {
+                Path tempPath = this.statusFile.resolveSibling(this.statusFile.getFileName() + ".tmp");
+                Files.write(tempPath, line.getBytes(StandardCharsets.UTF_8));
+                Files.move(tempPath, this.statusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (Throwable t) {
+            // Thrown out of a scheduled task would stop any further reports
+            AATracker.logError("Failed to report status: " + t);
+        }
+    }
+
+    private static void writeStatus(JsonWriter writer) throws IOException {
+        TrackerSession session = AATracker.getSession();
+        writer.name("running").value(session != null && session.isRunning());
+        if (session == null) return;
+        TrackerMetrics metrics = session.getMetrics();
+        writer.name("pollReason").value(session.getPollReason().id);
+        writer.name("trackedWorlds").value(metrics.getGauge("tracked_worlds"));
+        writer.name("outboxSize").value(metrics.getGauge("outbox_size"));
+        writer.name("sends").value(metrics.sends.sum());
+        writer.name("sendFailures").value(metrics.sendFailures.sum());
+        writer.name("kills").value(metrics.kills.sum());
+    }
+
+    /**
+     * Writes an object with a {@link JsonWriter}, so that no Gson instance is needed.
+     */
+    private static String toJson(Fields fields) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writer.beginObject();
+            fields.write(writer);
+            writer.endObject();
+            writer.flush();
+        } catch (IOException e) {
+            // Only written to a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private interface Fields {
+        void write(JsonWriter writer) throws IOException;
+    }
+}
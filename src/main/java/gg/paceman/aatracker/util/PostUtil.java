@@ -4,55 +4,128 @@ import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 public final class PostUtil {
     private static final int MIN_DENY_CODE = 400;
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024; // More than PaceMan.gg ever responds with
+
+    private static volatile int connectTimeoutMs = 5000;
+    private static volatile int readTimeoutMs = 10000;
 
     private PostUtil() {
     }
 
+    /**
+     * Sets the deadlines used by every request from now on, 0 means no timeout.
+     */
+    public static void setTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+        PostUtil.connectTimeoutMs = connectTimeoutMs;
+        PostUtil.readTimeoutMs = readTimeoutMs;
+    }
+
     public static PostResponse sendData(String endpointUrl, String jsonData) throws IOException {
-        // Create URL object
-        URL url = new URL(endpointUrl);
-        HttpURLConnection connection = null;
-        try {
-            // Open connection
-            connection = (HttpURLConnection) url.openConnection();
+        return PostUtil.sendData(endpointUrl, jsonData, false);
+    }
+
+    /**
+     * @see #sendData(String, byte[], int, boolean)
+     */
+    public static PostResponse sendData(String endpointUrl, String jsonData, boolean gzip) throws IOException {
+        byte[] body = jsonData.getBytes(StandardCharsets.UTF_8);
+        return PostUtil.sendData(endpointUrl, body, body.length, gzip);
+    }
+
+    /**
+     * Sends json data with a POST request. The connection is left open afterwards so the next request to the same
+     * host can reuse it (keep-alive is handled by {@link HttpURLConnection} as long as the response is fully read).
+     * <p>
+     * Uncompressed bodies are streamed to the connection as they are, without being copied into another buffer.
+     *
+     * @param body the utf-8 encoded json, of which only the first length bytes are sent
+     * @param gzip whether to gzip the request body, the server must accept "Content-Encoding: gzip"
+     */
+    public static PostResponse sendData(String endpointUrl, byte[] body, int length, boolean gzip) throws IOException {
+        return PostUtil.sendData(endpointUrl, body, length, gzip, connectTimeoutMs, readTimeoutMs);
+    }
+
+    /**
+     * Sends json data with its own deadlines instead of the ones set by {@link #setTimeouts(int, int)}.
+     *
+     * @see #sendData(String, byte[], int, boolean)
+     */
+    public static PostResponse sendData(String endpointUrl, byte[] body, int length, boolean gzip, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed)) {
+                gzipOut.write(body, 0, length);
+            }
+            body = compressed.toByteArray();
+            length = body.length;
+        }
 
-            // Set the necessary properties
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setDoOutput(true);
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpointUrl).openConnection();
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (gzip) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        connection.setDoOutput(true);
+        // Otherwise the whole body is buffered again to work out its length
+        connection.setFixedLengthStreamingMode(length);
 
+        try {
             // Write JSON data to the connection output stream
             try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
+                os.write(body, 0, length);
             }
             int responseCode = connection.getResponseCode();
-            String message = responseCode >= MIN_DENY_CODE ? readStream(connection.getErrorStream()) : connection.getResponseMessage();
-
-
-            // Return the response code
-            return new PostResponse(responseCode, message);
-        } finally {
-            // Close the connection
-            if (connection != null) {
-                connection.disconnect();
+            String message;
+            // The body has to be read to the end for the connection to be reused
+            if (responseCode >= MIN_DENY_CODE) {
+                message = readStream(connection.getErrorStream(), connection);
+            } else {
+                message = connection.getResponseMessage();
+                readStream(connection.getInputStream(), connection);
             }
+            return new PostResponse(responseCode, message);
+        } catch (IOException e) {
+            // Don't let a broken connection be reused
+            connection.disconnect();
+            throw e;
         }
     }
 
-    private static String readStream(InputStream inputStream) {
-        return new BufferedReader(new InputStreamReader(inputStream)).lines().collect(Collectors.joining("\n"));
+    /**
+     * Reads a response body to the end, so the connection can be kept alive. A body larger than expected is not read
+     * any further and the connection is closed instead.
+     *
+     * @return the body as text
+     */
+    private static String readStream(InputStream inputStream, HttpURLConnection connection) throws IOException {
+        if (inputStream == null) return "";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = inputStream) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (out.size() + read > MAX_RESPONSE_BYTES) {
+                    connection.disconnect();
+                    break;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).trim();
     }
 
     public static class PostResponse {
         public final int code;
         public final String message;
 
-        private PostResponse(int code, String message) {
+        public PostResponse(int code, String message) {
             this.code = code;
             this.message = message;
         }
@@ -0,0 +1,107 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdvancementRegistryTest {
+    @Test
+    public void sectionsMatchStringSortingOverTheExampleRun() throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        for (long rta : ExampleData.getProgressTimes(record)) {
+            AdvancementRegistryTest.assertSameSections(ExampleData.recordAt(record, rta));
+        }
+    }
+
+    @Test
+    public void sectionsMatchStringSortingWithUnknownIdentifiers() throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        JsonObject advancements = record.getAsJsonObject("advancements");
+        // Sorting before, between and after the known identifiers, some without the minecraft: prefix
+        for (String name : new String[]{"a:first", "minecraft:adventure/aaa_registry_test", "minecraft:nether/mid_registry_test", "zzz:last", "story/no_prefix"}) {
+            JsonObject advancement = advancements.getAsJsonObject("minecraft:story/root").deepCopy();
+            advancements.add(name, advancement);
+        }
+        JsonObject biomes = advancements.getAsJsonObject("minecraft:adventure/adventuring_time").getAsJsonObject("criteria");
+        JsonObject criterion = biomes.getAsJsonObject("minecraft:desert");
+        biomes.add("aaa_registry_test", criterion.deepCopy());
+        biomes.add("minecraft:mmm_registry_test", criterion.deepCopy());
+        biomes.add("zzz:registry_test", criterion.deepCopy());
+        AdvancementRegistryTest.assertSameSections(record);
+    }
+
+    @Test
+    public void displayNamesAreInterned() {
+        AdvancementRegistry.IdTable advancements = AdvancementRegistry.ADVANCEMENTS;
+        int id = advancements.idOf("minecraft:story/root");
+        assertSame("story/root".intern(), advancements.getDisplayName(id));
+        assertSame(advancements.getDisplayName(id), advancements.getDisplayName(advancements.idOf(new String("minecraft:story/root"))));
+    }
+
+    @Test
+    public void registersANewIdentifierOnceAndKeepsTheOrder() throws Exception {
+        AdvancementRegistry.IdTable advancements = AdvancementRegistry.ADVANCEMENTS;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String name = "minecraft:story/concurrent_registry_test_" + (i % 4);
+                tasks.add(() -> advancements.idOf(name));
+            }
+            Set<Integer> ids = new HashSet<>();
+            for (Future<Integer> id : executor.invokeAll(tasks)) {
+                ids.add(id.get());
+            }
+            assertEquals(4, ids.size());
+        } finally {
+            executor.shutdown();
+        }
+
+        int[] sortedIds = advancements.getSortedIds();
+        assertEquals(advancements.size(), sortedIds.length);
+        for (int i = 1; i < sortedIds.length; i++) {
+            assertTrue(advancements.getName(sortedIds[i - 1]).compareTo(advancements.getName(sortedIds[i])) < 0);
+        }
+    }
+
+    @Test
+    public void leavesUnknownIdentifiersOutOnceTheTableIsFull() {
+        AdvancementRegistry.IdTable table = new AdvancementRegistry.IdTable(name -> name, 2, "b", "d");
+        assertEquals(2, table.idOf("c"));
+        assertEquals(3, table.idOf("a"));
+        assertEquals(AdvancementRegistry.IdTable.NO_ID, table.idOf("e"));
+        // Known and already registered identifiers keep their ids
+        assertEquals(0, table.idOf("b"));
+        assertEquals(3, table.idOf("a"));
+        assertEquals(4, table.size());
+        assertArrayEquals(new int[]{3, 0, 2, 1}, table.getSortedIds());
+    }
+
+    private static void assertSameSections(JsonObject record) throws IOException {
+        JsonObject legacy = LegacyPayload.build(record, ExampleData.readLatestWorld(), new ArrayList<>(), ExampleData.WORLD_ID, 0);
+        RecordData data = ExampleData.parse(record);
+        assertArrayEquals(AdvancementRegistryTest.toBytes(legacy.get("completed")), AdvancementRegistryTest.toBytes(PayloadBuilder.getCompleted(data)));
+        assertArrayEquals(AdvancementRegistryTest.toBytes(legacy.get("criterias")), AdvancementRegistryTest.toBytes(PayloadBuilder.getCriterias(data)));
+        assertArrayEquals(AdvancementRegistryTest.toBytes(legacy.get("items")), AdvancementRegistryTest.toBytes(PayloadBuilder.getItems(data)));
+    }
+
+    private static byte[] toBytes(JsonElement element) {
+        return element.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigValidationCacheTest {
+    @Test
+    public void readsAFileAgainOnlyOnceItChanges() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            ConfigValidationCache cache = new ConfigValidationCache(instance.homePath);
+            assertTrue(cache.areAtumSettingsGood(instance.worldPath));
+            assertTrue(cache.areAtumSettingsGood(instance.worldPath));
+            // The old and the new Atum config are both checked each time
+            assertEquals(2, cache.getMisses());
+            assertEquals(2, cache.getHits());
+
+            Path atumPath = ConfigValidationCacheTest.getAtumPath(instance);
+            Files.write(atumPath, "{\"hasLegalSettings\":true,\"seed\":\"1\",\"difficulty\":\"EASY\"}".getBytes(StandardCharsets.UTF_8));
+            assertFalse(cache.areAtumSettingsGood(instance.worldPath));
+            assertEquals(3, cache.getMisses());
+        } finally {
+            instance.delete();
+        }
+    }
+
+    @Test
+    public void trustsAWatchedDirectoryUntilItIsInvalidated() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            ConfigValidationCache cache = new ConfigValidationCache(instance.homePath);
+            cache.setWatchedDirectoryCheck(directory -> true);
+            Path atumPath = ConfigValidationCacheTest.getAtumPath(instance);
+            assertEquals(ConfigValidationCache.Verdict.GOOD, cache.get(atumPath, path -> ConfigValidationCache.Verdict.GOOD));
+            assertEquals(ConfigValidationCache.Verdict.GOOD, cache.get(atumPath, path -> ConfigValidationCache.Verdict.BAD));
+
+            cache.invalidate(atumPath.getParent());
+            assertEquals(ConfigValidationCache.Verdict.BAD, cache.get(atumPath, path -> ConfigValidationCache.Verdict.BAD));
+        } finally {
+            instance.delete();
+        }
+    }
+
+    @Test
+    public void dropsAVerdictMadeWhileInvalidated() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            ConfigValidationCache cache = new ConfigValidationCache(instance.homePath);
+            cache.setWatchedDirectoryCheck(directory -> true);
+            Path atumPath = ConfigValidationCacheTest.getAtumPath(instance);
+            // The file changes after it was read but before the verdict is kept
+            assertEquals(ConfigValidationCache.Verdict.GOOD, cache.get(atumPath, path -> {
+                cache.invalidate(path.getParent());
+                return ConfigValidationCache.Verdict.GOOD;
+            }));
+            assertEquals(ConfigValidationCache.Verdict.BAD, cache.get(atumPath, path -> ConfigValidationCache.Verdict.BAD));
+            assertEquals(ConfigValidationCache.Verdict.BAD, cache.get(atumPath, path -> ConfigValidationCache.Verdict.GOOD));
+            assertEquals(2, cache.getMisses());
+        } finally {
+            instance.delete();
+        }
+    }
+
+    private static Path getAtumPath(TestInstance instance) {
+        return instance.worldPath.getParent().resolveSibling("config").resolve("mcsr").resolve("atum.json");
+    }
+}
@@ -0,0 +1,165 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaEncoderTest {
+    private final PayloadSerializer serializer = new PayloadSerializer();
+
+    @Test
+    public void receiverRebuildsEveryPayloadOfTheExampleRun() throws IOException {
+        DeltaEncoder encoder = new DeltaEncoder();
+        DeltaReceiver receiver = new DeltaReceiver();
+        List<JsonObject> payloads = DeltaEncoderTest.examplePayloads(ExampleData.WORLD_ID);
+        for (int i = 0; i < payloads.size(); i++) {
+            JsonObject payload = payloads.get(i);
+            DeltaEncoder.Message message = encoder.encode(payload);
+            assertEquals(i == 0, message.full);
+            assertTrue(this.deliver(encoder, receiver, message));
+            assertArrayEquals(DeltaEncoderTest.toBytes(payload), DeltaEncoderTest.toBytes(receiver.getSnapshot(ExampleData.WORLD_ID)));
+        }
+        assertTrue(encoder.getTotalSentBytes() < encoder.getTotalFullBytes() / 4);
+    }
+
+    @Test
+    public void resyncsWithAFullSnapshotAfterAGap() throws IOException {
+        DeltaEncoder encoder = new DeltaEncoder();
+        DeltaReceiver receiver = new DeltaReceiver();
+        List<JsonObject> payloads = DeltaEncoderTest.examplePayloads(ExampleData.WORLD_ID);
+        assertTrue(this.deliver(encoder, receiver, encoder.encode(payloads.get(0))));
+        // Accepted by a receiver that lost it again, so the next delta is based on a message this receiver never saw
+        encoder.onAcknowledged(encoder.encode(payloads.get(1)), 0);
+
+        DeltaEncoder.Message delta = encoder.encode(payloads.get(2));
+        assertFalse(delta.full);
+        assertFalse(this.deliver(encoder, receiver, delta));
+
+        encoder.reset(ExampleData.WORLD_ID);
+        DeltaEncoder.Message snapshot = encoder.encode(payloads.get(2));
+        assertTrue(snapshot.full);
+        assertTrue(this.deliver(encoder, receiver, snapshot));
+        assertTrue(this.deliver(encoder, receiver, encoder.encode(payloads.get(3))));
+        assertArrayEquals(DeltaEncoderTest.toBytes(payloads.get(3)), DeltaEncoderTest.toBytes(receiver.getSnapshot(ExampleData.WORLD_ID)));
+    }
+
+    @Test
+    public void keepsInterleavedWorldsApart() throws IOException {
+        String otherWorldId = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        DeltaEncoder encoder = new DeltaEncoder();
+        DeltaReceiver receiver = new DeltaReceiver();
+        List<JsonObject> payloads = DeltaEncoderTest.examplePayloads(ExampleData.WORLD_ID);
+        List<JsonObject> otherPayloads = DeltaEncoderTest.examplePayloads(otherWorldId);
+        for (int i = 0; i < payloads.size(); i++) {
+            assertTrue(this.deliver(encoder, receiver, encoder.encode(payloads.get(i))));
+            // The other world is a few steps behind
+            if (i >= 3) assertTrue(this.deliver(encoder, receiver, encoder.encode(otherPayloads.get(i - 3))));
+        }
+        assertArrayEquals(DeltaEncoderTest.toBytes(payloads.get(payloads.size() - 1)), DeltaEncoderTest.toBytes(receiver.getSnapshot(ExampleData.WORLD_ID)));
+        assertArrayEquals(DeltaEncoderTest.toBytes(otherPayloads.get(payloads.size() - 4)), DeltaEncoderTest.toBytes(receiver.getSnapshot(otherWorldId)));
+    }
+
+    @Test
+    public void resyncsAfterA409FromAReceiverThatLostItsState() throws IOException {
+        DeltaEncoder encoder = new DeltaEncoder();
+        DeltaReceiver receiver = new DeltaReceiver();
+        List<JsonObject> payloads = DeltaEncoderTest.examplePayloads(ExampleData.WORLD_ID);
+        assertEquals(200, this.send(encoder, receiver, payloads.get(0)));
+        assertEquals(200, this.send(encoder, receiver, payloads.get(1)));
+
+        // As if PaceMan.gg restarted, so it has no base for the next delta
+        receiver = new DeltaReceiver();
+        DeltaEncoder.Message delta = encoder.encode(payloads.get(2));
+        assertFalse(delta.full);
+        assertEquals(409, this.post(encoder, receiver, delta));
+        assertEquals(200, this.send(encoder, receiver, payloads.get(2)));
+        assertArrayEquals(DeltaEncoderTest.toBytes(payloads.get(2)), DeltaEncoderTest.toBytes(receiver.getSnapshot(ExampleData.WORLD_ID)));
+
+        // Deltas are sent again after the resync
+        DeltaEncoder.Message next = encoder.encode(payloads.get(3));
+        assertFalse(next.full);
+        assertEquals(200, this.post(encoder, receiver, next));
+        assertArrayEquals(DeltaEncoderTest.toBytes(payloads.get(3)), DeltaEncoderTest.toBytes(receiver.getSnapshot(ExampleData.WORLD_ID)));
+    }
+
+    @Test
+    public void basesDeltasOnTheLastAcknowledgedPayloadAfterAFailedSend() throws IOException {
+        DeltaEncoder encoder = new DeltaEncoder();
+        DeltaReceiver receiver = new DeltaReceiver();
+        List<JsonObject> payloads = DeltaEncoderTest.examplePayloads(ExampleData.WORLD_ID);
+        assertEquals(200, this.send(encoder, receiver, payloads.get(0)));
+        // Never reached the receiver and was not acknowledged
+        encoder.encode(payloads.get(1));
+
+        DeltaEncoder.Message delta = encoder.encode(payloads.get(2));
+        assertFalse(delta.full);
+        assertEquals(200, this.post(encoder, receiver, delta));
+        assertArrayEquals(DeltaEncoderTest.toBytes(payloads.get(2)), DeltaEncoderTest.toBytes(receiver.getSnapshot(ExampleData.WORLD_ID)));
+    }
+
+    /**
+     * Sends a payload the way the tracker does: a delta if possible, and a full snapshot if the receiver answers with
+     * a 409 for it.
+     *
+     * @return the response code of the last message
+     */
+    private int send(DeltaEncoder encoder, DeltaReceiver receiver, JsonObject payload) {
+        DeltaEncoder.Message message = encoder.encode(payload);
+        int code = this.post(encoder, receiver, message);
+        if (code == 409 && !message.full) {
+            encoder.reset(message.worldId);
+            code = this.post(encoder, receiver, encoder.encode(payload));
+        }
+        return code;
+    }
+
+    /**
+     * @return the response code a receiving end would give, 409 if it can't apply the message
+     */
+    private int post(DeltaEncoder encoder, DeltaReceiver receiver, DeltaEncoder.Message message) {
+        return this.deliver(encoder, receiver, message) ? 200 : 409;
+    }
+
+    /**
+     * Sends a message through its serialized form with an access key, as the sender would, and acknowledges it if the
+     * receiver applied it.
+     */
+    private boolean deliver(DeltaEncoder encoder, DeltaReceiver receiver, DeltaEncoder.Message message) {
+        PayloadSerializer.Buffer buffer = this.serializer.write(message.body, "key");
+        String body = new String(buffer.getBytes(), 0, buffer.size(), StandardCharsets.UTF_8);
+        if (!receiver.receive(JsonParser.parseString(body).getAsJsonObject())) return false;
+        encoder.onAcknowledged(message, buffer.size());
+        return true;
+    }
+
+    /**
+     * @return the payloads of the example run as a world's builder makes them, with events appended as they happen
+     */
+    private static List<JsonObject> examplePayloads(String worldId) throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        PayloadBuilder builder = new PayloadBuilder(new TrackerMetrics());
+        List<String> events = new ArrayList<>();
+        List<JsonObject> payloads = new ArrayList<>();
+        for (long rta : ExampleData.getProgressTimes(record)) {
+            List<String> eventsAt = ExampleData.eventsAt(record, rta);
+            events.addAll(eventsAt.subList(events.size(), eventsAt.size()));
+            payloads.add(builder.build(ExampleData.parse(ExampleData.recordAt(record, rta)), latestWorld, events, worldId, rta));
+        }
+        return payloads;
+    }
+
+    private static byte[] toBytes(JsonObject payload) {
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,60 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventIndexTest {
+    @Test
+    public void keepsTheFirstNetherEnter() {
+        EventIndex index = new EventIndex();
+        index.add("rsg.obtain_item 1000 900");
+        assertFalse(index.hasNetherEnter());
+        assertEquals(EventIndex.Event.UNKNOWN_TIME, index.getNetherEnterIgt());
+
+        index.add("rsg.enter_nether 5000 4500");
+        index.add("rsg.enter_nether 9000 8500");
+        assertTrue(index.hasNetherEnter());
+        assertEquals(4500, index.getNetherEnterIgt());
+    }
+
+    @Test
+    public void detectsCheatEvents() {
+        EventIndex index = new EventIndex();
+        index.add("rsg.enter_nether 5000 4500");
+        assertFalse(index.hasCheatEvents());
+        index.add("common.multiplayer 6000 5500");
+        assertTrue(index.hasCheatEvents());
+    }
+
+    @Test
+    public void estimatesTheLastUsefulEventFromTheLastEvent() {
+        EventIndex index = new EventIndex();
+        assertEquals(0, index.getLastUsefulEventTime(100_000));
+        index.add("rsg.enter_nether 5000 4500");
+        index.add("common.leave_world 8000 7000");
+        index.add("common.rejoin_world 60000 7000");
+        // events.log was written at the rejoin, which was 55 seconds after the nether enter
+        assertEquals(45_000, index.getLastUsefulEventTime(100_000));
+
+        index.add("rsg.obtain_item bad 7100");
+        assertEquals(0, index.getLastUsefulEventTime(100_000));
+    }
+
+    @Test
+    public void forgetsEverythingOnClear() {
+        EventIndex index = new EventIndex();
+        index.add("rsg.enter_nether 5000 4500");
+        index.add("common.view_seed 6000 5500");
+        index.clear();
+        assertFalse(index.hasNetherEnter());
+        assertFalse(index.hasCheatEvents());
+        assertEquals(EventIndex.Event.UNKNOWN_TIME, index.getNetherEnterIgt());
+        assertEquals(0, index.getLastUsefulEventTime(100_000));
+
+        index.add("rsg.enter_nether 9000 8500");
+        assertEquals(8500, index.getNetherEnterIgt());
+    }
+}
@@ -0,0 +1,120 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventsLogReaderTest {
+    @Test
+    public void onlyReadsAppendedBytes() throws IOException {
+        Path path = EventsLogReaderTest.write("rsg.enter_nether 10 10\n");
+        EventsLogReader reader = new EventsLogReader();
+        assertEquals(Collections.singletonList("rsg.enter_nether 10 10"), reader.update(path));
+
+        EventsLogReaderTest.append(path, "\n  common.leave_world 20 20  \n");
+        assertEquals(Arrays.asList("rsg.enter_nether 10 10", "common.leave_world 20 20"), reader.update(path));
+        assertEquals(30, reader.getLastBytesRead());
+        assertEquals(53, reader.getTotalBytesRead());
+        assertEquals(Files.size(path), reader.getCompleteOffset());
+        assertTrue(reader.getIndex().hasNetherEnter());
+
+        reader.update(path);
+        assertEquals(0, reader.getLastBytesRead());
+    }
+
+    @Test
+    public void holdsAPartialLineUntilItsNewline() throws IOException {
+        Path path = EventsLogReaderTest.write("rsg.enter_nether 10 10\nrsg.obtain");
+        EventsLogReader reader = new EventsLogReader();
+        assertEquals(Collections.singletonList("rsg.enter_nether 10 10"), reader.update(path));
+        assertTrue(reader.hasPartialLine());
+        assertEquals(23, reader.getCompleteOffset());
+
+        EventsLogReaderTest.append(path, "_item 20 20\n");
+        assertEquals(Arrays.asList("rsg.enter_nether 10 10", "rsg.obtain_item 20 20"), reader.update(path));
+        assertFalse(reader.hasPartialLine());
+        assertEquals(Files.size(path), reader.getCompleteOffset());
+    }
+
+    @Test
+    public void readsAgainIfAFlushedLineGoesOn() throws IOException {
+        Path path = EventsLogReaderTest.write("rsg.enter_nether 10 10\nrsg.obtain");
+        EventsLogReader reader = new EventsLogReader();
+        reader.update(path);
+        assertTrue(reader.flushPartialLine());
+        assertFalse(reader.flushPartialLine());
+        assertEquals(Arrays.asList("rsg.enter_nether 10 10", "rsg.obtain"), reader.getEvents());
+
+        EventsLogReaderTest.append(path, "_item 20 20\n");
+        assertEquals(Arrays.asList("rsg.enter_nether 10 10", "rsg.obtain_item 20 20"), reader.update(path));
+    }
+
+    @Test
+    public void keepsAFlushedLineThatWasWhole() throws IOException {
+        Path path = EventsLogReaderTest.write("rsg.enter_nether 10 10\nrsg.obtain_item 20 20");
+        EventsLogReader reader = new EventsLogReader();
+        reader.update(path);
+        reader.flushPartialLine();
+
+        EventsLogReaderTest.append(path, "\ncommon.leave_world 30 30\n");
+        assertEquals(Arrays.asList("rsg.enter_nether 10 10", "rsg.obtain_item 20 20", "common.leave_world 30 30"), reader.update(path));
+        // Only the new bytes were read, not the whole file
+        assertEquals(26, reader.getLastBytesRead());
+    }
+
+    @Test
+    public void readsATruncatedFileFromTheStart() throws IOException {
+        Path path = EventsLogReaderTest.write("rsg.enter_nether 10 10\ncommon.leave_world 20 20\n");
+        EventsLogReader reader = new EventsLogReader();
+        reader.update(path);
+
+        Files.write(path, "common.rejoin_world 5 5\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonList("common.rejoin_world 5 5"), reader.update(path));
+        assertFalse(reader.getIndex().hasNetherEnter());
+    }
+
+    @Test
+    public void resumesAfterTheGivenEvents() throws IOException {
+        Path path = EventsLogReaderTest.write("rsg.enter_nether 10 10\ncommon.leave_world 20 20\n");
+        EventsLogReader reader = new EventsLogReader();
+        List<String> events = Arrays.asList("rsg.enter_nether 10 10", "common.leave_world 20 20");
+        assertTrue(reader.resume(path, Files.size(path), events));
+
+        EventsLogReaderTest.append(path, "common.rejoin_world 30 30\n");
+        assertEquals(Arrays.asList("rsg.enter_nether 10 10", "common.leave_world 20 20", "common.rejoin_world 30 30"), reader.update(path));
+        assertEquals(26, reader.getLastBytesRead());
+        assertTrue(reader.getIndex().hasNetherEnter());
+    }
+
+    @Test
+    public void doesNotResumeADifferentFile() throws IOException {
+        Path path = EventsLogReaderTest.write("common.multiplayer 10 10\n");
+        EventsLogReader reader = new EventsLogReader();
+        assertFalse(reader.resume(path, Files.size(path), Collections.singletonList("rsg.enter_nether 10 10")));
+        // Longer than the file is now
+        assertFalse(reader.resume(path, Files.size(path) + 1, Collections.singletonList("common.multiplayer 10 10")));
+        assertEquals(Collections.singletonList("common.multiplayer 10 10"), reader.update(path));
+    }
+
+    private static Path write(String contents) throws IOException {
+        Path path = Files.createTempFile("events", ".log");
+        path.toFile().deleteOnExit();
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static void append(Path path, String contents) throws IOException {
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
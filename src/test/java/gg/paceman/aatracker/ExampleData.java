@@ -0,0 +1,181 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Test inputs made from the files in "Example Data": the example record as it was at points during the run, and
+ * additions for what the example run doesn't have.
+ */
+final class ExampleData {
+    static final String WORLD_ID = "d400a2da3b8fe7b91118f6d7e5b7850034ad8f9cf5f8cba85233d4bf8c252cf3";
+
+    private static final Gson GSON = new Gson();
+    private static final Path EXAMPLE_DATA = Paths.get("Example Data");
+
+    private ExampleData() {
+    }
+
+    static JsonObject readRecord() throws IOException {
+        return ExampleData.read("record_example.json");
+    }
+
+    static JsonObject readLatestWorld() throws IOException {
+        return ExampleData.read("latest_world_example.json");
+    }
+
+    static JsonObject read(String fileName) throws IOException {
+        return GSON.fromJson(new String(Files.readAllBytes(EXAMPLE_DATA.resolve(fileName)), StandardCharsets.UTF_8), JsonObject.class);
+    }
+
+    /**
+     * @return every RTA at which a timeline, advancement or criterion of the record was completed, in order
+     */
+    static List<Long> getProgressTimes(JsonObject record) {
+        TreeSet<Long> times = new TreeSet<>();
+        for (JsonElement timeline : record.getAsJsonArray("timelines")) {
+            times.add(timeline.getAsJsonObject().get("rta").getAsLong());
+        }
+        for (Map.Entry<String, JsonElement> entry : record.getAsJsonObject("advancements").entrySet()) {
+            JsonObject advancement = entry.getValue().getAsJsonObject();
+            if (advancement.get("complete").getAsBoolean()) times.add(advancement.get("rta").getAsLong());
+            if (!advancement.has("criteria")) continue;
+            for (Map.Entry<String, JsonElement> criterion : advancement.getAsJsonObject("criteria").entrySet()) {
+                times.add(criterion.getValue().getAsJsonObject().get("rta").getAsLong());
+            }
+        }
+        return new ArrayList<>(times);
+    }
+
+    /**
+     * @return a copy of a record with only what was done by the given RTA
+     */
+    static JsonObject recordAt(JsonObject record, long rta) {
+        JsonObject copy = record.deepCopy();
+        JsonArray timelines = new JsonArray();
+        for (JsonElement timeline : record.getAsJsonArray("timelines")) {
+            if (timeline.getAsJsonObject().get("rta").getAsLong() <= rta) timelines.add(timeline.deepCopy());
+        }
+        copy.add("timelines", timelines);
+
+        JsonObject advancements = copy.getAsJsonObject("advancements");
+        for (String name : new ArrayList<>(advancements.keySet())) {
+            JsonObject advancement = advancements.getAsJsonObject(name);
+            if (advancement.has("criteria")) {
+                JsonObject criteria = advancement.getAsJsonObject("criteria");
+                for (String criterion : new ArrayList<>(criteria.keySet())) {
+                    if (criteria.getAsJsonObject(criterion).get("rta").getAsLong() > rta) criteria.remove(criterion);
+                }
+            }
+            if (advancement.get("complete").getAsBoolean() && advancement.get("rta").getAsLong() > rta) {
+                advancement.addProperty("complete", false);
+                advancement.addProperty("igt", 0);
+                advancement.addProperty("rta", 0);
+            }
+            if (!advancement.get("complete").getAsBoolean() && (!advancement.has("criteria") || advancement.getAsJsonObject("criteria").size() == 0)) {
+                advancements.remove(name);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return events.log lines of the timelines done by the given RTA
+     */
+    static List<String> eventsAt(JsonObject record, long rta) {
+        List<String> events = new ArrayList<>();
+        for (JsonElement element : record.getAsJsonArray("timelines")) {
+            JsonObject timeline = element.getAsJsonObject();
+            if (timeline.get("rta").getAsLong() > rta) continue;
+            events.add("rsg." + timeline.get("name").getAsString() + " " + timeline.get("rta").getAsLong() + " " + timeline.get("igt").getAsLong());
+        }
+        return events;
+    }
+
+    /**
+     * Adds what the example record doesn't have: player stats, tamed cats, the enchanted golden apple recipe, a modded
+     * advancement and criteria outside of the 1.16 ones.
+     */
+    static JsonObject withAdditions(JsonObject record) {
+        JsonObject copy = record.deepCopy();
+        JsonObject advancements = copy.getAsJsonObject("advancements");
+
+        JsonObject catalogue = ExampleData.advancement(false, 0, 0);
+        JsonObject cats = new JsonObject();
+        cats.add("textures/entity/cat/tabby.png", ExampleData.criterion(1200000));
+        cats.add("textures/entity/cat/all_black.png", ExampleData.criterion(1100000));
+        cats.add("textures/entity/cat/calico.png", ExampleData.criterion(1300000));
+        catalogue.add("criteria", cats);
+        advancements.add("minecraft:husbandry/complete_catalogue", catalogue);
+
+        JsonObject banner = ExampleData.advancement(true, 1500000, 1400000);
+        banner.addProperty("is_advancement", false);
+        advancements.add(RecordParser.EGA_ADVANCEMENT, banner);
+
+        advancements.add("mymod:extra/first", ExampleData.advancement(true, 90000, 80000));
+        advancements.add("minecraft:story/zzz_modded", ExampleData.advancement(true, 95000, 85000));
+        advancements.getAsJsonObject("minecraft:adventure/adventuring_time").getAsJsonObject("criteria").add("mymod:glowing_caves", ExampleData.criterion(1000));
+
+        JsonObject stats = new JsonObject();
+        stats.add("c0ffee00-0000-0000-0000-000000000001", ExampleData.playerStats(5, 1, 3));
+        stats.add("c0ffee00-0000-0000-0000-000000000002", ExampleData.playerStats(9, 0, 0));
+        copy.add("stats", stats);
+        return copy;
+    }
+
+    /**
+     * @return the record written out and read back the way the tracker reads record.json
+     */
+    static RecordData parse(JsonObject record) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(GSON.toJson(record)))) {
+            return RecordParser.parse(reader);
+        }
+    }
+
+    private static JsonObject advancement(boolean complete, long rta, long igt) {
+        JsonObject advancement = new JsonObject();
+        advancement.addProperty("complete", complete);
+        advancement.addProperty("is_advancement", true);
+        advancement.addProperty("igt", igt);
+        advancement.addProperty("rta", rta);
+        return advancement;
+    }
+
+    private static JsonObject criterion(long rta) {
+        JsonObject criterion = new JsonObject();
+        criterion.addProperty("igt", rta - 1000);
+        criterion.addProperty("rta", rta);
+        return criterion;
+    }
+
+    private static JsonObject playerStats(int pickedUp, int dropped, int used) {
+        JsonObject stats = new JsonObject();
+        stats.add("minecraft:picked_up", ExampleData.itemStat(pickedUp));
+        stats.add("minecraft:dropped", ExampleData.itemStat(dropped));
+        stats.add("minecraft:used", ExampleData.itemStat(used));
+        JsonObject player = new JsonObject();
+        player.add("stats", stats);
+        return player;
+    }
+
+    private static JsonObject itemStat(int count) {
+        JsonObject items = new JsonObject();
+        items.addProperty("minecraft:wither_skeleton_skull", count);
+        items.addProperty("minecraft:cobblestone", 64);
+        return items;
+    }
+}
@@ -0,0 +1,72 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class HistoryFileTest {
+    @Test
+    public void readsBackEveryValueItWrote() throws IOException {
+        // Longs are stored as the difference from the row before, which overflows between the extremes
+        List<HistoryFile.Run> first = Arrays.asList(
+                HistoryFileTest.run("Random Speedrun #1", Long.MAX_VALUE, Integer.MIN_VALUE, true),
+                HistoryFileTest.run("Random Speedrun #2", Long.MIN_VALUE, Integer.MAX_VALUE, false),
+                HistoryFileTest.run("Random Speedrun #3", -1, -1, true),
+                HistoryFileTest.run("Random Speedrun #3", 0, 0, false),
+                HistoryFileTest.run("Caf\u00e9 \u6d4b\u8bd5", 1L << 35, 1 << 20, true),
+                HistoryFileTest.run("", -(1L << 56), -(1 << 28), false),
+                HistoryFileTest.run("Random Speedrun #7", 63, 64, true),
+                HistoryFileTest.run("Random Speedrun #8", -64, -65, false),
+                // A ninth row spills the booleans into a second byte
+                HistoryFileTest.run("Random Speedrun #9", 1_700_000_000_000L, 100, true)
+        );
+        List<HistoryFile.Run> second = Collections.singletonList(HistoryFileTest.run("Random Speedrun #10", 5, 5, true));
+        List<HistoryFile.Run> written = new ArrayList<>(first);
+        written.addAll(second);
+
+        Path path = Files.createTempDirectory("aatracker-history").resolve("history.bin");
+        try (HistoryFile.Writer writer = new HistoryFile.Writer(path)) {
+            writer.write(first);
+            writer.write(Collections.emptyList());
+            writer.write(second);
+            assertEquals(written.size(), writer.getRuns());
+        }
+        assertFalse(Files.exists(path.resolveSibling("history.bin.tmp")));
+
+        List<HistoryFile.Run> read = new ArrayList<>();
+        HistoryFile.read(path, read::add);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            HistoryFileTest.assertRunEquals(written.get(i), read.get(i));
+        }
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    private static HistoryFile.Run run(String world, long value, int count, boolean flag) {
+        return new HistoryFile.Run(world, world.isEmpty() ? "" : world + "-id", value, flag ? "AA" : "Any%", flag, value, ~value, count, flag ? value : -1, !flag, ~count);
+    }
+
+    private static void assertRunEquals(HistoryFile.Run expected, HistoryFile.Run actual) {
+        assertEquals(expected.world, actual.world);
+        assertEquals(expected.worldId, actual.worldId);
+        assertEquals(expected.date, actual.date);
+        assertEquals(expected.category, actual.category);
+        assertEquals(expected.completed, actual.completed);
+        assertEquals(expected.finalIgt, actual.finalIgt);
+        assertEquals(expected.finalRta, actual.finalRta);
+        assertEquals(expected.advancements, actual.advancements);
+        assertEquals(expected.netherIgt, actual.netherIgt);
+        assertEquals(expected.cheated, actual.cheated);
+        assertEquals(expected.events, actual.events);
+    }
+}
@@ -0,0 +1,120 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The payload built the way the tracker used to: from the whole record.json as a tree, sorting the identifier strings
+ * for every payload. The payload code must still give exactly these bytes.
+ */
+final class LegacyPayload {
+    private static final String EGA_ADVANCEMENT = "minecraft:recipes/misc/mojang_banner_pattern";
+
+    private LegacyPayload() {
+    }
+
+    static JsonObject build(JsonObject record, JsonObject latestWorld, List<String> events, String worldId, long lastRecordModified) {
+        JsonArray completed = new JsonArray();
+
+        JsonObject advancements = record.getAsJsonObject("advancements");
+        for (String advancementName : advancements.keySet().stream().sorted().collect(Collectors.toList())) {
+            JsonObject advancement = advancements.getAsJsonObject(advancementName);
+            if (advancement.has("complete") && advancement.get("complete").getAsBoolean() && advancement.has("is_advancement") && advancement.get("is_advancement").getAsBoolean()) {
+                String simpleAdvancementName = advancementName.startsWith("minecraft:") ? advancementName.substring(10) : advancementName;
+                completed.add(String.format("%s %d %d", simpleAdvancementName, advancement.get("rta").getAsLong(), advancement.get("igt").getAsLong()));
+            }
+        }
+
+        JsonObject criterias = new JsonObject();
+        JsonArray biomes = new JsonArray();
+        JsonArray monstersKilled = new JsonArray();
+        JsonArray animalsBred = new JsonArray();
+        JsonArray catsTamed = new JsonArray();
+        JsonArray foodEaten = new JsonArray();
+        if (advancements.has("minecraft:adventure/adventuring_time")) {
+            advancements.getAsJsonObject("minecraft:adventure/adventuring_time").getAsJsonObject("criteria").keySet().stream().sorted().forEach(s -> biomes.add(s.startsWith("minecraft:") ? s.substring(10) : s));
+        }
+        if (advancements.has("minecraft:adventure/kill_all_mobs")) {
+            advancements.getAsJsonObject("minecraft:adventure/kill_all_mobs").getAsJsonObject("criteria").keySet().stream().sorted().forEach(s -> monstersKilled.add(s.startsWith("minecraft:") ? s.substring(10) : s));
+        }
+        if (advancements.has("minecraft:husbandry/bred_all_animals")) {
+            advancements.getAsJsonObject("minecraft:husbandry/bred_all_animals").getAsJsonObject("criteria").keySet().stream().sorted().forEach(s -> animalsBred.add(s.startsWith("minecraft:") ? s.substring(10) : s));
+        }
+        if (advancements.has("minecraft:husbandry/complete_catalogue")) {
+            advancements.getAsJsonObject("minecraft:husbandry/complete_catalogue").getAsJsonObject("criteria").keySet().stream().sorted().forEach(s -> catsTamed.add(LegacyPayload.cleanseCatName(s)));
+        }
+        if (advancements.has("minecraft:husbandry/balanced_diet")) {
+            advancements.getAsJsonObject("minecraft:husbandry/balanced_diet").getAsJsonObject("criteria").keySet().stream().sorted().forEach(s -> foodEaten.add(s.startsWith("minecraft:") ? s.substring(10) : s));
+        }
+        criterias.add("biomes", biomes);
+        criterias.add("monstersKilled", monstersKilled);
+        criterias.add("animalsBred", animalsBred);
+        criterias.add("catsTamed", catsTamed);
+        criterias.add("foodEaten", foodEaten);
+
+        JsonObject aaItems = new JsonObject();
+
+        boolean hasEnchantedGoldenApple = advancements.has(EGA_ADVANCEMENT) && advancements.getAsJsonObject(EGA_ADVANCEMENT).has("complete") && advancements.getAsJsonObject(EGA_ADVANCEMENT).get("complete").getAsBoolean();
+        aaItems.addProperty("has_enchanted_golden_apple", hasEnchantedGoldenApple);
+
+        aaItems.addProperty("skulls", 0);
+        LegacyPayload.getAnyPlayerStats(record).ifPresent(playerStats -> aaItems.addProperty("skulls",
+                LegacyPayload.getItemStat(playerStats, "minecraft:picked_up", "minecraft:wither_skeleton_skull") -
+                        LegacyPayload.getItemStat(playerStats, "minecraft:dropped", "minecraft:wither_skeleton_skull") -
+                        LegacyPayload.getItemStat(playerStats, "minecraft:used", "minecraft:wither_skeleton_skull")
+        ));
+
+        JsonObject toSend = new JsonObject();
+
+        toSend.addProperty("lastRecordModified", lastRecordModified);
+        toSend.addProperty("gameVersion", latestWorld.get("version").getAsString());
+        toSend.addProperty("modVersion", latestWorld.get("mod_version").getAsString().split("\\+")[0]);
+        toSend.addProperty("aaTrackerVersion", AATracker.VERSION.startsWith("v") ? AATracker.VERSION.substring(1) : AATracker.VERSION);
+        JsonArray modList = new JsonArray();
+        latestWorld.getAsJsonArray("mods").asList().stream().map(JsonElement::getAsString).sorted().forEach(modList::add);
+        toSend.addProperty("worldId", worldId);
+        toSend.add("modList", modList);
+        toSend.add("completed", completed);
+        toSend.add("timelines", record.getAsJsonArray("timelines"));
+        JsonArray eventList = new JsonArray(events.size());
+        events.forEach(eventList::add);
+        toSend.add("eventList", eventList);
+        toSend.add("criterias", criterias);
+        toSend.add("items", aaItems);
+        return toSend;
+    }
+
+    private static String cleanseCatName(String catName) {
+        if (catName.startsWith("textures/entity/cat/")) {
+            catName = catName.substring("textures/entity/cat/".length());
+        }
+        if (catName.endsWith(".png")) {
+            catName = catName.substring(0, catName.length() - 4);
+        }
+        return catName;
+    }
+
+    private static int getItemStat(JsonObject playerStats, String type, String itemName) {
+        return Optional.ofNullable(playerStats)
+                .map(j -> j.get(type))
+                .map(e -> e.isJsonObject() ? e.getAsJsonObject() : null)
+                .map(j -> j.get(itemName))
+                .map(e -> e.isJsonPrimitive() ? e.getAsJsonPrimitive() : null)
+                .map(p -> p.isNumber() ? p.getAsInt() : null).orElse(0);
+    }
+
+    private static Optional<JsonObject> getAnyPlayerStats(JsonObject record) {
+        return Optional.ofNullable(record)
+                .map(j -> j.get("stats"))
+                .map(e -> e.isJsonObject() ? e.getAsJsonObject() : null)
+                .map(j -> j.keySet().isEmpty() ? null : j.get(j.keySet().stream().findAny().get()))
+                .map(e -> e.isJsonObject() ? e.getAsJsonObject() : null)
+                .map(j -> j.get("stats"))
+                .map(e -> e.isJsonObject() ? e.getAsJsonObject() : null);
+    }
+}
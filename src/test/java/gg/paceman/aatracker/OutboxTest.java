@@ -0,0 +1,167 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+    private static final long NOW = 1_700_000_000_000L;
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+
+    @Test
+    public void keepsOnlyTheNewestWaitingPayloadOfAWorld() {
+        Outbox outbox = new Outbox(null, CLOCK);
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, NOW);
+        outbox.addPayload(PayloadSenderTest.payload("b", 1), "b", 1, NOW);
+        Outbox.Entry inFlight = outbox.peek();
+        inFlight.inFlight = true;
+        outbox.addPayload(PayloadSenderTest.payload("a", 2), "a", 0, NOW);
+        outbox.addPayload(PayloadSenderTest.payload("a", 3), "a", 0, NOW);
+
+        // The payload being sent stays, a2 was replaced by a3
+        assertEquals(3, outbox.size());
+        assertEquals(1, outbox.getCompactedPayloads());
+        outbox.remove(inFlight);
+        assertEquals(1, outbox.peek().payload.get("version").getAsInt());
+        assertEquals("b", outbox.peek().worldId);
+    }
+
+    @Test
+    public void neverSendsAPayloadAheadOfAKillQueuedBeforeIt() {
+        Outbox outbox = new Outbox(null, CLOCK);
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, NOW + 500);
+        outbox.addKill();
+        // Ready sooner, but queued after the kill
+        outbox.addPayload(PayloadSenderTest.payload("a", 2), "a", 1, NOW);
+        assertEquals(3, outbox.size());
+
+        Outbox.Entry first = outbox.peek();
+        assertEquals(1, first.payload.get("version").getAsInt());
+        outbox.remove(first);
+        assertTrue(outbox.peek().kill);
+        outbox.remove(outbox.peek());
+        assertEquals(2, outbox.peek().payload.get("version").getAsInt());
+    }
+
+    @Test
+    public void keepsBackingOffWhenAFailingPayloadIsReplaced() {
+        Outbox outbox = new Outbox(null, CLOCK);
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, NOW);
+        Outbox.Entry entry = outbox.peek();
+        long[] maxBackoffs = {1000, 2000, 4000, 8000, 16000, 32000, 60000, 60000};
+        for (long maxBackoff : maxBackoffs) {
+            entry.inFlight = true;
+            assertTrue(outbox.scheduleRetry(entry));
+            long backoff = entry.nextAttemptAt - NOW;
+            assertTrue(backoff + " for " + maxBackoff, backoff >= maxBackoff / 2 && backoff <= maxBackoff);
+        }
+        assertEquals(maxBackoffs.length, outbox.getTotalRetries());
+
+        outbox.addPayload(PayloadSenderTest.payload("a", 2), "a", 0, NOW);
+        Outbox.Entry replacement = outbox.peek();
+        assertEquals(2, replacement.payload.get("version").getAsInt());
+        assertEquals(entry.attempts, replacement.attempts);
+        assertEquals(entry.nextAttemptAt, replacement.nextAttemptAt);
+    }
+
+    @Test
+    public void givesUpAfterTooManyAttempts() {
+        Outbox outbox = new Outbox(null, CLOCK);
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, NOW);
+        Outbox.Entry entry = outbox.peek();
+        int retries = 0;
+        while (outbox.scheduleRetry(entry)) {
+            retries++;
+        }
+        assertEquals(9, retries);
+        assertEquals(0, outbox.size());
+        assertEquals(1, outbox.getDroppedRequests());
+    }
+
+    @Test
+    public void onlySavesOnceARequestFailed() throws IOException {
+        Path path = Files.createTempDirectory("aatracker-outbox").resolve("outbox.json");
+        Outbox outbox = new Outbox(path, CLOCK);
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, NOW);
+        Outbox.Entry entry = outbox.peek();
+        assertNull(outbox.takeUnsaved(false));
+
+        outbox.scheduleRetry(entry);
+        OutboxTest.save(outbox, false);
+        assertTrue(Files.exists(path));
+        // Changes are saved until the outbox is empty again
+        outbox.addPayload(PayloadSenderTest.payload("b", 1), "b", 1, NOW);
+        assertEquals(2, outbox.takeUnsaved(false).size());
+        outbox.remove(outbox.peek());
+        outbox.remove(outbox.peek());
+        OutboxTest.save(outbox, false);
+        assertFalse(Files.exists(path));
+
+        outbox.addPayload(PayloadSenderTest.payload("a", 2), "a", 0, NOW);
+        assertNull(outbox.takeUnsaved(false));
+        // Everything is saved when the sender stops
+        OutboxTest.save(outbox, true);
+        assertTrue(Files.exists(path));
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    public void loadsPayloadsButNotKillsOrWhatWasQueuedBeforeThem() throws IOException {
+        Path path = Files.createTempDirectory("aatracker-outbox").resolve("outbox.json");
+        Outbox outbox = new Outbox(path, Clock.fixed(Instant.ofEpochMilli(NOW - 11 * 60 * 1000), ZoneOffset.UTC));
+        outbox.addPayload(PayloadSenderTest.payload("old", 1), "old", 0, NOW);
+        outbox = OutboxTest.reload(outbox, path, CLOCK);
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, NOW);
+        outbox.addKill();
+        outbox.addPayload(PayloadSenderTest.payload("b", 1), "b", 1, NOW);
+        outbox.addPayload(PayloadSenderTest.payload("c", 1), "c", 2, NOW);
+
+        Outbox loaded = OutboxTest.reload(outbox, path, CLOCK);
+        // The old payload is too old, the kill and the payload of the run it ended are dropped
+        assertEquals(2, loaded.size());
+        Outbox.Entry entry = loaded.peek();
+        assertEquals(-1, entry.runId);
+        assertFalse(entry.kill);
+        assertTrue(loaded.hasPayloads("b"));
+        assertTrue(loaded.hasPayloads("c"));
+        assertFalse(entry.payload.has("accessKey"));
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    public void peeksNothingWhenEmpty() {
+        Outbox outbox = new Outbox(null, CLOCK);
+        assertNull(outbox.peek());
+        outbox.addKill();
+        Outbox.Entry kill = outbox.peek();
+        assertSame(kill, outbox.peek());
+        assertFalse(outbox.hasPayloads());
+    }
+
+    private static void save(Outbox outbox, boolean all) {
+        outbox.save(outbox.takeUnsaved(all));
+    }
+
+    /**
+     * Saves everything as a stopping sender would, and loads it as the next start would.
+     */
+    private static Outbox reload(Outbox outbox, Path path, Clock clock) {
+        OutboxTest.save(outbox, true);
+        Outbox loaded = new Outbox(path, clock);
+        loaded.load();
+        return loaded;
+    }
+}
@@ -0,0 +1,130 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadBuilderTest {
+    @Test
+    public void keptSectionsGiveTheSameBytesOverTheExampleRun() throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        PayloadBuilder builder = new PayloadBuilder(new TrackerMetrics());
+        List<String> events = new ArrayList<>();
+        List<JsonObject> payloads = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (long rta : ExampleData.getProgressTimes(record)) {
+            JsonObject recordAt = ExampleData.recordAt(record, rta);
+            List<String> eventsAt = ExampleData.eventsAt(record, rta);
+            // Appended like the events log reader does, so earlier events stay the same objects
+            events.addAll(eventsAt.subList(events.size(), eventsAt.size()));
+
+            byte[] legacy = LegacyPayload.build(recordAt, latestWorld, eventsAt, ExampleData.WORLD_ID, rta).toString().getBytes(StandardCharsets.UTF_8);
+            JsonObject payload = builder.build(ExampleData.parse(recordAt), latestWorld, events, ExampleData.WORLD_ID, rta);
+            PayloadBuilderTest.assertBuilt(legacy, builder, payload);
+            payloads.add(payload);
+            expected.add(legacy);
+        }
+        // Later payloads share sections with earlier ones, which must not have changed
+        for (int i = 0; i < payloads.size(); i++) {
+            assertArrayEquals(expected.get(i), payloads.get(i).toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void rebuildsEventsThatWereReadAgain() throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        RecordData data = ExampleData.parse(record);
+        PayloadBuilder builder = new PayloadBuilder(new TrackerMetrics());
+        List<String> events = ExampleData.eventsAt(record, Long.MAX_VALUE);
+        builder.build(data, latestWorld, events, ExampleData.WORLD_ID, 1);
+
+        // Same number of events with different contents, as if events.log was rewritten
+        List<String> rewritten = new ArrayList<>();
+        for (String event : events) {
+            rewritten.add(event.replace("rsg.", "common."));
+        }
+        JsonObject payload = builder.build(data, latestWorld, rewritten, ExampleData.WORLD_ID, 1);
+        PayloadBuilderTest.assertBuilt(LegacyPayload.build(record, latestWorld, rewritten, ExampleData.WORLD_ID, 1).toString().getBytes(StandardCharsets.UTF_8), builder, payload);
+
+        // Fewer events, as if a new world was started
+        List<String> fewer = new ArrayList<>(events.subList(0, 2));
+        payload = builder.build(data, latestWorld, fewer, "other", 2);
+        PayloadBuilderTest.assertBuilt(LegacyPayload.build(record, latestWorld, fewer, "other", 2).toString().getBytes(StandardCharsets.UTF_8), builder, payload);
+    }
+
+    @Test
+    public void countsUnchangedSectionsAsHits() throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        List<String> events = ExampleData.eventsAt(record, Long.MAX_VALUE);
+        TrackerMetrics metrics = new TrackerMetrics();
+        PayloadBuilder builder = new PayloadBuilder(metrics);
+        builder.build(ExampleData.parse(record), latestWorld, events, ExampleData.WORLD_ID, 1);
+        byte[] fingerprint = builder.getFingerprint();
+        builder.build(ExampleData.parse(record), latestWorld, events, ExampleData.WORLD_ID, 2);
+
+        // Only lastRecordModified changed
+        assertFalse(Arrays.equals(fingerprint, builder.getFingerprint()));
+        String exported = metrics.toPrometheus();
+        for (String section : new String[]{"modList", "completed", "timelines", "eventList", "criterias.biomes", "items"}) {
+            assertTrue(section, exported.contains("payload_sections_total{section=\"" + section + "\",result=\"hit\"} 1\n"));
+            assertTrue(section, exported.contains("payload_sections_total{section=\"" + section + "\",result=\"miss\"} 1\n"));
+        }
+    }
+
+    @Test
+    public void onlyCompletingEveryKnownAdvancementIsAMilestone() throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        List<String> events = ExampleData.eventsAt(record, Long.MAX_VALUE);
+        PayloadBuilder builder = new PayloadBuilder(new TrackerMetrics());
+        RecordData data = ExampleData.parse(record);
+        builder.build(data, latestWorld, events, ExampleData.WORLD_ID, 1);
+
+        int missing = AdvancementRegistry.ADVANCEMENTS.idOf("minecraft:nether/all_effects");
+        assertFalse(data.completedAdvancements.contains(missing));
+        // Every advancement but one, and more of other versions than the one missing
+        for (int id = 0; id < AdvancementRegistry.KNOWN_ADVANCEMENTS; id++) {
+            if (id != missing) data.completedAdvancements.add(id, id, id);
+        }
+        for (int i = 0; i < 3; i++) {
+            data.completedAdvancements.add(AdvancementRegistry.ADVANCEMENTS.idOf("minecraft:story/milestone_test_" + i), 0, 0);
+        }
+        assertTrue(data.completedAdvancements.size() >= AdvancementRegistry.KNOWN_ADVANCEMENTS);
+        builder.build(data, latestWorld, events, ExampleData.WORLD_ID, 2);
+        assertFalse(builder.isMilestone());
+
+        data.completedAdvancements.add(missing, 1, 1);
+        builder.build(data, latestWorld, events, ExampleData.WORLD_ID, 3);
+        assertTrue(builder.isMilestone());
+    }
+
+    private static void assertBuilt(byte[] expected, PayloadBuilder builder, JsonObject payload) {
+        assertArrayEquals(expected, payload.toString().getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(PayloadBuilderTest.sha256(expected), builder.getFingerprint());
+        assertArrayEquals(expected, builder.toJson());
+        assertEquals(expected.length, builder.getSize());
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.PostUtil;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadSenderTest {
+    @Test
+    public void queuesWithoutWaitingForASlowSendAndOnlySendsTheNewestPayload() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        PayloadSender sender = PayloadSenderTest.start(handler);
+        try {
+            sender.queuePayload(PayloadSenderTest.payload("a", 1), null, 0, false, null);
+            assertTrue(handler.sendStarted.await(5, TimeUnit.SECONDS));
+            // The first send is still in flight
+            for (int i = 2; i <= 5; i++) {
+                sender.queuePayload(PayloadSenderTest.payload("a", i), null, 0, false, null);
+            }
+            assertEquals(2, sender.getQueueDepth());
+            assertEquals(3, sender.getCoalescedPayloads());
+
+            handler.release.countDown();
+            handler.awaitFinished(2);
+            assertEquals("a1 a5", handler.getSent());
+            assertFalse(sender.hasPendingPayloads());
+        } finally {
+            sender.stop();
+        }
+    }
+
+    @Test
+    public void sendsAKillAfterThePayloadsQueuedBeforeIt() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        PayloadSender sender = PayloadSenderTest.start(handler);
+        try {
+            sender.queuePayload(PayloadSenderTest.payload("a", 1), null, 0, false, null);
+            assertTrue(handler.sendStarted.await(5, TimeUnit.SECONDS));
+            sender.queuePayload(PayloadSenderTest.payload("a", 2), null, 0, false, null);
+            sender.queuePayload(PayloadSenderTest.payload("b", 1), null, 1, false, null);
+            sender.queueKill();
+            // Queued after the kill, so it isn't merged into the payload before it
+            sender.queuePayload(PayloadSenderTest.payload("a", 3), null, 0, false, null);
+
+            handler.release.countDown();
+            handler.awaitFinished(5);
+            assertEquals("a1 a2 b1 kill a3", handler.getSent());
+        } finally {
+            sender.stop();
+        }
+    }
+
+    @Test
+    public void reportsRejectedPayloadsWithoutRetrying() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        handler.code = 403;
+        handler.release.countDown();
+        PayloadSender sender = PayloadSenderTest.start(handler);
+        try {
+            sender.queuePayload(PayloadSenderTest.payload("a", 1), null, 7, false, null);
+            handler.awaitFinished(1);
+            assertEquals("a1", handler.getSent());
+            assertEquals("7 a 403", handler.getFinished());
+            assertEquals(0, sender.getTotalRetries());
+        } finally {
+            sender.stop();
+        }
+    }
+
+    private static PayloadSender start(RecordingHandler handler) {
+        PayloadSender sender = new PayloadSender(handler, new Outbox(null, Clock.systemUTC()), Clock.systemUTC());
+        sender.setMinSendInterval(0);
+        sender.start();
+        return sender;
+    }
+
+    static JsonObject payload(String worldId, int version) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("worldId", worldId);
+        payload.addProperty("version", version);
+        return payload;
+    }
+
+    /**
+     * Holds the first send until released, and records every request in the order it was made.
+     */
+    private static class RecordingHandler implements PayloadSender.Handler {
+        private final CountDownLatch sendStarted = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> sent = new ArrayList<>();
+        private final List<String> finished = new ArrayList<>();
+        private volatile int code = 200;
+
+        @Override
+        public PostUtil.PostResponse send(JsonObject payload, @Nullable byte[] json) throws IOException {
+            this.sendStarted.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            this.record(payload.get("worldId").getAsString() + payload.get("version").getAsInt());
+            return new PostUtil.PostResponse(this.code, "");
+        }
+
+        @Override
+        public PostUtil.PostResponse kill() {
+            this.record("kill");
+            return new PostUtil.PostResponse(200, "");
+        }
+
+        @Override
+        public synchronized void onSendFinished(Outbox.Entry entry, @Nullable PostUtil.PostResponse response, @Nullable Throwable error) {
+            this.finished.add(entry.runId + " " + entry.worldId + " " + (response == null ? error : response.code));
+            this.notifyAll();
+        }
+
+        private synchronized void record(String request) {
+            this.sent.add(request);
+            this.notifyAll();
+        }
+
+        /**
+         * Waits for the given number of requests to be made and every payload among them to be reported as finished.
+         */
+        private synchronized void awaitFinished(int requests) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((this.sent.size() < requests || this.finished.size() < this.sent.stream().filter(request -> !request.equals("kill")).count()) && System.currentTimeMillis() < deadline) {
+                this.wait(100);
+            }
+            assertEquals(requests, this.sent.size());
+        }
+
+        private synchronized String getSent() {
+            return String.join(" ", this.sent);
+        }
+
+        private synchronized String getFinished() {
+            return String.join(" ", this.finished);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PayloadSerializerTest {
+    private final PayloadSerializer serializer = new PayloadSerializer();
+
+    @Test
+    public void writesWhatToStringGaveOverTheExampleRun() throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        List<Long> times = ExampleData.getProgressTimes(record);
+        // Largest payload first, so the reused buffer holds more than the later ones
+        for (int i = times.size() - 1; i >= 0; i--) {
+            long rta = times.get(i);
+            this.assertSameBytes(LegacyPayload.build(ExampleData.recordAt(record, rta), latestWorld, ExampleData.eventsAt(record, rta), ExampleData.WORLD_ID, rta));
+        }
+    }
+
+    @Test
+    public void writesTheExampleSend() throws IOException {
+        JsonObject payload = ExampleData.read("example_send_real.json");
+        payload.remove("accessKey");
+        this.assertSameBytes(payload);
+    }
+
+    @Test
+    public void escapesLikeToString() throws IOException {
+        JsonObject payload = LegacyPayload.build(ExampleData.readRecord(), ExampleData.readLatestWorld(), Arrays.asList(
+                "rsg.obtain_item 1 1", "common.note \"quoted\" \\ <html> & 'single' =", "common.note \u00e9 \u00f1 \u65e5\u672c \ud83d\ude00", "common.note \t\n\u0001\u2028\u2029"
+        ), ExampleData.WORLD_ID, 0);
+        JsonArray modList = payload.getAsJsonArray("modList");
+        modList.add("mod-with-\"quote\"");
+        this.assertSameBytes(payload);
+    }
+
+    @Test
+    public void addsTheAccessKeyToAnAlreadySerializedPayload() throws IOException {
+        JsonObject payload = ExampleData.read("example_send_real.json");
+        payload.remove("accessKey");
+        byte[] json = payload.toString().getBytes(StandardCharsets.UTF_8);
+        for (String accessKey : new String[]{"key", "with \"quotes\" and \u00e9"}) {
+            byte[] expected = this.serializer.write(payload, accessKey).toByteArray();
+            assertArrayEquals(expected, this.serializer.write(json, accessKey).toByteArray());
+        }
+        assertArrayEquals(json, this.serializer.write(json, null).toByteArray());
+        assertArrayEquals("{\"accessKey\":\"key\"}".getBytes(StandardCharsets.UTF_8), this.serializer.write("{}".getBytes(StandardCharsets.UTF_8), "key").toByteArray());
+    }
+
+    @Test
+    public void fingerprintsFragmentsLikeTheWholePayload() throws IOException {
+        JsonObject payload = LegacyPayload.build(ExampleData.readRecord(), ExampleData.readLatestWorld(), ExampleData.eventsAt(ExampleData.readRecord(), Long.MAX_VALUE), ExampleData.WORLD_ID, 0);
+        String[] names = payload.keySet().toArray(new String[0]);
+        byte[][] values = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = this.serializer.toBytes(payload.get(names[i]));
+        }
+        assertArrayEquals(PayloadSerializerTest.sha256(payload.toString()), this.serializer.fingerprint(names, values));
+        assertEquals(payload.toString().getBytes(StandardCharsets.UTF_8).length, this.serializer.getLastFingerprintedSize());
+    }
+
+    /**
+     * Checks the serializer against the old way of sending: toString() for the change check, then the access key added
+     * and toString() again for the body.
+     */
+    private void assertSameBytes(JsonObject payload) {
+        String noAccessKey = payload.toString();
+        JsonObject withAccessKey = payload.deepCopy();
+        withAccessKey.addProperty("accessKey", "0123-key");
+
+        PayloadSerializer.Buffer buffer = this.serializer.write(payload, "0123-key");
+        assertArrayEquals(withAccessKey.toString().getBytes(StandardCharsets.UTF_8), Arrays.copyOf(buffer.getBytes(), buffer.size()));
+        assertArrayEquals(PayloadSerializerTest.sha256(noAccessKey), this.serializer.fingerprint(payload));
+        assertEquals(noAccessKey.getBytes(StandardCharsets.UTF_8).length, this.serializer.getLastFingerprintedSize());
+    }
+
+    private static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
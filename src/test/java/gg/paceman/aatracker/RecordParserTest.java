@@ -0,0 +1,112 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordParserTest {
+    @Test
+    public void payloadsMatchTreeParsingOverTheExampleRun() throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        for (long rta : ExampleData.getProgressTimes(record)) {
+            RecordParserTest.assertSamePayload(ExampleData.recordAt(record, rta), ExampleData.eventsAt(record, rta));
+        }
+    }
+
+    @Test
+    public void payloadMatchesTreeParsingWithStatsCatsAndModdedAdvancements() throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        RecordParserTest.assertSamePayload(record, ExampleData.eventsAt(record, Long.MAX_VALUE));
+
+        RecordData data = ExampleData.parse(record);
+        assertTrue(data.hasEnchantedGoldenApple);
+        // Only the first player's stats count
+        assertEquals(1, data.skullsPickedUp - data.skullsDropped - data.skullsUsed);
+    }
+
+    @Test
+    public void skipsUnusedMembersOfAnyShape() throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        JsonObject unused = new JsonObject();
+        JsonArray nested = new JsonArray();
+        nested.add(1.5);
+        nested.add(JsonNull.INSTANCE);
+        nested.add(new JsonObject());
+        unused.add("nested", nested);
+        unused.addProperty("text", "{\"complete\": true}");
+        record.add("unused", unused);
+        record.getAsJsonObject("advancements").getAsJsonObject("minecraft:story/root").add("unused", unused.deepCopy());
+        record.getAsJsonObject("advancements").getAsJsonObject("minecraft:adventure/adventuring_time").getAsJsonObject("criteria")
+                .getAsJsonObject("minecraft:desert").add("unused", unused.deepCopy());
+
+        RecordParserTest.assertSamePayload(record, ExampleData.eventsAt(record, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void truncatesNonIntegerStatsLikeTreeParsing() throws IOException {
+        JsonObject record = ExampleData.withAdditions(ExampleData.readRecord());
+        JsonObject stats = record.getAsJsonObject("stats").getAsJsonObject("c0ffee00-0000-0000-0000-000000000001").getAsJsonObject("stats");
+        stats.getAsJsonObject("minecraft:picked_up").addProperty("minecraft:wither_skeleton_skull", 7.9);
+        stats.getAsJsonObject("minecraft:dropped").addProperty("minecraft:wither_skeleton_skull", 1e0);
+        stats.getAsJsonObject("minecraft:used").addProperty("minecraft:wither_skeleton_skull", 4294967298L);
+        RecordParserTest.assertSamePayload(record, ExampleData.eventsAt(record, Long.MAX_VALUE));
+
+        RecordData data = ExampleData.parse(record);
+        assertEquals(7, data.skullsPickedUp);
+        assertEquals(1, data.skullsDropped);
+        assertEquals(2, data.skullsUsed);
+    }
+
+    @Test
+    public void failsOnATruncatedRecord() throws IOException {
+        String json = ExampleData.readRecord().toString();
+        for (int length : new int[]{json.length() / 3, json.length() / 2, json.length() - 1}) {
+            try {
+                RecordParser.parse(new JsonReader(new StringReader(json.substring(0, length))));
+                fail("Parsed a record cut off at " + length);
+            } catch (IOException | IllegalStateException expected) {
+                // Left to the caller, which reads the file again on the next tick
+            }
+        }
+    }
+
+    @Test
+    public void readsAnEmptyOrNullRecordAsNull() throws IOException {
+        assertNull(RecordParser.parse(new JsonReader(new StringReader(""))));
+        assertNull(RecordParser.parse(new JsonReader(new StringReader("null"))));
+    }
+
+    @Test
+    public void ignoresMembersOfTheWrongType() throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        record.addProperty("stats", "none");
+        record.add("category", new JsonArray());
+        RecordData data = ExampleData.parse(record);
+        assertNull(data.category);
+        assertEquals(0, data.skullsPickedUp);
+
+        record.add("advancements", new JsonArray());
+        assertFalse(ExampleData.parse(record).hasAdvancements);
+    }
+
+    private static void assertSamePayload(JsonObject record, List<String> events) throws IOException {
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        byte[] expected = LegacyPayload.build(record, latestWorld, events, ExampleData.WORLD_ID, 1723424602663L).toString().getBytes(StandardCharsets.UTF_8);
+        JsonObject payload = new PayloadBuilder(new TrackerMetrics()).build(ExampleData.parse(record), latestWorld, events, ExampleData.WORLD_ID, 1723424602663L);
+        assertArrayEquals(expected, payload.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,69 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class SendRateLimiterTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void holdsPayloadsUntilTheEndOfTheInterval() {
+        SendRateLimiter limiter = new SendRateLimiter();
+        limiter.setMinInterval(1000);
+        assertEquals(NOW, limiter.getSendTime("a", NOW, false));
+        limiter.onSent("a", NOW);
+
+        assertEquals(NOW + 1000, limiter.getSendTime("a", NOW + 200, false));
+        // Other worlds have intervals of their own
+        assertEquals(NOW + 200, limiter.getSendTime("b", NOW + 200, false));
+        assertEquals(NOW + 1000, limiter.getSendTime("a", NOW + 1000, false));
+        assertEquals(1, limiter.getHeldPayloads());
+        assertEquals(0, limiter.getBypassedMilestones());
+    }
+
+    @Test
+    public void sendsMilestonesRightAway() {
+        SendRateLimiter limiter = new SendRateLimiter();
+        limiter.setMinInterval(1000);
+        limiter.onSent("a", NOW);
+        assertEquals(NOW + 200, limiter.getSendTime("a", NOW + 200, true));
+        assertEquals(1, limiter.getBypassedMilestones());
+        assertEquals(0, limiter.getHeldPayloads());
+
+        // Outside of the interval there is nothing to bypass
+        assertEquals(NOW + 2000, limiter.getSendTime("a", NOW + 2000, true));
+        assertEquals(1, limiter.getBypassedMilestones());
+    }
+
+    @Test
+    public void aMilestoneReplacesAHeldPayloadAndGoesOutRightAway() {
+        SendRateLimiter limiter = new SendRateLimiter();
+        limiter.setMinInterval(1000);
+        limiter.onSent("a", NOW - 500);
+        Outbox outbox = new Outbox(null, Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC));
+        outbox.addPayload(PayloadSenderTest.payload("a", 1), "a", 0, limiter.getSendTime("a", NOW, false));
+        assertEquals(NOW + 500, outbox.peek().nextAttemptAt);
+
+        outbox.addPayload(PayloadSenderTest.payload("a", 2), "a", 0, limiter.getSendTime("a", NOW, true));
+        Outbox.Entry next = outbox.peek();
+        assertNotNull(next);
+        assertEquals(2, next.payload.get("version").getAsInt());
+        assertEquals(NOW, next.nextAttemptAt);
+        assertEquals(1, outbox.size());
+        assertEquals(1, outbox.getSuppressedPayloads());
+    }
+
+    @Test
+    public void sendsRightAwayWithoutAnInterval() {
+        SendRateLimiter limiter = new SendRateLimiter();
+        limiter.onSent("a", NOW);
+        assertEquals(NOW, limiter.getSendTime("a", NOW, false));
+        assertEquals(0, limiter.getHeldPayloads());
+    }
+}
@@ -0,0 +1,145 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SinkDispatcherTest {
+    @Test
+    public void aBusySinkOnlyGetsTheNewestPayloadOfEachWorld() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        SinkDispatcher dispatcher = new SinkDispatcher();
+        dispatcher.start(Collections.singletonList(sink), 5000);
+        try {
+            SinkDispatcherTest.publish(dispatcher, "a", 1);
+            assertTrue(sink.writeStarted.await(5, TimeUnit.SECONDS));
+            // Published while the sink is still writing the first one
+            SinkDispatcherTest.publish(dispatcher, "a", 2);
+            SinkDispatcherTest.publish(dispatcher, "b", 1);
+            SinkDispatcherTest.publish(dispatcher, "a", 3);
+            sink.release.countDown();
+
+            sink.awaitWrites(3);
+            assertEquals("a1 a3 b1", sink.getWritten());
+            assertEquals(1, dispatcher.getSkipped());
+            SinkDispatcherTest.awaitCount(dispatcher::getWrites, 3);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void givesEverySinkTheSameBytes() throws Exception {
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        first.release.countDown();
+        second.release.countDown();
+        SinkDispatcher dispatcher = new SinkDispatcher();
+        dispatcher.start(Arrays.asList(first, second), 5000);
+        try {
+            byte[] json = SinkDispatcherTest.publish(dispatcher, "a", 1);
+            first.awaitWrites(1);
+            second.awaitWrites(1);
+            assertArrayEquals(json, first.lastJson);
+            assertSame(first.lastJson, second.lastJson);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void keepsWritingToASinkThatFailed() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.release.countDown();
+        sink.failures = 1;
+        SinkDispatcher dispatcher = new SinkDispatcher();
+        dispatcher.start(Collections.singletonList(sink), 5000);
+        try {
+            SinkDispatcherTest.publish(dispatcher, "a", 1);
+            sink.awaitWrites(1);
+            SinkDispatcherTest.publish(dispatcher, "a", 2);
+            sink.awaitWrites(2);
+            assertEquals("a1 a2", sink.getWritten());
+            SinkDispatcherTest.awaitCount(dispatcher::getFailures, 1);
+            SinkDispatcherTest.awaitCount(dispatcher::getWrites, 1);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    /**
+     * Counts are updated once a write has returned, after the sink has seen the payload.
+     */
+    private static void awaitCount(LongSupplier count, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count.getAsLong() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, count.getAsLong());
+    }
+
+    private static byte[] publish(SinkDispatcher dispatcher, String worldId, int version) {
+        JsonObject payload = PayloadSenderTest.payload(worldId, version);
+        byte[] json = payload.toString().getBytes(StandardCharsets.UTF_8);
+        dispatcher.publish(payload, json);
+        return json;
+    }
+
+    private static class RecordingSink implements PayloadSink {
+        private final CountDownLatch writeStarted = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> written = new ArrayList<>();
+        private volatile int failures = 0;
+        private volatile byte[] lastJson = null;
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+
+        @Override
+        public void write(JsonObject payload, byte[] json) throws IOException {
+            this.writeStarted.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            this.lastJson = json;
+            synchronized (this) {
+                this.written.add(payload.get("worldId").getAsString() + payload.get("version").getAsInt());
+                this.notifyAll();
+            }
+            if (this.failures > 0) {
+                this.failures--;
+                throw new IOException("Failing on purpose");
+            }
+        }
+
+        private synchronized void awaitWrites(int writes) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (this.written.size() < writes && System.currentTimeMillis() < deadline) {
+                this.wait(100);
+            }
+            assertEquals(writes, this.written.size());
+        }
+
+        private synchronized String getWritten() {
+            return String.join(" ", this.written);
+        }
+    }
+}
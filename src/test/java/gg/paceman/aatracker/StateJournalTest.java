@@ -0,0 +1,134 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateJournalTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void loadsWhatWasSaved() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            Path path = instance.dataPath.resolve("state.json");
+            StateJournal journal = new StateJournal(path);
+            journal.putAcknowledged(StateJournalTest.entry("a", NOW));
+            journal.putAcknowledged(StateJournalTest.entry("b", NOW + 1));
+            journal.save();
+
+            StateJournal loaded = new StateJournal(path);
+            loaded.load(0);
+            StateJournal.Entry entry = loaded.get(Paths.get("a"));
+            assertNotNull(entry);
+            assertEquals("id-a", entry.worldId);
+            assertEquals(NOW, entry.savedAt);
+            assertEquals(NOW - 2000, entry.recordMTime);
+            assertEquals(NOW - 1000, entry.eventsMTime);
+            assertEquals(46, entry.eventsOffset);
+            assertArrayEquals(new byte[]{1, 2, 3}, entry.fingerprint);
+            assertTrue(entry.runOnPaceMan);
+            assertTrue(entry.worldActive);
+            assertEquals(Arrays.asList("rsg.enter_nether 10 10", "rsg.obtain_item 20 20"), entry.events);
+            assertTrue(loaded.isLastAcknowledged(Paths.get("b")));
+            assertFalse(loaded.isLastAcknowledged(Paths.get("a")));
+        } finally {
+            instance.delete();
+        }
+    }
+
+    @Test
+    public void onlyWritesOnSave() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            Path path = instance.dataPath.resolve("state.json");
+            StateJournal journal = new StateJournal(path);
+            journal.putAcknowledged(StateJournalTest.entry("a", NOW));
+            assertFalse(Files.exists(path));
+            journal.save();
+            assertTrue(Files.exists(path));
+
+            // Nothing changed, so the file isn't written again
+            Files.delete(path);
+            journal.save();
+            assertFalse(Files.exists(path));
+
+            journal.remove(Paths.get("a"));
+            Files.write(path, new byte[0]);
+            journal.save();
+            assertFalse(Files.exists(path));
+        } finally {
+            instance.delete();
+        }
+    }
+
+    @Test
+    public void dropsWorldsSavedBeforeTheCutoff() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            Path path = instance.dataPath.resolve("state.json");
+            StateJournal journal = new StateJournal(path);
+            journal.putAcknowledged(StateJournalTest.entry("a", NOW + 1000));
+            journal.putAcknowledged(StateJournalTest.entry("b", NOW));
+            journal.save();
+
+            StateJournal loaded = new StateJournal(path);
+            loaded.load(NOW + 1);
+            assertNotNull(loaded.get(Paths.get("a")));
+            assertNull(loaded.get(Paths.get("b")));
+            // The last acknowledged world was dropped
+            assertFalse(loaded.isLastAcknowledged(Paths.get("b")));
+        } finally {
+            instance.delete();
+        }
+    }
+
+    @Test
+    public void resumesAWorldWithoutSendingItAgain() throws Exception {
+        TestInstance instance = TestInstance.create();
+        try {
+            instance.playUntil(300_000);
+            TrackerSession engine = instance.newEngine(TestInstance.options("key"));
+            engine.start();
+            try {
+                assertNotNull(instance.requests.await(r -> r.url.endsWith(AATracker.AA_SEND_PATH), 10_000));
+                long deadline = System.currentTimeMillis() + 5000;
+                while (engine.getStateJournal().get(instance.worldPath) == null && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+            } finally {
+                engine.stop();
+            }
+            int sent = instance.requests.get().size();
+            assertTrue(Files.exists(instance.dataPath.resolve("state.json")));
+
+            TrackerSession resumed = instance.newEngine(TestInstance.options("key"));
+            resumed.start();
+            try {
+                // Nothing changed since the acknowledged payload
+                assertNull(instance.requests.await(r -> instance.requests.get().size() > sent, 3000));
+
+                instance.appendEvent("rsg.obtain_item " + System.currentTimeMillis() + " 300500");
+                assertNotNull(instance.requests.await(r -> instance.requests.get().size() > sent, 10_000));
+            } finally {
+                resumed.stop();
+            }
+        } finally {
+            instance.delete();
+        }
+    }
+
+    private static StateJournal.Entry entry(String worldPath, long savedAt) {
+        return new StateJournal.Entry(Paths.get(worldPath).toString(), "id-" + worldPath, savedAt, NOW - 2000, NOW - 1000, 46, new byte[]{1, 2, 3}, true, true, Arrays.asList("rsg.enter_nether 10 10", "rsg.obtain_item 20 20"));
+    }
+}
@@ -0,0 +1,92 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateStreamServerTest {
+    private static final int FILLER_CHARS = 256 * 1024;
+
+    @Test
+    public void aClientThatFallsBehindIsResyncedWithASnapshot() throws Exception {
+        StateStreamServer server = StateStreamServer.start(0);
+        HttpURLConnection connection = null;
+        try {
+            StateStreamServerTest.write(server, 1);
+            connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/events").openConnection();
+            connection.setReadTimeout(10_000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            DeltaReceiver receiver = new DeltaReceiver();
+            assertEquals("snapshot", StateStreamServerTest.readEvent(reader, receiver));
+
+            // Far more than the client buffer and the socket buffers together, while the client reads nothing
+            int versions = 100;
+            for (int version = 2; version <= versions; version++) {
+                StateStreamServerTest.write(server, version);
+            }
+            assertTrue(server.getResyncs() > 0);
+
+            int snapshots = 0;
+            while (receiver.getSnapshot("a") == null || receiver.getSnapshot("a").get("version").getAsInt() < versions) {
+                if ("snapshot".equals(StateStreamServerTest.readEvent(reader, receiver))) {
+                    snapshots++;
+                }
+            }
+            assertTrue(snapshots > 0);
+            assertEquals(StateStreamServerTest.payload(versions), receiver.getSnapshot("a"));
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            server.stop();
+        }
+    }
+
+    /**
+     * Reads the next event, skipping heartbeats, and checks that it applies on top of what was received before.
+     *
+     * @return the type of the event
+     */
+    private static String readEvent(BufferedReader reader, DeltaReceiver receiver) throws Exception {
+        String type = null;
+        String data = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("event: ")) {
+                type = line.substring("event: ".length());
+            } else if (line.startsWith("data: ")) {
+                data = line.substring("data: ".length());
+            } else if (line.isEmpty() && data != null) {
+                break;
+            }
+        }
+        assertNotNull(data);
+        assertTrue(type + " event does not apply", receiver.receive(JsonParser.parseString(data).getAsJsonObject()));
+        return type;
+    }
+
+    private static void write(StateStreamServer server, int version) {
+        JsonObject payload = StateStreamServerTest.payload(version);
+        server.write(payload, payload.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject payload(int version) {
+        JsonObject payload = PayloadSenderTest.payload("a", version);
+        // Makes every delta big enough to fill the buffers quickly
+        char[] filler = new char[FILLER_CHARS];
+        Arrays.fill(filler, (char) ('a' + version % 26));
+        payload.addProperty("filler", new String(filler));
+        return payload;
+    }
+}
@@ -0,0 +1,139 @@
+package gg.paceman.aatracker;
+
+import com.google.gson.JsonObject;
+import gg.paceman.aatracker.util.PostUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A Minecraft instance and home directory in a temporary folder, playing the example run the way SpeedRunIGT writes
+ * it, and a transport that records the requests an engine makes instead of sending them.
+ */
+final class TestInstance {
+    final Path root;
+    final Path homePath;
+    final Path dataPath;
+    final Path worldPath;
+    final Requests requests = new Requests();
+
+    private TestInstance(Path root) {
+        this.root = root;
+        this.homePath = root.resolve("home");
+        this.dataPath = root.resolve("data");
+        this.worldPath = root.resolve("instance").resolve(".minecraft").resolve("saves").resolve("Random Speedrun #1");
+    }
+
+    static TestInstance create() throws IOException {
+        TestInstance instance = new TestInstance(Files.createTempDirectory("aatracker-test"));
+        Path atumPath = instance.worldPath.getParent().resolveSibling("config").resolve("mcsr").resolve("atum.json");
+        Files.createDirectories(atumPath.getParent());
+        Files.write(atumPath, "{\"hasLegalSettings\":true,\"seed\":\"\",\"difficulty\":\"EASY\"}".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(instance.worldPath.resolve("speedrunigt"));
+        Files.createDirectories(instance.homePath.resolve("speedrunigt"));
+        Files.createDirectories(instance.dataPath);
+        return instance;
+    }
+
+    /**
+     * Deletes the folder, the engines using it must be stopped.
+     */
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static AATrackerOptions options(String accessKey) {
+        AATrackerOptions options = new AATrackerOptions();
+        options.accessKey = accessKey;
+        options.minSendIntervalMs = 0;
+        options.useFileWatcher = false;
+        return options;
+    }
+
+    TrackerSession newEngine(AATrackerOptions options) {
+        return new TrackerSession(false, this.homePath, this.dataPath, options, Clock.systemUTC(), this.requests);
+    }
+
+    /**
+     * Writes the world's files as they were at an RTA of the example run, then points latest_world.json at the world.
+     */
+    void playUntil(long rta) throws IOException {
+        JsonObject record = ExampleData.readRecord();
+        Path speedrunigtPath = this.worldPath.resolve("speedrunigt");
+        StringBuilder events = new StringBuilder();
+        for (String event : ExampleData.eventsAt(record, rta)) {
+            events.append(event).append('\n');
+        }
+        Files.write(speedrunigtPath.resolve("events.log"), events.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(speedrunigtPath.resolve("record.json"), ExampleData.recordAt(record, rta).toString().getBytes(StandardCharsets.UTF_8));
+        JsonObject latestWorld = ExampleData.readLatestWorld();
+        latestWorld.addProperty("world_path", this.worldPath.toAbsolutePath().toString());
+        Files.write(this.homePath.resolve("speedrunigt").resolve("latest_world.json"), latestWorld.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    void appendEvent(String event) throws IOException {
+        Files.write(this.worldPath.resolve("speedrunigt").resolve("events.log"), (event + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    static class Request {
+        final String url;
+        final String body;
+
+        private Request(String url, String body) {
+            this.url = url;
+            this.body = body;
+        }
+    }
+
+    static class Requests implements TrackerSession.Transport {
+        private final List<Request> requests = new ArrayList<>();
+        private volatile int code = 200;
+
+        /**
+         * @param code the response code of every request from now on
+         */
+        void respondWith(int code) {
+            this.code = code;
+        }
+
+        @Override
+        public synchronized PostUtil.PostResponse post(String endpointUrl, byte[] body, int length, boolean gzip) {
+            this.requests.add(new Request(endpointUrl, new String(body, 0, length, StandardCharsets.UTF_8)));
+            this.notifyAll();
+            return new PostUtil.PostResponse(this.code, "");
+        }
+
+        synchronized List<Request> get() {
+            return new ArrayList<>(this.requests);
+        }
+
+        /**
+         * @return the first request matching the condition, or null if none was made within the timeout
+         */
+        synchronized Request await(Predicate<Request> condition, long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (true) {
+                for (Request request : this.requests) {
+                    if (condition.test(request)) return request;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return null;
+                this.wait(remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package gg.paceman.aatracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrackerSessionTest {
+    @Test
+    public void enginesUseTheirOwnOptions() throws Exception {
+        TestInstance sending = TestInstance.create();
+        TestInstance notConfigured = TestInstance.create();
+        sending.playUntil(300_000);
+        notConfigured.playUntil(300_000);
+        AATrackerOptions options = TestInstance.options("key-a");
+        options.apiBaseUrl = "http://tracker-a.invalid/";
+
+        TrackerSession engine = sending.newEngine(options);
+        TrackerSession other = notConfigured.newEngine(TestInstance.options(""));
+        engine.start();
+        other.start();
+        try {
+            TestInstance.Request request = sending.requests.await(r -> r.url.endsWith(AATracker.AA_SEND_PATH), 10_000);
+            assertNotNull(request);
+            assertEquals("http://tracker-a.invalid" + AATracker.AA_SEND_PATH, request.url);
+            assertTrue(request.body.contains("\"accessKey\":\"key-a\""));
+            // Without an access key the other engine never sends anything
+            assertEquals(TrackerSession.PollReason.NOT_CONFIGURED, other.getPollReason());
+            assertTrue(notConfigured.requests.get().isEmpty());
+        } finally {
+            engine.stop();
+            other.stop();
+            sending.delete();
+            notConfigured.delete();
+        }
+    }
+}